@@ -1,17 +1,27 @@
 package cn.popcraft.villagerpro;
 
 import cn.popcraft.villagerpro.commands.CommandManager;
+import cn.popcraft.villagerpro.database.AsyncRepository;
+import cn.popcraft.villagerpro.database.BackupManager;
+import cn.popcraft.villagerpro.database.ChainActivityRecorder;
+import cn.popcraft.villagerpro.database.ChangeLog;
 import cn.popcraft.villagerpro.database.DatabaseManager;
+import cn.popcraft.villagerpro.database.MaintenanceTask;
+import cn.popcraft.villagerpro.database.SessionLoader;
 import cn.popcraft.villagerpro.economy.EconomyManager;
 import cn.popcraft.villagerpro.events.EventManager;
+import cn.popcraft.villagerpro.managers.CacheManager;
 import cn.popcraft.villagerpro.managers.DefenseManager;
 import cn.popcraft.villagerpro.managers.DecorationManager;
 import cn.popcraft.villagerpro.managers.EcoChainManager;
+import cn.popcraft.villagerpro.managers.EntityRegistry;
 import cn.popcraft.villagerpro.managers.LegacyManager;
 import cn.popcraft.villagerpro.managers.PersonalityManager;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
 import cn.popcraft.villagerpro.managers.VisitorManager;
 import cn.popcraft.villagerpro.managers.SimpleAllianceManager;
 import cn.popcraft.villagerpro.managers.SimpleAllianceGUIManager;
+import cn.popcraft.villagerpro.scheduler.OfflineProduction;
 import cn.popcraft.villagerpro.scheduler.WorkScheduler;
 import cn.popcraft.villagerpro.util.Messages;
 import net.milkbowl.vault.economy.Economy;
@@ -37,6 +47,21 @@ public class VillagerPro extends JavaPlugin {
         // 初始化数据库管理器（现在依赖于 Paper 自动加载 JDBC 驱动）
         DatabaseManager.initialize();
         
+        // 初始化异步数据访问线程池
+        AsyncRepository.initialize();
+        
+        // 初始化缓存（容量上限和过期清理）
+        CacheManager.initialize();
+        
+        // 启动跨服务器缓存变更轮询（多个服务器共用数据库时）
+        ChangeLog.initialize();
+        
+        // 启动数据维护任务（汇总、清理过期记录、回收空间）
+        MaintenanceTask.initialize();
+        
+        // 启动定时备份任务
+        BackupManager.initialize();
+        
         // 初始化经济系统
         EconomyManager.initialize();
         
@@ -46,9 +71,18 @@ public class VillagerPro extends JavaPlugin {
         // 初始化事件监听器
         EventManager.initialize();
         
+        // 编译职业产出表
+        ProfessionRegistry.reload();
+        
         // 初始化工作调度器
         WorkScheduler.initialize();
         
+        // 为已在线的玩家预加载村庄数据（插件重载后）
+        SessionLoader.initialize();
+        
+        // 为已在线的玩家结算离线产出（插件重载后）
+        OfflineProduction.initialize();
+        
         // 初始化访客系统
         if (getConfig().getBoolean("features.visitors", true)) {
             VisitorManager.getInstance().initialize();
@@ -72,6 +106,7 @@ public class VillagerPro extends JavaPlugin {
         // 初始化生态联动系统
         if (getConfig().getBoolean("features.eco_chain", true)) {
             EcoChainManager.getInstance();
+            ChainActivityRecorder.initialize();
         }
         
         // 初始化传承系统
@@ -98,12 +133,26 @@ public class VillagerPro extends JavaPlugin {
         
         // 关闭工作调度器
         WorkScheduler.shutdown();
+        OfflineProduction.shutdown();
         
         // 关闭访客系统
         if (getConfig().getBoolean("features.visitors", true)) {
             VisitorManager.getInstance().shutdown();
         }
         
+        // 停止数据维护任务和定时备份任务
+        CacheManager.shutdown();
+        ChangeLog.shutdown();
+        EntityRegistry.clear();
+        MaintenanceTask.shutdown();
+        BackupManager.shutdown();
+        
+        // 写入剩余的协作链活动记录
+        ChainActivityRecorder.shutdown();
+        
+        // 等待异步数据库任务完成
+        AsyncRepository.shutdown();
+        
         // 关闭数据库连接池
         DatabaseManager.shutdown();
         
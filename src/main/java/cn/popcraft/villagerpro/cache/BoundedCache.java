@@ -0,0 +1,659 @@
+package cn.popcraft.villagerpro.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * 有容量上限的缓存（W-TinyLFU 淘汰策略）
+ * 容量按权重计算，分为三个区域：
+ * 1. 窗口区（约 1%）：新写入的条目先进入窗口区，按 LRU 淘汰，吸收突发的新数据
+ * 2. 试用区：从窗口区淘汰的条目进入主区域前，与试用区最久未访问的条目比较访问频率，频率高者保留
+ * 3. 保护区（主区域的 80%）：试用区中再次被访问的条目晋升到保护区
+ * 访问频率由 {@link FrequencySketch} 估计，因此只被访问一次的数据不会挤掉热点数据。
+ * 条目写入后超过存活时间即视为过期，读取时直接丢弃，{@link #cleanUp()} 按写入顺序批量清理。
+ * 设置了刷新时间时，读取到写入时间超过刷新时间（但尚未过期）的条目会在后台线程中重新加载，
+ * 加载完成前继续返回旧值，热点数据不会因为过期而让读取方同步等待数据库。
+ * 时间取自 {@link CoarseClock}，读取时不调用 System.currentTimeMillis()。
+ * 被固定（{@link #pin}）的键不参与淘汰和过期，也不计入容量，取消固定后重新进入窗口区。
+ * 读写操作都是常数时间，在一把锁内完成。
+ */
+public class BoundedCache<K, V> {
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int PINNED = 3;
+
+    /**
+     * 条目被移除的原因
+     */
+    public enum RemovalCause {
+        /** 主动清除 */
+        EXPLICIT,
+        /** 被新值替换 */
+        REPLACED,
+        /** 超出容量被淘汰 */
+        SIZE,
+        /** 超过存活时间 */
+        EXPIRED
+    }
+
+    /**
+     * 条目移除监听器，在持有缓存锁时调用，实现中不要再访问同一个缓存
+     */
+    public interface RemovalListener<K, V> {
+        void onRemoval(K key, V value, RemovalCause cause);
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        V value;
+        int weight;
+        long writeTime;
+        // 每次写入加一，后台刷新完成时据此判断期间是否有新的写入
+        long writeVersion;
+        boolean refreshing;
+        int queue;
+        // 访问顺序链表（所在区域）
+        Node<K, V> prev;
+        Node<K, V> next;
+        // 写入顺序链表（用于过期清理）
+        Node<K, V> writePrev;
+        Node<K, V> writeNext;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * 双向链表，头部为最久未访问的条目
+     */
+    private static final class AccessQueue<K, V> {
+        Node<K, V> head;
+        Node<K, V> tail;
+        long weight;
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.weight;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<K, Node<K, V>> data = new HashMap<>();
+    private final AccessQueue<K, V> window = new AccessQueue<>();
+    private final AccessQueue<K, V> probation = new AccessQueue<>();
+    private final AccessQueue<K, V> protectedQueue = new AccessQueue<>();
+    private final AccessQueue<K, V> pinnedQueue = new AccessQueue<>();
+    private final Set<K> pinnedKeys = new HashSet<>();
+    private final FrequencySketch sketch;
+    private final CacheStats stats = new CacheStats();
+    private final ToIntFunction<V> weigher;
+    private final RemovalListener<K, V> removalListener;
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long mainMaxWeight;
+    private final long protectedMaxWeight;
+    private final long ttlMillis;
+    private final long refreshAfterMillis;
+    private final Executor refreshExecutor;
+    private Node<K, V> writeHead;
+    private Node<K, V> writeTail;
+
+    /**
+     * 创建每个条目权重为 1 的缓存
+     * @param name 区域名称
+     * @param maxWeight 最大条目数
+     * @param ttlMillis 存活时间（毫秒），0 表示不过期
+     */
+    public BoundedCache(String name, long maxWeight, long ttlMillis) {
+        this(name, maxWeight, ttlMillis, null, null);
+    }
+
+    /**
+     * @param name 区域名称
+     * @param maxWeight 最大总权重
+     * @param ttlMillis 存活时间（毫秒），0 表示不过期
+     * @param weigher 条目权重计算，为null时每个条目权重为 1
+     * @param removalListener 条目移除监听器，可以为null
+     */
+    public BoundedCache(String name, long maxWeight, long ttlMillis, ToIntFunction<V> weigher, RemovalListener<K, V> removalListener) {
+        this(name, maxWeight, ttlMillis, weigher, removalListener, 0L, null);
+    }
+
+    /**
+     * @param name 区域名称
+     * @param maxWeight 最大总权重
+     * @param ttlMillis 存活时间（毫秒），0 表示不过期
+     * @param weigher 条目权重计算，为null时每个条目权重为 1
+     * @param removalListener 条目移除监听器，可以为null
+     * @param refreshAfterMillis 写入后超过该时间的条目在读取时后台刷新，0 表示不刷新
+     * @param refreshExecutor 执行后台刷新的线程池，拒绝执行时本次不刷新
+     */
+    public BoundedCache(String name, long maxWeight, long ttlMillis, ToIntFunction<V> weigher, RemovalListener<K, V> removalListener,
+                        long refreshAfterMillis, Executor refreshExecutor) {
+        this.name = name;
+        this.maxWeight = Math.max(1L, maxWeight);
+        this.windowMaxWeight = Math.max(1L, this.maxWeight / 100);
+        this.mainMaxWeight = Math.max(1L, this.maxWeight - windowMaxWeight);
+        this.protectedMaxWeight = mainMaxWeight * 4 / 5;
+        this.ttlMillis = Math.max(0L, ttlMillis);
+        this.refreshAfterMillis = refreshExecutor == null ? 0L : Math.max(0L, refreshAfterMillis);
+        this.refreshExecutor = refreshExecutor;
+        this.weigher = weigher;
+        this.removalListener = removalListener;
+        this.sketch = new FrequencySketch(this.maxWeight);
+    }
+
+    /**
+     * 获取缓存的值
+     * @param key 键
+     * @return 值，不存在或已过期时返回null
+     */
+    public V getIfPresent(K key) {
+        return getIfPresent(key, null);
+    }
+
+    /**
+     * 获取缓存的值，条目需要刷新时在后台线程中通过 loader 重新加载，本次仍返回旧值
+     * 每个条目同一时间只有一个刷新任务；loader 返回null时保留旧值，由过期机制处理
+     * @param key 键
+     * @param loader 重新加载的逻辑，为null时不刷新
+     * @return 值，不存在或已过期时返回null
+     */
+    public V getIfPresent(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> refreshNode = null;
+        long refreshVersion = 0;
+        V value;
+        lock.lock();
+        try {
+            sketch.increment(key.hashCode());
+            Node<K, V> node = data.get(key);
+            if (node == null) {
+                stats.recordMiss();
+                return null;
+            }
+            long now = CoarseClock.millis();
+            if (isExpired(node, now)) {
+                removeNode(node, RemovalCause.EXPIRED);
+                stats.recordMiss();
+                return null;
+            }
+            onAccess(node);
+            stats.recordHit();
+            if (loader != null && needsRefresh(node, now)) {
+                node.refreshing = true;
+                refreshNode = node;
+                refreshVersion = node.writeVersion;
+            }
+            value = node.value;
+        } finally {
+            lock.unlock();
+        }
+        if (refreshNode != null) {
+            scheduleRefresh(refreshNode, refreshVersion, loader);
+        }
+        return value;
+    }
+
+    /**
+     * 获取缓存的值，不记录访问（不影响淘汰顺序和统计），用于写操作同步更新缓存
+     * @param key 键
+     * @return 值，不存在或已过期时返回null
+     */
+    public V peek(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            return node == null || isExpired(node, CoarseClock.millis()) ? null : node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入缓存，权重超过主区域容量的条目不会被缓存
+     * @param key 键
+     * @param value 值
+     */
+    public void put(K key, V value) {
+        int weight = weigher == null ? 1 : Math.max(1, weigher.applyAsInt(value));
+        lock.lock();
+        try {
+            sketch.increment(key.hashCode());
+            Node<K, V> node = data.get(key);
+            if (weight > mainMaxWeight) {
+                if (node != null) {
+                    removeNode(node, RemovalCause.REPLACED);
+                }
+                return;
+            }
+            long now = CoarseClock.millis();
+            if (node != null) {
+                replace(node, value, weight, now);
+                onAccess(node);
+            } else {
+                node = new Node<>(key);
+                node.value = value;
+                node.weight = weight;
+                node.writeTime = now;
+                data.put(key, node);
+                if (pinnedKeys.contains(key)) {
+                    node.queue = PINNED;
+                    pinnedQueue.addLast(node);
+                } else {
+                    node.queue = WINDOW;
+                    window.addLast(node);
+                    appendWrite(node);
+                }
+            }
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清除缓存条目
+     * @param key 键
+     * @return 被清除的值，不存在时返回null
+     */
+    public V invalidate(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node == null) {
+                return null;
+            }
+            removeNode(node, RemovalCause.EXPLICIT);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清除所有满足条件的条目（需要遍历全部条目）
+     * @param predicate 条件
+     * @return 清除的条目数
+     */
+    public int invalidateIf(Predicate<V> predicate) {
+        lock.lock();
+        try {
+            int removed = 0;
+            for (Node<K, V> node : new ArrayList<>(data.values())) {
+                if (predicate.test(node.value)) {
+                    removeNode(node, RemovalCause.EXPLICIT);
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清除所有条目（固定的键保持固定，重新写入后仍不会被淘汰）
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            for (Node<K, V> node : new ArrayList<>(data.values())) {
+                removeNode(node, RemovalCause.EXPLICIT);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 固定键：已缓存和之后写入的条目都不会被淘汰或过期，直到取消固定
+     * 固定的条目不计入容量，调用方需要保证固定的键数量有限（例如只固定在线玩家的数据）
+     * @param key 键
+     */
+    public void pin(K key) {
+        lock.lock();
+        try {
+            pinnedKeys.add(key);
+            Node<K, V> node = data.get(key);
+            if (node != null && node.queue != PINNED) {
+                queueOf(node).remove(node);
+                unlinkWrite(node);
+                node.queue = PINNED;
+                pinnedQueue.addLast(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取消固定，条目重新进入窗口区并重新开始计算存活时间
+     * @param key 键
+     */
+    public void unpin(K key) {
+        lock.lock();
+        try {
+            if (!pinnedKeys.remove(key)) {
+                return;
+            }
+            Node<K, V> node = data.get(key);
+            if (node != null && node.queue == PINNED) {
+                pinnedQueue.remove(node);
+                node.writeTime = CoarseClock.millis();
+                appendWrite(node);
+                node.queue = WINDOW;
+                window.addLast(node);
+                evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清理过期条目，按写入顺序从最早的条目开始，遇到未过期的条目即停止
+     * @return 清理的条目数
+     */
+    public int cleanUp() {
+        if (ttlMillis <= 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            long now = CoarseClock.millis();
+            int removed = 0;
+            while (writeHead != null && isExpired(writeHead, now)) {
+                removeNode(writeHead, RemovalCause.EXPIRED);
+                removed++;
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return data.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long weightedSize() {
+        lock.lock();
+        try {
+            return window.weight + probation.weight + protectedQueue.weight + pinnedQueue.weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取固定条目的总权重（不计入容量上限）
+     */
+    public long pinnedWeight() {
+        lock.lock();
+        try {
+            return pinnedQueue.weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getRefreshAfterMillis() {
+        return refreshAfterMillis;
+    }
+
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return ttlMillis > 0 && node.queue != PINNED && now - node.writeTime > ttlMillis;
+    }
+
+    /**
+     * 固定的条目不会过期，由写操作保持最新，不需要刷新
+     */
+    private boolean needsRefresh(Node<K, V> node, long now) {
+        return refreshAfterMillis > 0 && !node.refreshing && node.queue != PINNED && now - node.writeTime > refreshAfterMillis;
+    }
+
+    private void scheduleRefresh(Node<K, V> node, long version, Function<? super K, ? extends V> loader) {
+        try {
+            refreshExecutor.execute(() -> refresh(node, version, loader));
+        } catch (RejectedExecutionException e) {
+            lock.lock();
+            try {
+                node.refreshing = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 后台刷新：条目在加载期间被清除、淘汰或重新写入时丢弃加载结果，避免用旧数据覆盖新数据
+     */
+    private void refresh(Node<K, V> node, long version, Function<? super K, ? extends V> loader) {
+        V value = null;
+        try {
+            value = stats.timeLoad(() -> loader.apply(node.key));
+        } catch (RuntimeException e) {
+            // 加载失败时保留旧值
+        }
+        int weight = value == null || weigher == null ? 1 : Math.max(1, weigher.applyAsInt(value));
+        lock.lock();
+        try {
+            node.refreshing = false;
+            if (value == null || data.get(node.key) != node || node.writeVersion != version) {
+                return;
+            }
+            if (weight > mainMaxWeight) {
+                removeNode(node, RemovalCause.REPLACED);
+                return;
+            }
+            replace(node, value, weight, CoarseClock.millis());
+            stats.recordRefresh();
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 原地替换条目的值，保留条目所在的区域
+     */
+    private void replace(Node<K, V> node, V value, int weight, long now) {
+        V oldValue = node.value;
+        AccessQueue<K, V> queue = queueOf(node);
+        queue.weight += weight - node.weight;
+        node.weight = weight;
+        node.value = value;
+        node.writeTime = now;
+        node.writeVersion++;
+        if (node.queue != PINNED) {
+            unlinkWrite(node);
+            appendWrite(node);
+        }
+        stats.recordRemoval(RemovalCause.REPLACED);
+        if (removalListener != null) {
+            removalListener.onRemoval(node.key, oldValue, RemovalCause.REPLACED);
+        }
+    }
+
+    /**
+     * 命中时调整条目位置：窗口区和保护区移到队尾，试用区晋升到保护区
+     */
+    private void onAccess(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                // 保护区超出容量时，最久未访问的条目降级回试用区
+                while (protectedQueue.weight > protectedMaxWeight && protectedQueue.head != node) {
+                    Node<K, V> demoted = protectedQueue.head;
+                    protectedQueue.remove(demoted);
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+                break;
+            case PROTECTED:
+                protectedQueue.moveToLast(node);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 窗口区超出容量时，将最久未访问的条目作为候选者送入主区域
+     */
+    private void evict() {
+        while (window.weight > windowMaxWeight && window.head != null) {
+            Node<K, V> candidate = window.head;
+            window.remove(candidate);
+            admit(candidate);
+        }
+        // 替换后权重变大时主区域可能超出容量
+        while (probation.weight + protectedQueue.weight > mainMaxWeight) {
+            Node<K, V> victim = probation.head != null ? probation.head : protectedQueue.head;
+            removeNode(victim, RemovalCause.SIZE);
+        }
+    }
+
+    /**
+     * 候选者进入主区域：主区域已满时与试用区（为空时为保护区）最久未访问的条目比较访问频率，
+     * 候选者频率更高才淘汰对方，否则淘汰候选者
+     */
+    private void admit(Node<K, V> candidate) {
+        while (probation.weight + protectedQueue.weight + candidate.weight > mainMaxWeight) {
+            Node<K, V> victim = probation.head != null ? probation.head : protectedQueue.head;
+            if (victim == null) {
+                break;
+            }
+            if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                removeNode(victim, RemovalCause.SIZE);
+            } else {
+                // 候选者已经不在任何区域中，直接移除
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+                removeNode(candidate, RemovalCause.SIZE);
+                return;
+            }
+        }
+        candidate.queue = PROBATION;
+        probation.addLast(candidate);
+    }
+
+    private void removeNode(Node<K, V> node, RemovalCause cause) {
+        data.remove(node.key);
+        queueOf(node).remove(node);
+        if (node.queue != PINNED) {
+            unlinkWrite(node);
+        }
+        stats.recordRemoval(cause);
+        if (removalListener != null) {
+            removalListener.onRemoval(node.key, node.value, cause);
+        }
+    }
+
+    private AccessQueue<K, V> queueOf(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            case PROTECTED:
+                return protectedQueue;
+            default:
+                return pinnedQueue;
+        }
+    }
+
+    private void appendWrite(Node<K, V> node) {
+        node.writePrev = writeTail;
+        node.writeNext = null;
+        if (writeTail == null) {
+            writeHead = node;
+        } else {
+            writeTail.writeNext = node;
+        }
+        writeTail = node;
+    }
+
+    private void unlinkWrite(Node<K, V> node) {
+        if (node.writePrev == null) {
+            writeHead = node.writeNext;
+        } else {
+            node.writePrev.writeNext = node.writeNext;
+        }
+        if (node.writeNext == null) {
+            writeTail = node.writePrev;
+        } else {
+            node.writeNext.writePrev = node.writePrev;
+        }
+        node.writePrev = null;
+        node.writeNext = null;
+    }
+}
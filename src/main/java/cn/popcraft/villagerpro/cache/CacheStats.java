@@ -0,0 +1,111 @@
+package cn.popcraft.villagerpro.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 缓存区域的统计信息
+ * 计数器使用 LongAdder，多线程同时记录时几乎没有竞争
+ */
+public class CacheStats {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadNanos = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder[] removals = new LongAdder[BoundedCache.RemovalCause.values().length];
+
+    public CacheStats() {
+        for (int i = 0; i < removals.length; i++) {
+            removals[i] = new LongAdder();
+        }
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * 执行一次加载并记录耗时，返回null视为加载失败（数据不存在或查询出错）
+     * @param loader 加载逻辑
+     * @return 加载结果
+     */
+    public <R> R timeLoad(Supplier<R> loader) {
+        long start = System.nanoTime();
+        R result = null;
+        try {
+            result = loader.get();
+            return result;
+        } finally {
+            totalLoadNanos.add(System.nanoTime() - start);
+            if (result != null) {
+                loadSuccesses.increment();
+            } else {
+                loadFailures.increment();
+            }
+        }
+    }
+
+    void recordRefresh() {
+        refreshes.increment();
+    }
+
+    void recordRemoval(BoundedCache.RemovalCause cause) {
+        removals[cause.ordinal()].increment();
+    }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getLoadSuccesses() { return loadSuccesses.sum(); }
+    public long getLoadFailures() { return loadFailures.sum(); }
+    public long getTotalLoadNanos() { return totalLoadNanos.sum(); }
+    /** 后台刷新成功替换的次数 */
+    public long getRefreshes() { return refreshes.sum(); }
+
+    public long getLoads() {
+        return getLoadSuccesses() + getLoadFailures();
+    }
+
+    /**
+     * 获取指定原因的移除次数（REPLACED 不计为淘汰）
+     * @param cause 移除原因
+     * @return 次数
+     */
+    public long getRemovals(BoundedCache.RemovalCause cause) {
+        return removals[cause.ordinal()].sum();
+    }
+
+    /**
+     * 命中率（0-1），没有请求时为 1
+     */
+    public double getHitRatio() {
+        long hitCount = getHits();
+        long requests = hitCount + getMisses();
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    public double getAverageLoadMillis() {
+        long loads = getLoads();
+        return loads == 0 ? 0 : getTotalLoadNanos() / 1_000_000.0 / loads;
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        loadSuccesses.reset();
+        loadFailures.reset();
+        totalLoadNanos.reset();
+        refreshes.reset();
+        for (LongAdder removal : removals) {
+            removal.reset();
+        }
+    }
+}
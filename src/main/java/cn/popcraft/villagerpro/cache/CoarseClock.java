@@ -0,0 +1,28 @@
+package cn.popcraft.villagerpro.cache;
+
+/**
+ * 粗粒度时钟
+ * 由服务器主线程每 tick 调用 {@link #tick()} 更新一次，缓存读取时只读一个 volatile 字段，
+ * 不需要每次调用 System.currentTimeMillis()。精度为一个 tick（约 50ms），对秒级的存活时间足够。
+ */
+public final class CoarseClock {
+    private static volatile long now = System.currentTimeMillis();
+
+    private CoarseClock() {
+    }
+
+    /**
+     * 更新当前时间（每 tick 调用一次）
+     */
+    public static void tick() {
+        now = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取最近一次更新的时间
+     * @return 毫秒时间戳
+     */
+    public static long millis() {
+        return now;
+    }
+}
@@ -0,0 +1,91 @@
+package cn.popcraft.villagerpro.cache;
+
+/**
+ * 访问频率估计（Count-Min Sketch）
+ * 每个计数器占 4 位，16 个计数器打包在一个 long 中，每个键使用 4 个计数器并取最小值作为估计频率。
+ * 累计记录次数达到采样上限后所有计数器减半，使频率随时间衰减，旧的热点数据不会一直占据缓存。
+ * 非线程安全，由 {@link BoundedCache} 在持有锁时调用。
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int counterMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param maximumSize 缓存的最大条目数，用于确定计数器数量和衰减周期
+     */
+    FrequencySketch(long maximumSize) {
+        int size = (int) Math.min(Math.max(maximumSize, 16L), 1 << 20);
+        // 每个条目平均 16 个计数器（long 的个数为不小于 maximumSize 的 2 的幂）；
+        // 计数器过少时在达到采样上限之前就会全部饱和，不再计入新的记录，也就永远不会衰减
+        int length = Integer.highestOneBit(size - 1) << 1;
+        this.table = new long[length];
+        this.counterMask = (length << 4) - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    /**
+     * 估计键的访问频率
+     * @param hashCode 键的哈希值
+     * @return 频率（0-15）
+     */
+    int frequency(int hashCode) {
+        int hash = spread(hashCode);
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index >>> 4] >>> ((index & 15) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次访问
+     * @param hashCode 键的哈希值
+     */
+    void increment(int hashCode) {
+        int hash = spread(hashCode);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = indexOf(hash, i);
+            int slot = index >>> 4;
+            int offset = (index & 15) << 2;
+            if (((table[slot] >>> offset) & 0xfL) < MAX_COUNT) {
+                table[slot] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long value = (hash + SEEDS[i]) * SEEDS[i];
+        value += value >>> 32;
+        return (int) value & counterMask;
+    }
+
+    private static int spread(int hashCode) {
+        int hash = hashCode * 0x9e3779b9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,10 +1,16 @@
 package cn.popcraft.villagerpro.commands;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.cache.BoundedCache;
+import cn.popcraft.villagerpro.cache.CacheStats;
+import cn.popcraft.villagerpro.database.AsyncRepository;
+import cn.popcraft.villagerpro.database.BackupManager;
+import cn.popcraft.villagerpro.database.ChangeLog;
+import cn.popcraft.villagerpro.database.MaintenanceTask;
+import cn.popcraft.villagerpro.database.SqlMetrics;
 import cn.popcraft.villagerpro.gui.GUIManager;
-import cn.popcraft.villagerpro.managers.VillageManager;
-import cn.popcraft.villagerpro.managers.VillagerManager;
-import cn.popcraft.villagerpro.models.Village;
+import cn.popcraft.villagerpro.managers.CacheManager;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -12,6 +18,10 @@ import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
 import org.bukkit.util.StringUtil;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -19,7 +29,8 @@ import java.util.List;
 
 public class CommandManager implements CommandExecutor, TabCompleter {
     
-    private static final List<String> VILLAGE_SUBCOMMANDS = Arrays.asList("create", "info", "warehouse", "upgrade", "reload");
+    private static final List<String> VILLAGE_SUBCOMMANDS = Arrays.asList("create", "info", "warehouse", "upgrade", "reload", "admin");
+    private static final List<String> ADMIN_SUBCOMMANDS = Arrays.asList("backup", "vacuum", "sql", "cache");
     private static final List<String> VILLAGER_SUBCOMMANDS = Arrays.asList("list", "recruit", "info", "remove", "upgrade");
     private static final List<String> UPGRADE_SUBCOMMANDS = Arrays.asList("village", "villager");
 
@@ -84,7 +95,14 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                             // 创建命令可以建议村庄名称
                             completions.add("<村庄名称>");
                             break;
+                        case "admin":
+                            StringUtil.copyPartialMatches(args[1], ADMIN_SUBCOMMANDS, completions);
+                            break;
                     }
+                } else if (args.length == 3 && "admin".equalsIgnoreCase(args[0]) && "sql".equalsIgnoreCase(args[1])) {
+                    StringUtil.copyPartialMatches(args[2], Arrays.asList("top", "slow", "reset"), completions);
+                } else if (args.length == 3 && "admin".equalsIgnoreCase(args[0]) && "cache".equalsIgnoreCase(args[1])) {
+                    StringUtil.copyPartialMatches(args[2], Arrays.asList("stats", "dump", "reset"), completions);
                 }
                 break;
                 
@@ -151,13 +169,6 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                     return true;
                 }
                 
-                // 检查玩家是否已经有村庄
-                Village existingVillage = VillageManager.getVillage(player.getUniqueId());
-                if (existingVillage != null) {
-                    player.sendMessage("§c你已经有一个村庄了！");
-                    return true;
-                }
-                
                 // 合并剩余参数作为村庄名称
                 StringBuilder nameBuilder = new StringBuilder();
                 for (int i = 1; i < args.length; i++) {
@@ -168,12 +179,21 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                 }
                 String villageName = nameBuilder.toString();
                 
-                Village village = VillageManager.createVillage(player.getUniqueId(), villageName);
-                if (village != null) {
-                    player.sendMessage("§a成功创建村庄: " + villageName);
-                } else {
-                    player.sendMessage("§c创建村庄失败");
-                }
+                // 检查玩家是否已经有村庄
+                AsyncRepository.thenSync(AsyncRepository.getVillage(player.getUniqueId()), player, existingVillage -> {
+                    if (existingVillage != null) {
+                        player.sendMessage("§c你已经有一个村庄了！");
+                        return;
+                    }
+                    
+                    AsyncRepository.thenSync(AsyncRepository.createVillage(player.getUniqueId(), villageName), player, village -> {
+                        if (village != null) {
+                            player.sendMessage("§a成功创建村庄: " + villageName);
+                        } else {
+                            player.sendMessage("§c创建村庄失败");
+                        }
+                    });
+                });
                 return true;
                 
             case "info":
@@ -208,9 +228,13 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                 }
                 // 重新加载配置文件
                 VillagerPro.getInstance().reloadConfig();
+                ProfessionRegistry.reload();
                 player.sendMessage("§a配置文件已重新加载！");
                 return true;
                 
+            case "admin":
+                return handleAdminCommand(player, args);
+                
             default:
                 player.sendMessage("§c未知的子命令: " + args[0]);
                 player.sendMessage("§c用法: /village <create|info|warehouse|upgrade|reload>");
@@ -218,6 +242,134 @@ public class CommandManager implements CommandExecutor, TabCompleter {
         }
     }
     
+    private boolean handleAdminCommand(Player player, String[] args) {
+        if (args.length < 2) {
+            player.sendMessage("§c用法: /village admin <backup|vacuum|sql|cache>");
+            return true;
+        }
+        
+        switch (args[1].toLowerCase()) {
+            case "backup":
+                if (!player.hasPermission("villagerpro.admin.backup")) {
+                    player.sendMessage("§c你没有权限执行此命令");
+                    return true;
+                }
+                if (BackupManager.isRunning()) {
+                    player.sendMessage("§c已有备份正在进行，请稍后再试");
+                    return true;
+                }
+                player.sendMessage("§7正在后台备份数据库...");
+                AsyncRepository.thenSync(BackupManager.backupAsync(), player, backup -> {
+                    if (backup != null) {
+                        player.sendMessage("§a数据库备份完成: " + backup.getName());
+                    } else {
+                        player.sendMessage("§c数据库备份失败，请查看控制台日志");
+                    }
+                });
+                return true;
+                
+            case "vacuum":
+                if (!player.hasPermission("villagerpro.admin.vacuum")) {
+                    player.sendMessage("§c你没有权限执行此命令");
+                    return true;
+                }
+                player.sendMessage("§7正在将数据库切换为增量回收模式，期间数据写入会暂停...");
+                AsyncRepository.thenSync(MaintenanceTask.convertAutoVacuumAsync(), player,
+                        done -> player.sendMessage("§a数据库已切换为增量回收模式"));
+                return true;
+                
+            case "sql":
+                if (!player.hasPermission("villagerpro.admin.sql")) {
+                    player.sendMessage("§c你没有权限执行此命令");
+                    return true;
+                }
+                showSqlMetrics(player, args);
+                return true;
+                
+            case "cache":
+                if (!player.hasPermission("villagerpro.admin.cache")) {
+                    player.sendMessage("§c你没有权限执行此命令");
+                    return true;
+                }
+                showCacheStats(player, args);
+                return true;
+                
+            default:
+                player.sendMessage("§c未知的子命令: " + args[1]);
+                player.sendMessage("§c用法: /village admin <backup|vacuum|sql|cache>");
+                return true;
+        }
+    }
+    
+    private void showSqlMetrics(Player player, String[] args) {
+        if (!SqlMetrics.isEnabled()) {
+            player.sendMessage("§cSQL统计未启用（database.metrics.enabled）");
+            return;
+        }
+        String action = args.length >= 3 ? args[2].toLowerCase() : "top";
+        switch (action) {
+            case "reset":
+                SqlMetrics.reset();
+                player.sendMessage("§aSQL统计已清空");
+                return;
+            case "slow":
+                List<SqlMetrics.SlowQuery> slowQueries = SqlMetrics.getSlowQueries();
+                player.sendMessage("§6===== 最近的慢查询（" + slowQueries.size() + "）=====");
+                for (SqlMetrics.SlowQuery slowQuery : slowQueries) {
+                    player.sendMessage(String.format("§e%.1fms §7[%s] §f%s", slowQuery.getMillis(), slowQuery.getThread(), slowQuery.getSql()));
+                }
+                return;
+            default:
+                player.sendMessage("§6===== SQL耗时排行（主线程查询: " + SqlMetrics.getMainThreadQueries() + "）=====");
+                for (SqlMetrics.StatementStats stats : SqlMetrics.getTopStatements(10)) {
+                    player.sendMessage(String.format("§e%d次 §7总计 %.1fms 平均 %.2fms P95 %s 最大 %.1fms%s",
+                            stats.getCount(), stats.getTotalNanos() / 1_000_000.0, stats.getAverageMillis(),
+                            stats.getPercentileBucket(0.95), stats.getMaxNanos() / 1_000_000.0,
+                            stats.getMainThreadCount() > 0 ? " §c主线程 " + stats.getMainThreadCount() + "次" : ""));
+                    player.sendMessage("  §f" + stats.getSql());
+                }
+                player.sendMessage("§7/village admin sql slow 查看慢查询，/village admin sql reset 清空统计");
+        }
+    }
+    
+    private void showCacheStats(Player player, String[] args) {
+        String action = args.length >= 3 ? args[2].toLowerCase() : "stats";
+        switch (action) {
+            case "reset":
+                CacheManager.resetStats();
+                player.sendMessage("§a缓存统计已清空");
+                return;
+            case "dump":
+                File file = new File(VillagerPro.getInstance().getDataFolder(), "cache-stats.json");
+                try {
+                    Files.write(file.toPath(), CacheManager.getStatsJson().getBytes(StandardCharsets.UTF_8));
+                    player.sendMessage("§a缓存统计已导出到 " + file.getPath());
+                } catch (IOException e) {
+                    player.sendMessage("§c导出缓存统计失败: " + e.getMessage());
+                }
+                return;
+            default:
+                player.sendMessage("§6===== 缓存统计 =====");
+                for (BoundedCache<?, ?> region : CacheManager.getRegions()) {
+                    CacheStats stats = region.getStats();
+                    player.sendMessage(String.format("§e%s §7容量 %d/%d（%d 条，固定 %d） 命中率 §f%.1f%%",
+                            region.getName(), region.weightedSize(), region.getMaxWeight(), region.size(), region.pinnedWeight(),
+                            stats.getHitRatio() * 100));
+                    player.sendMessage(String.format("  §7命中 %d 未命中 %d 加载 %d（未找到 %d，后台刷新 %d） 平均加载 %.2fms",
+                            stats.getHits(), stats.getMisses(), stats.getLoads(), stats.getLoadFailures(), stats.getRefreshes(),
+                            stats.getAverageLoadMillis()));
+                    player.sendMessage(String.format("  §7淘汰：容量 %d 过期 %d 主动清除 %d",
+                            stats.getRemovals(BoundedCache.RemovalCause.SIZE),
+                            stats.getRemovals(BoundedCache.RemovalCause.EXPIRED),
+                            stats.getRemovals(BoundedCache.RemovalCause.EXPLICIT)));
+                }
+                if (ChangeLog.isEnabled()) {
+                    player.sendMessage(String.format("§e跨服务器同步 §7已处理其他服务器的变更 %d 条", ChangeLog.getAppliedChanges()));
+                }
+                player.sendMessage("§7/village admin cache dump 导出JSON，/village admin cache reset 清空统计");
+        }
+    }
+    
     // 已在onTabComplete中实现统一的Tab补全逻辑，移除旧方法
     
     private boolean handleVillagerCommand(Player player, String[] args) {
@@ -282,11 +434,13 @@ public class CommandManager implements CommandExecutor, TabCompleter {
                 try {
                     int villagerId = Integer.parseInt(args[1]);
                     // 实现移除村民逻辑
-                    if (VillagerManager.removeVillager(villagerId)) {
-                        player.sendMessage("§a成功移除村民");
-                    } else {
-                        player.sendMessage("§c移除村民失败");
-                    }
+                    AsyncRepository.thenSync(AsyncRepository.removeVillager(villagerId), player, success -> {
+                        if (success) {
+                            player.sendMessage("§a成功移除村民");
+                        } else {
+                            player.sendMessage("§c移除村民失败");
+                        }
+                    });
                 } catch (NumberFormatException e) {
                     player.sendMessage("§c无效的村民ID");
                 }
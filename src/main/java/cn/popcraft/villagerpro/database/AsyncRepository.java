@@ -0,0 +1,281 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.managers.VillageManager;
+import cn.popcraft.villagerpro.managers.VillageUpgradeManager;
+import cn.popcraft.villagerpro.managers.VillagerManager;
+import cn.popcraft.villagerpro.managers.VillagerUpgradeManager;
+import cn.popcraft.villagerpro.managers.WarehouseManager;
+import cn.popcraft.villagerpro.models.Village;
+import cn.popcraft.villagerpro.models.VillageOverview;
+import cn.popcraft.villagerpro.models.VillagerData;
+import cn.popcraft.villagerpro.models.WarehouseItem;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 异步数据访问层
+ * 所有查询在有界的数据库线程池中执行，返回 CompletableFuture；
+ * 需要操作Bukkit对象的回调通过 {@link #thenSync} 切回主线程执行。
+ */
+public class AsyncRepository {
+    private static ThreadPoolExecutor executor;
+
+    /**
+     * 初始化数据库线程池
+     */
+    public static void initialize() {
+        int threads = Math.max(1, VillagerPro.getInstance().getConfig().getInt("database.async.threads", 2));
+        int queueCapacity = Math.max(16, VillagerPro.getInstance().getConfig().getInt("database.async.queue_capacity", 256));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "VillagerPro-DB-Async-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 关闭数据库线程池，等待正在执行的任务完成
+     */
+    public static void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                VillagerPro.getInstance().getLogger().warning("异步数据库任务未能在10秒内完成，已强制停止");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+    }
+
+    /**
+     * 在数据库线程池中执行查询
+     * @param loader 查询逻辑
+     * @return 查询结果
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> loader) {
+        if (executor == null) {
+            // 线程池未初始化（或已关闭）时直接在当前线程执行
+            try {
+                return CompletableFuture.completedFuture(loader.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        try {
+            return CompletableFuture.supplyAsync(loader, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 在数据库线程池中执行无返回值的操作
+     * @param task 操作逻辑
+     * @return 完成信号
+     */
+    public static CompletableFuture<Void> run(Runnable task) {
+        return supply(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * 尝试在数据库线程池中执行后台任务，不等待结果
+     * @param task 任务
+     * @return 线程池未初始化或已满时返回false（任务未执行）
+     */
+    public static boolean tryExecute(Runnable task) {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            return false;
+        }
+        try {
+            current.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 在主线程中处理异步结果
+     * @param future 异步结果
+     * @param callback 主线程回调
+     */
+    public static <T> void thenSync(CompletableFuture<T> future, Consumer<T> callback) {
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                logFailure(error);
+                return;
+            }
+            runSync(() -> callback.accept(result));
+        });
+    }
+
+    /**
+     * 在主线程中处理异步结果，玩家已离线时丢弃结果，出错时通知玩家
+     * @param future 异步结果
+     * @param player 发起操作的玩家
+     * @param callback 主线程回调
+     */
+    public static <T> void thenSync(CompletableFuture<T> future, Player player, Consumer<T> callback) {
+        future.whenComplete((result, error) -> runSync(() -> {
+            if (!player.isOnline()) {
+                return;
+            }
+            if (error != null) {
+                logFailure(error);
+                player.sendMessage("§c数据加载失败，请稍后重试！");
+                return;
+            }
+            callback.accept(result);
+        }));
+    }
+
+    /**
+     * 在主线程中处理异步结果，玩家离线时回调也会执行
+     * 出错或线程池已满被拒绝时记录日志并以 fallback 作为结果回调，用于失败后需要补偿（例如退还费用）的操作
+     * @param future 异步结果
+     * @param fallback 出错时的结果
+     * @param callback 主线程回调
+     */
+    public static <T> void thenSyncOrElse(CompletableFuture<T> future, T fallback, Consumer<T> callback) {
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                logFailure(error);
+            }
+            runSync(() -> callback.accept(error != null ? fallback : result));
+        });
+    }
+
+    private static void runSync(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else if (VillagerPro.getInstance().isEnabled()) {
+            Bukkit.getScheduler().runTask(VillagerPro.getInstance(), task);
+        }
+    }
+
+    private static void logFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RejectedExecutionException) {
+            VillagerPro.getInstance().getLogger().warning("数据库线程池已满，请求被拒绝");
+        } else {
+            VillagerPro.getInstance().getLogger().warning("异步数据库操作失败: " + cause);
+        }
+    }
+
+    // ============== 村庄 ==============
+
+    public static CompletableFuture<Village> getVillage(UUID ownerUUID) {
+        return supply(() -> VillageManager.getVillage(ownerUUID));
+    }
+
+    public static CompletableFuture<Village> getVillageById(int villageId) {
+        return supply(() -> VillageManager.getVillageById(villageId));
+    }
+
+    public static CompletableFuture<Village> createVillage(UUID ownerUUID, String name) {
+        return supply(() -> VillageManager.createVillage(ownerUUID, name));
+    }
+
+    /**
+     * 加载村庄概览（村庄、升级信息、村民列表、仓库存储量）
+     * @param ownerUUID 村庄所有者UUID
+     * @return 村庄概览，玩家没有村庄时为null
+     */
+    public static CompletableFuture<VillageOverview> getVillageOverview(UUID ownerUUID) {
+        return supply(() -> {
+            Village village = VillageManager.getVillage(ownerUUID);
+            if (village == null) {
+                return null;
+            }
+            // 村民上限和仓库容量依赖升级信息，在这里提前加载
+            village.getUpgrades();
+            return new VillageOverview(village,
+                    VillagerManager.getVillagers(village.getId()),
+                    WarehouseManager.getCurrentStorage(village.getId()));
+        });
+    }
+
+    // ============== 村民 ==============
+
+    public static CompletableFuture<List<VillagerData>> getVillagers(int villageId) {
+        return supply(() -> VillagerManager.getVillagers(villageId));
+    }
+
+    public static CompletableFuture<VillagerData> getVillager(UUID entityUUID) {
+        return supply(() -> VillagerManager.getVillager(entityUUID));
+    }
+
+    public static CompletableFuture<VillagerData> getVillagerById(int villagerId) {
+        return supply(() -> VillagerManager.getVillagerById(villagerId));
+    }
+
+    public static CompletableFuture<VillagerData> insertVillager(int villageId, UUID entityUUID, String profession) {
+        return supply(() -> VillagerManager.insertVillager(villageId, entityUUID, profession));
+    }
+
+    public static CompletableFuture<Boolean> removeVillager(int villagerId) {
+        return supply(() -> VillagerManager.removeVillager(villagerId));
+    }
+
+    // ============== 仓库 ==============
+
+    public static CompletableFuture<List<WarehouseItem>> getWarehouseItems(int villageId) {
+        return supply(() -> WarehouseManager.getWarehouseItems(villageId));
+    }
+
+    public static CompletableFuture<Integer> getCurrentStorage(int villageId) {
+        return supply(() -> WarehouseManager.getCurrentStorage(villageId));
+    }
+
+    public static CompletableFuture<Integer> takeWarehouseItem(int villageId, String itemType, int amount) {
+        return supply(() -> WarehouseManager.takeItem(villageId, itemType, amount));
+    }
+
+    // ============== 升级 ==============
+
+    public static CompletableFuture<Map<String, Integer>> getVillageUpgrades(int villageId) {
+        return supply(() -> VillageUpgradeManager.getVillageUpgrades(villageId));
+    }
+
+    public static CompletableFuture<Boolean> applyVillageUpgrade(Village village, String upgradeId) {
+        return supply(() -> VillageUpgradeManager.applyVillageUpgrade(village, upgradeId));
+    }
+
+    public static CompletableFuture<Map<String, Integer>> getVillagerUpgrades(int villagerId) {
+        return supply(() -> VillagerUpgradeManager.getVillagerUpgrades(villagerId));
+    }
+
+    public static CompletableFuture<Boolean> applyVillagerUpgrade(VillagerData villager, String skillId) {
+        return supply(() -> VillagerUpgradeManager.applyVillagerUpgrade(villager, skillId));
+    }
+}
@@ -0,0 +1,185 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+import org.sqlite.JDBC;
+import org.sqlite.SQLiteConnection;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 数据库在线热备份
+ * 使用 SQLite 驱动的在线备份接口逐步复制数据页，每一步之间暂停一段时间。
+ * 备份连接在整个过程中持有一个读事务，WAL 模式下写操作不受影响，
+ * 备份内容是开始时刻的一致快照，不会因为其他连接的写入而重新开始。
+ */
+public class BackupManager {
+    private static final String FILE_PREFIX = "database-";
+    private static final String FILE_SUFFIX = ".db";
+
+    private static final AtomicBoolean running = new AtomicBoolean();
+    private static BukkitTask task;
+
+    /**
+     * 启动定时备份任务
+     */
+    public static void initialize() {
+        VillagerPro plugin = VillagerPro.getInstance();
+        long hours = plugin.getConfig().getLong("database.backup.interval_hours", 24L);
+        if (hours <= 0 || !(DatabaseManager.getBackend() instanceof SqliteBackend)) {
+            return;
+        }
+        long interval = hours * 60L * 60L * 20L;
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, BackupManager::backup, interval, interval);
+    }
+
+    /**
+     * 停止定时备份任务
+     */
+    public static void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * 在异步线程中执行备份
+     * @return 备份文件，失败时为null
+     */
+    public static CompletableFuture<File> backupAsync() {
+        CompletableFuture<File> future = new CompletableFuture<>();
+        Bukkit.getScheduler().runTaskAsynchronously(VillagerPro.getInstance(), () -> future.complete(backup()));
+        return future;
+    }
+
+    /**
+     * 是否正在备份
+     * @return 是否正在备份
+     */
+    public static boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * 执行一次备份（在调用线程中执行，不要在主线程调用）
+     * @return 备份文件，失败时为null
+     */
+    public static File backup() {
+        if (!(DatabaseManager.getBackend() instanceof SqliteBackend)) {
+            VillagerPro.getInstance().getLogger().warning("当前存储后端不支持在线备份: " + DatabaseManager.getBackend().getName());
+            return null;
+        }
+        if (!running.compareAndSet(false, true)) {
+            VillagerPro.getInstance().getLogger().warning("已有备份正在进行，本次备份已跳过");
+            return null;
+        }
+
+        File temp = null;
+        try {
+            FileConfiguration config = VillagerPro.getInstance().getConfig();
+            int pagesPerStep = Math.max(1, config.getInt("database.backup.pages_per_step", 100));
+            long stepPause = Math.max(0L, config.getLong("database.backup.step_pause_ms", 10L));
+
+            File source = ((SqliteBackend) DatabaseManager.getBackend()).getDatabaseFile();
+            File directory = getBackupDirectory();
+            if (!directory.exists() && !directory.mkdirs()) {
+                VillagerPro.getInstance().getLogger().warning("无法创建备份目录: " + directory.getPath());
+                return null;
+            }
+            String name = FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+            File target = new File(directory, name + FILE_SUFFIX);
+            temp = new File(directory, name + FILE_SUFFIX + ".tmp");
+
+            long start = System.currentTimeMillis();
+            try (SQLiteConnection connection = JDBC.createConnection("jdbc:sqlite:" + source.getPath(), new Properties())) {
+                // 开启读事务固定快照，备份期间其他连接的写入不会导致备份重新开始
+                connection.setAutoCommit(false);
+                try (Statement statement = connection.createStatement();
+                     ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+                    resultSet.next();
+                }
+
+                int result = connection.getDatabase().backup("main", temp.getPath(),
+                        (remaining, total) -> pause(stepPause), 100, 50, pagesPerStep);
+                connection.rollback();
+                if (result != 0) {
+                    throw new SQLException("备份返回错误码 " + result);
+                }
+            }
+
+            if (!temp.renameTo(target)) {
+                throw new SQLException("无法重命名备份文件: " + temp.getPath());
+            }
+            VillagerPro.getInstance().getLogger().info("数据库备份完成: " + target.getName() + "（" + (target.length() / 1024) + "KB，耗时 " +
+                    (System.currentTimeMillis() - start) + "ms）");
+            rotate(directory, config);
+            return target;
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("数据库备份失败: " + e.getMessage());
+            if (temp != null && temp.exists() && !temp.delete()) {
+                VillagerPro.getInstance().getLogger().warning("无法删除未完成的备份文件: " + temp.getName());
+            }
+            return null;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 按保留策略删除旧备份：保留最新的 keep 个，且删除超过 max_age_days 天的备份
+     */
+    private static void rotate(File directory, FileConfiguration config) {
+        int keep = Math.max(1, config.getInt("database.backup.keep", 7));
+        int maxAgeDays = config.getInt("database.backup.max_age_days", 30);
+        long oldest = System.currentTimeMillis() - maxAgeDays * 24L * 60L * 60L * 1000L;
+
+        File[] backups = directory.listFiles((dir, fileName) -> fileName.startsWith(FILE_PREFIX) &&
+                (fileName.endsWith(FILE_SUFFIX) || fileName.endsWith(FILE_SUFFIX + ".tmp")));
+        if (backups == null) {
+            return;
+        }
+        // 文件名包含时间，按名称倒序即为从新到旧
+        Arrays.sort(backups, Comparator.comparing(File::getName).reversed());
+        int kept = 0;
+        for (File backup : backups) {
+            boolean complete = backup.getName().endsWith(FILE_SUFFIX);
+            if (complete && kept < keep && (maxAgeDays <= 0 || backup.lastModified() >= oldest)) {
+                kept++;
+                continue;
+            }
+            if (!backup.delete()) {
+                VillagerPro.getInstance().getLogger().warning("无法删除旧备份: " + backup.getName());
+            }
+        }
+    }
+
+    private static File getBackupDirectory() {
+        String path = VillagerPro.getInstance().getConfig().getString("database.backup.directory", "backups");
+        File directory = new File(path);
+        return directory.isAbsolute() ? directory : new File(VillagerPro.getInstance().getDataFolder(), path);
+    }
+
+    private static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
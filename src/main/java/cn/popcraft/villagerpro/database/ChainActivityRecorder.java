@@ -0,0 +1,172 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 协作链活动记录器
+ * 活动记录先进入内存缓冲区，由异步任务复用同一条预编译语句批量写入，
+ * 每次写入在一个事务中完成
+ */
+public class ChainActivityRecorder {
+    private static final String INSERT_SQL =
+            "INSERT INTO chain_activities (village_id, chain_name, step_type, profession, item_type, amount, consumed_at, produced_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 与 CURRENT_TIMESTAMP 保持相同的格式（UTC）
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final ConcurrentLinkedQueue<Activity> buffer = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger bufferedCount = new AtomicInteger();
+    private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private static final Object flushLock = new Object();
+    private static int batchSize = 100;
+    private static BukkitTask flushTask;
+
+    /**
+     * 协作链活动
+     */
+    private static class Activity {
+        private final int villageId;
+        private final String chainName;
+        private final String stepType;
+        private final String profession;
+        private final String itemType;
+        private final int amount;
+        private final String time;
+
+        Activity(int villageId, String chainName, String stepType, String profession, String itemType, int amount, String time) {
+            this.villageId = villageId;
+            this.chainName = chainName;
+            this.stepType = stepType;
+            this.profession = profession;
+            this.itemType = itemType;
+            this.amount = amount;
+            this.time = time;
+        }
+    }
+
+    /**
+     * 启动定时写入任务
+     */
+    public static void initialize() {
+        VillagerPro plugin = VillagerPro.getInstance();
+        batchSize = Math.max(1, plugin.getConfig().getInt("eco_chain.activity_log.batch_size", 100));
+        long interval = Math.max(20L, plugin.getConfig().getLong("eco_chain.activity_log.flush_interval_ticks", 100L));
+        flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, ChainActivityRecorder::flush, interval, interval);
+    }
+
+    /**
+     * 停止定时任务，并同步写入缓冲区中剩余的记录
+     */
+    public static void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        flush();
+    }
+
+    /**
+     * 记录消费活动
+     * @param villageId 村庄ID
+     * @param chainName 协作链名称
+     * @param profession 消费者职业
+     * @param itemType 物品类型
+     * @param amount 数量
+     */
+    public static void recordConsume(int villageId, String chainName, String profession, String itemType, int amount) {
+        record(new Activity(villageId, chainName, "consume", profession, itemType, amount, now()));
+    }
+
+    /**
+     * 记录产出活动
+     * @param villageId 村庄ID
+     * @param chainName 协作链名称
+     * @param profession 产出者职业
+     * @param itemType 物品类型
+     * @param amount 数量
+     */
+    public static void recordProduce(int villageId, String chainName, String profession, String itemType, int amount) {
+        record(new Activity(villageId, chainName, "produce", profession, itemType, amount, now()));
+    }
+
+    private static void record(Activity activity) {
+        buffer.add(activity);
+        if (bufferedCount.incrementAndGet() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            // 线程池拒绝任务时记录留在缓冲区，由定时任务写入
+            AsyncRepository.run(ChainActivityRecorder::flush)
+                    .whenComplete((result, error) -> flushScheduled.set(false));
+        }
+    }
+
+    /**
+     * 将缓冲区中的记录写入数据库
+     */
+    public static void flush() {
+        synchronized (flushLock) {
+            List<Activity> batch = new ArrayList<>();
+            Activity activity;
+            while ((activity = buffer.poll()) != null) {
+                batch.add(activity);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            bufferedCount.addAndGet(-batch.size());
+
+            try (Connection connection = DatabaseManager.getConnection()) {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL)) {
+                    for (Activity entry : batch) {
+                        boolean consume = "consume".equals(entry.stepType);
+                        statement.setInt(1, entry.villageId);
+                        statement.setString(2, entry.chainName);
+                        statement.setString(3, entry.stepType);
+                        statement.setString(4, entry.profession);
+                        statement.setString(5, entry.itemType);
+                        statement.setInt(6, entry.amount);
+                        statement.setString(7, consume ? entry.time : null);
+                        statement.setString(8, consume ? null : entry.time);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } catch (SQLException e) {
+                VillagerPro.getInstance().getLogger().warning("记录协作链活动失败（丢弃 " + batch.size() + " 条记录）: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 获取缓冲区中待写入的记录数
+     * @return 记录数
+     */
+    public static int getPendingCount() {
+        return bufferedCount.get();
+    }
+
+    private static String now() {
+        return LocalDateTime.now(ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
+    }
+}
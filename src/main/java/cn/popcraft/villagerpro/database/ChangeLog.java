@@ -0,0 +1,337 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.managers.CacheManager;
+import cn.popcraft.villagerpro.managers.EntityRegistry;
+import cn.popcraft.villagerpro.managers.VillagerManager;
+import cn.popcraft.villagerpro.models.VillagerData;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 跨服务器缓存一致性
+ * 多个服务器共用一个数据库时，每次写入村庄/村民/仓库/升级数据后向 cache_changes 表追加一条
+ * （实体类型, 实体ID）记录。变更记录与数据写入走同一个写回队列并排在其后，
+ * 其他服务器看到变更记录时数据一定已经提交。
+ * 每个服务器以已处理的最大ID作为水位线定期增量读取其他服务器的变更，只清除（村民经验结算时原地更新）受影响的缓存条目，
+ * 并同步更新受管理实体集合。
+ */
+public class ChangeLog {
+    private static final int POLL_LIMIT = 1000;
+    // 自增ID可能因并发事务乱序提交而暂时出现空洞，空洞超过该时间仍未补上时视为回滚跳过
+    private static final long GAP_GRACE_MILLIS = 10_000L;
+
+    /**
+     * 变更的实体类型
+     */
+    public enum EntityType {
+        VILLAGE,
+        VILLAGER,
+        WAREHOUSE,
+        VILLAGER_SKILLS,
+        VILLAGE_UPGRADES,
+        // 村庄内村民的批量变更（工作周期的经验结算），实体ID为村庄ID
+        VILLAGE_VILLAGERS
+    }
+
+    private static final String serverId = UUID.randomUUID().toString();
+    private static final Object pollLock = new Object();
+    private static final LongAdder appliedChanges = new LongAdder();
+
+    private static volatile boolean enabled = false;
+    private static BukkitTask task;
+
+    // 以下字段只在持有 pollLock 时访问
+    // 该ID及之前的变更都已处理
+    private static long highWaterMark = -1;
+    // 水位线之后已处理的变更ID（存在空洞时）
+    private static final Set<Long> processedAboveMark = new HashSet<>();
+    private static long gapSince = 0;
+
+    /**
+     * 读取配置并启动轮询任务
+     */
+    public static void initialize() {
+        VillagerPro plugin = VillagerPro.getInstance();
+        FileConfiguration config = plugin.getConfig();
+        enabled = config.getBoolean("cache.coherence.enabled", false);
+        if (!enabled) {
+            return;
+        }
+        long interval = Math.max(1L, config.getLong("cache.coherence.poll_interval_ticks", 20L));
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, ChangeLog::poll, interval, interval);
+    }
+
+    /**
+     * 停止轮询任务
+     */
+    public static void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * 记录一次变更（在对应的数据写入之后调用）
+     * 相同实体在同一批写入中的多次变更只保留最后一条
+     * @param type 实体类型
+     * @param id 实体ID
+     */
+    public static void record(EntityType type, int id) {
+        if (!enabled) {
+            return;
+        }
+        DatabaseManager.queueWrite("cache_changes:" + type + ":" + id,
+                "INSERT INTO cache_changes (server_id, entity_type, entity_id, changed_at) VALUES (?, ?, ?, ?)",
+                serverId, type.name(), id, System.currentTimeMillis());
+    }
+
+    /**
+     * 以一条多行插入语句记录同一类型的多个实体的变更（在对应的数据写入之后调用）
+     * @param type 实体类型
+     * @param ids 实体ID
+     */
+    public static void recordAll(EntityType type, Collection<Integer> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        StringBuilder rows = new StringBuilder();
+        List<Object> params = new ArrayList<>(ids.size() * 4);
+        long now = System.currentTimeMillis();
+        for (int id : ids) {
+            rows.append(rows.length() == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            params.add(serverId);
+            params.add(type.name());
+            params.add(id);
+            params.add(now);
+        }
+        DatabaseManager.queueAppend("INSERT INTO cache_changes (server_id, entity_type, entity_id, changed_at) VALUES " + rows,
+                params.toArray());
+    }
+
+    /**
+     * 读取其他服务器的新变更并清除对应缓存（在异步线程中调用）
+     */
+    public static void poll() {
+        synchronized (pollLock) {
+            try (Connection connection = DatabaseManager.getReadConnection()) {
+                if (highWaterMark < 0) {
+                    // 启动时缓存为空，之前的变更无需处理
+                    highWaterMark = readMaxId(connection);
+                    return;
+                }
+
+                Set<String> changes = new LinkedHashSet<>();
+                List<Long> fetchedIds = new ArrayList<>();
+                long contiguous = highWaterMark;
+                boolean gap = false;
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT id, server_id, entity_type, entity_id FROM cache_changes WHERE id > ? ORDER BY id LIMIT ?")) {
+                    statement.setLong(1, highWaterMark);
+                    statement.setInt(2, POLL_LIMIT);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            long id = resultSet.getLong("id");
+                            if (!gap && id == contiguous + 1) {
+                                contiguous = id;
+                            } else {
+                                gap = true;
+                            }
+                            if (processedAboveMark.contains(id)) {
+                                continue;
+                            }
+                            fetchedIds.add(id);
+                            if (!serverId.equals(resultSet.getString("server_id"))) {
+                                // 同一实体的多次变更只处理一次
+                                changes.add(resultSet.getString("entity_type") + ":" + resultSet.getInt("entity_id"));
+                            }
+                        }
+                    }
+                }
+
+                // 先清除缓存再推进水位线，清除失败时下次轮询会重新处理
+                if (!changes.isEmpty()) {
+                    apply(connection, changes);
+                    appliedChanges.add(changes.size());
+                }
+                processedAboveMark.addAll(fetchedIds);
+
+                if (gap) {
+                    long now = System.currentTimeMillis();
+                    if (gapSince == 0) {
+                        gapSince = now;
+                    } else if (now - gapSince >= GAP_GRACE_MILLIS) {
+                        // 空洞长时间未补上（事务已回滚），跳过
+                        contiguous = Collections.max(processedAboveMark);
+                        gapSince = 0;
+                    }
+                } else {
+                    gapSince = 0;
+                }
+                advance(contiguous);
+            } catch (SQLException e) {
+                VillagerPro.getInstance().getLogger().warning("读取缓存变更记录失败：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 删除超过保留期限的变更记录（由数据维护任务调用）
+     * @return 删除的记录数
+     * @throws SQLException SQL异常
+     */
+    public static int prune() throws SQLException {
+        long retention = Math.max(1L, VillagerPro.getInstance().getConfig()
+                .getLong("cache.coherence.retention_minutes", 60L)) * 60_000L;
+        try (Connection connection = DatabaseManager.getConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM cache_changes WHERE changed_at < ?")) {
+            statement.setLong(1, System.currentTimeMillis() - retention);
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * 是否启用
+     * @return 是否启用
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 当前服务器的标识
+     * @return 服务器标识
+     */
+    public static String getServerId() {
+        return serverId;
+    }
+
+    /**
+     * 已处理的其他服务器变更数
+     * @return 变更数
+     */
+    public static long getAppliedChanges() {
+        return appliedChanges.sum();
+    }
+
+    private static long readMaxId(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT MAX(id) FROM cache_changes");
+             ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    private static void advance(long mark) {
+        highWaterMark = mark;
+        processedAboveMark.removeIf(id -> id <= mark);
+    }
+
+    /**
+     * 清除或原地更新受影响的缓存条目
+     * @param keys 实体类型:实体ID
+     */
+    private static void apply(Connection connection, Set<String> keys) throws SQLException {
+        List<Integer> villagerIds = new ArrayList<>();
+        Set<Integer> villageIds = new HashSet<>();
+        for (String key : keys) {
+            int separator = key.indexOf(':');
+            EntityType type;
+            try {
+                type = EntityType.valueOf(key.substring(0, separator));
+            } catch (IllegalArgumentException e) {
+                // 更新版本的服务器写入的未知类型
+                continue;
+            }
+            int id = Integer.parseInt(key.substring(separator + 1));
+            switch (type) {
+                case VILLAGE:
+                    CacheManager.invalidateVillageById(id);
+                    break;
+                case VILLAGER:
+                    villagerIds.add(id);
+                    break;
+                case WAREHOUSE:
+                    CacheManager.invalidateWarehouse(id);
+                    break;
+                case VILLAGER_SKILLS:
+                    CacheManager.invalidateVillagerSkills(id);
+                    break;
+                case VILLAGE_UPGRADES:
+                    CacheManager.invalidateVillageUpgrades(id);
+                    break;
+                case VILLAGE_VILLAGERS:
+                    villageIds.add(id);
+                    break;
+            }
+        }
+        if (!villageIds.isEmpty()) {
+            // 村庄内村民的经验结算不改变列表成员，原地更新已缓存村民的等级和经验
+            VillagerManager.reloadProgress(connection, CacheManager.getCachedVillagersOfVillages(villageIds));
+        }
+        if (!villagerIds.isEmpty()) {
+            applyVillagerChanges(connection, villagerIds);
+        }
+    }
+
+    /**
+     * 村民变更：读取最新的所属村庄和实体UUID，清除新旧村庄的村民列表并更新受管理实体集合
+     */
+    private static void applyVillagerChanges(Connection connection, List<Integer> villagerIds) throws SQLException {
+        Map<Integer, Object[]> current = new HashMap<>();
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < villagerIds.size(); i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, village_id, entity_uuid FROM villagers WHERE id IN (" + placeholders + ")")) {
+            for (int i = 0; i < villagerIds.size(); i++) {
+                statement.setInt(i + 1, villagerIds.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    current.put(resultSet.getInt("id"), new Object[]{
+                            resultSet.getInt("village_id"), UUID.fromString(resultSet.getString("entity_uuid"))});
+                }
+            }
+        }
+
+        for (int villagerId : villagerIds) {
+            VillagerData cached = CacheManager.getCachedVillagerById(villagerId);
+            Object[] row = current.get(villagerId);
+            UUID entityUUID = row != null ? (UUID) row[1] : null;
+            if (cached != null) {
+                CacheManager.invalidateVillageVillagers(cached.getVillageId());
+                if (!cached.getEntityUUID().equals(entityUUID)) {
+                    CacheManager.removeManagedEntity(cached.getEntityUUID());
+                    EntityRegistry.untrack(cached.getEntityUUID());
+                }
+            }
+            CacheManager.invalidateVillager(villagerId);
+            if (row != null) {
+                CacheManager.invalidateVillageVillagers((Integer) row[0]);
+                CacheManager.addManagedEntity(entityUUID);
+            } else {
+                // 村民已被删除
+                CacheManager.invalidateVillagerSkills(villagerId);
+            }
+        }
+    }
+}
@@ -4,30 +4,50 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
 import cn.popcraft.villagerpro.VillagerPro;
-import java.io.File;
+import org.bukkit.configuration.file.FileConfiguration;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 public class DatabaseManager {
     private static HikariDataSource dataSource;
+    private static HikariDataSource readDataSource;
+    private static WriteBehindQueue writeQueue;
+    private static StorageBackend backend;
     
     /**
      * 初始化数据库连接
+     * 根据 database.type 选择存储后端，由后端提供连接池配置和SQL方言
      */
     public static void initialize() {
         try {
-            HikariConfig config = new HikariConfig();
-            config.setJdbcUrl("jdbc:sqlite:" + new File("plugins/VillagerPro/database.db").getAbsolutePath());
-            config.setMaximumPoolSize(10);
-            config.setMinimumIdle(2);
-            config.setConnectionTimeout(30000);
-            config.setIdleTimeout(600000);
-            config.setMaxLifetime(1800000);
+            FileConfiguration fileConfig = VillagerPro.getInstance().getConfig();
+            SqlMetrics.initialize();
+            backend = StorageBackend.fromConfig(fileConfig);
+            
+            dataSource = new HikariDataSource(backend.createWriterConfig(fileConfig));
             
-            dataSource = new HikariDataSource(config);
+            // 只读连接池（可选），需在写连接池之后创建
+            HikariConfig readConfig = backend.createReaderConfig(fileConfig);
+            if (readConfig != null) {
+                readDataSource = new HikariDataSource(readConfig);
+            }
+            VillagerPro.getInstance().getLogger().info("使用 " + backend.getName() + " 存储后端");
             
             createTables();
+            migrateSchema();
+            
+            // 启动写回队列
+            int batchSize = fileConfig.getInt("database.write_behind.batch_size", 200);
+            long flushInterval = fileConfig.getLong("database.write_behind.flush_interval_ms", 1000L);
+            writeQueue = new WriteBehindQueue(batchSize, flushInterval);
+            if (fileConfig.getBoolean("database.write_behind.enabled", true)) {
+                writeQueue.start();
+            }
         } catch (Exception e) {
             VillagerPro.getInstance().getLogger().severe("数据库初始化失败: " + e.getMessage());
         }
@@ -37,14 +57,15 @@ public class DatabaseManager {
      * 创建数据表
      */
     private static void createTables() {
+        String autoIncrement = backend.autoIncrementKey();
         try (Connection connection = dataSource.getConnection();
              Statement statement = connection.createStatement()) {
             
             // 创建村庄表
             statement.execute("CREATE TABLE IF NOT EXISTS villages (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "owner_uuid TEXT NOT NULL UNIQUE, " +
-                    "name TEXT NOT NULL DEFAULT 'My Village', " +
+                    "id " + autoIncrement + ", " +
+                    "owner_uuid VARCHAR(36) NOT NULL UNIQUE, " +
+                    "name VARCHAR(64) NOT NULL DEFAULT 'My Village', " +
                     "level INTEGER NOT NULL DEFAULT 1, " +
                     "experience INTEGER NOT NULL DEFAULT 0, " +
                     "prosperity INTEGER NOT NULL DEFAULT 0, " +
@@ -53,31 +74,31 @@ public class DatabaseManager {
             
             // 创建村民表
             statement.execute("CREATE TABLE IF NOT EXISTS villagers (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "village_id INTEGER NOT NULL, " +
-                    "entity_uuid TEXT NOT NULL, " +
+                    "entity_uuid VARCHAR(36) NOT NULL, " +
                     "profession TEXT NOT NULL, " +
                     "level INTEGER NOT NULL DEFAULT 1, " +
                     "experience INTEGER NOT NULL DEFAULT 0, " +
-                    "follow_mode TEXT NOT NULL DEFAULT 'FREE', " +
+                    "follow_mode VARCHAR(16) NOT NULL DEFAULT 'FREE', " +
                     "recruited_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                     "FOREIGN KEY (village_id) REFERENCES villages(id) ON DELETE CASCADE" +
                     ")");
             
             // 创建仓库表
             statement.execute("CREATE TABLE IF NOT EXISTS warehouse (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "village_id INTEGER NOT NULL, " +
-                    "item_type TEXT NOT NULL, " +
+                    "item_type VARCHAR(64) NOT NULL, " +
                     "amount INTEGER NOT NULL DEFAULT 0, " +
-                    "UNIQUE(village_id, item_type) ON CONFLICT REPLACE, " +
+                    "UNIQUE (village_id, item_type), " +
                     "FOREIGN KEY (village_id) REFERENCES villages(id) ON DELETE CASCADE" +
                     ")");
             
             // 创建村庄升级表
             statement.execute("CREATE TABLE IF NOT EXISTS village_upgrades (" +
                     "village_id INTEGER NOT NULL, " +
-                    "upgrade_id TEXT NOT NULL, " +
+                    "upgrade_id VARCHAR(64) NOT NULL, " +
                     "level INTEGER NOT NULL DEFAULT 1, " +
                     "PRIMARY KEY (village_id, upgrade_id), " +
                     "FOREIGN KEY (village_id) REFERENCES villages(id) ON DELETE CASCADE" +
@@ -86,7 +107,7 @@ public class DatabaseManager {
             // 创建村民升级表
             statement.execute("CREATE TABLE IF NOT EXISTS villager_upgrades (" +
                     "villager_id INTEGER NOT NULL, " +
-                    "skill_id TEXT NOT NULL, " +
+                    "skill_id VARCHAR(64) NOT NULL, " +
                     "level INTEGER NOT NULL DEFAULT 1, " +
                     "PRIMARY KEY (villager_id, skill_id), " +
                     "FOREIGN KEY (villager_id) REFERENCES villagers(id) ON DELETE CASCADE" +
@@ -94,7 +115,7 @@ public class DatabaseManager {
             
             // 创建访客表
             statement.execute("CREATE TABLE IF NOT EXISTS visitors (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "village_id INTEGER NOT NULL, " +
                     "type TEXT NOT NULL, " +
                     "name TEXT NOT NULL, " +
@@ -102,7 +123,7 @@ public class DatabaseManager {
                     "location_x REAL NOT NULL, " +
                     "location_y REAL NOT NULL, " +
                     "location_z REAL NOT NULL, " +
-                    "world TEXT NOT NULL, " +
+                    "world VARCHAR(64) NOT NULL, " +
                     "spawned_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                     "expires_at DATETIME NOT NULL, " +
                     "active BOOLEAN DEFAULT 1, " +
@@ -112,7 +133,7 @@ public class DatabaseManager {
             
             // 创建访客交易表
             statement.execute("CREATE TABLE IF NOT EXISTS visitor_deals (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "visitor_id INTEGER NOT NULL, " +
                     "deal_type TEXT NOT NULL, " +
                     "item_type TEXT NOT NULL, " +
@@ -123,7 +144,7 @@ public class DatabaseManager {
                     "reward_amount INTEGER DEFAULT 0, " +
                     "reward_item TEXT, " +
                     "player_name TEXT NOT NULL, " +
-                    "status TEXT NOT NULL DEFAULT 'pending', " +
+                    "status VARCHAR(32) NOT NULL DEFAULT 'pending', " +
                     "created_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                     "completed_at DATETIME, " +
                     "expires_at DATETIME NOT NULL, " +
@@ -132,7 +153,7 @@ public class DatabaseManager {
             
             // 创建村庄装饰表
             statement.execute("CREATE TABLE IF NOT EXISTS decorations (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "village_id INTEGER NOT NULL, " +
                     "decoration_type TEXT NOT NULL, " +
                     "item_type TEXT NOT NULL, " +
@@ -140,7 +161,7 @@ public class DatabaseManager {
                     "location_x REAL NOT NULL, " +
                     "location_y REAL NOT NULL, " +
                     "location_z REAL NOT NULL, " +
-                    "world TEXT NOT NULL, " +
+                    "world VARCHAR(64) NOT NULL, " +
                     "placed_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                     "FOREIGN KEY (village_id) REFERENCES villages(id) ON DELETE CASCADE" +
                     ")");
@@ -157,7 +178,7 @@ public class DatabaseManager {
             
             // 创建事件记录表
             statement.execute("CREATE TABLE IF NOT EXISTS events (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "village_id INTEGER NOT NULL, " +
                     "event_type TEXT NOT NULL, " +
                     "event_data TEXT, " +
@@ -168,7 +189,7 @@ public class DatabaseManager {
             
             // 创建生态链配置表
             statement.execute("CREATE TABLE IF NOT EXISTS eco_chains (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "village_id INTEGER NOT NULL, " +
                     "chain_type TEXT NOT NULL, " +
                     "producer_profession TEXT NOT NULL, " +
@@ -184,7 +205,7 @@ public class DatabaseManager {
             
             // 创建联盟表
             statement.execute("CREATE TABLE IF NOT EXISTS alliances (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "name TEXT NOT NULL, " +
                     "owner_village_id INTEGER NOT NULL, " +
                     "max_members INTEGER DEFAULT 5, " +
@@ -204,7 +225,7 @@ public class DatabaseManager {
             
             // 创建协作链活动记录表
             statement.execute("CREATE TABLE IF NOT EXISTS chain_activities (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "village_id INTEGER NOT NULL, " +
                     "chain_name TEXT NOT NULL, " +
                     "step_type TEXT NOT NULL, " +
@@ -218,7 +239,7 @@ public class DatabaseManager {
             
             // 创建传承记录表
             statement.execute("CREATE TABLE IF NOT EXISTS legacy_records (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "id " + autoIncrement + ", " +
                     "original_villager_id INTEGER NOT NULL, " +
                     "village_id INTEGER NOT NULL, " +
                     "profession TEXT NOT NULL, " +
@@ -232,8 +253,8 @@ public class DatabaseManager {
             
             // 创建访客委托表
             statement.execute("CREATE TABLE IF NOT EXISTS visitor_quests (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "player_uuid TEXT NOT NULL, " +
+                    "id " + autoIncrement + ", " +
+                    "player_uuid VARCHAR(36) NOT NULL, " +
                     "visitor_id INTEGER NOT NULL, " +
                     "quest_name TEXT NOT NULL, " +
                     "item_type TEXT NOT NULL, " +
@@ -242,7 +263,7 @@ public class DatabaseManager {
                     "reward_type TEXT, " +
                     "reward_item TEXT, " +
                     "reward_amount INTEGER DEFAULT 0, " +
-                    "status TEXT NOT NULL DEFAULT 'accepted', " +
+                    "status VARCHAR(32) NOT NULL DEFAULT 'accepted', " +
                     "accepted_at DATETIME DEFAULT CURRENT_TIMESTAMP, " +
                     "completed_at DATETIME, " +
                     "FOREIGN KEY (visitor_id) REFERENCES visitors(id) ON DELETE CASCADE" +
@@ -256,7 +277,19 @@ public class DatabaseManager {
     }
     
     /**
-     * 获取数据库连接
+     * 执行数据库结构迁移（索引、列变更等）
+     */
+    private static void migrateSchema() {
+        try (Connection connection = dataSource.getConnection()) {
+            SchemaMigrator.migrate(connection);
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().severe("数据库迁移失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 获取数据库连接（写连接）
+     * SQLite 的写连接池只有一个连接，用完必须立即关闭，且不要在持有连接时再次获取写连接
      * @return 数据库连接
      * @throws SQLException SQL异常
      */
@@ -264,13 +297,130 @@ public class DatabaseManager {
         if (dataSource == null) {
             throw new SQLException("DataSource is not initialized");
         }
-        return dataSource.getConnection();
+        return SqlMetrics.wrap(dataSource.getConnection());
+    }
+    
+    /**
+     * 获取只读数据库连接，仅用于查询
+     * 读连接看不到写回队列中尚未提交的数据，需要最新数据时先调用 {@link #flushWrites(String)}
+     * @return 只读数据库连接
+     * @throws SQLException SQL异常
+     */
+    public static Connection getReadConnection() throws SQLException {
+        if (readDataSource == null) {
+            return getConnection();
+        }
+        return SqlMetrics.wrap(readDataSource.getConnection());
+    }
+    
+    /**
+     * 提交异步写操作，同一行键的多次更新只会写入最新一次
+     * @param rowKey 行键（例如 "villagers:12"）
+     * @param sql SQL语句
+     * @param params 参数
+     */
+    public static void queueWrite(String rowKey, String sql, Object... params) {
+        if (writeQueue == null) {
+            VillagerPro.getInstance().getLogger().warning("数据库未初始化，写操作被丢弃: " + sql);
+            return;
+        }
+        writeQueue.submit(rowKey, sql, params);
+    }
+    
+    /**
+     * 提交异步写操作（不合并，例如增量更新或日志插入）
+     * @param sql SQL语句
+     * @param params 参数
+     */
+    public static void queueAppend(String sql, Object... params) {
+        queueWrite(null, sql, params);
+    }
+    
+    /**
+     * 提交不合并的异步写操作，并以行键标记，读取该行前可通过 {@link #flushWrites(String)} 等待其提交
+     * @param rowKey 行键（例如 "warehouse:3"）
+     * @param sql SQL语句
+     * @param params 参数
+     */
+    public static void queueTaggedAppend(String rowKey, String sql, Object... params) {
+        if (writeQueue == null) {
+            VillagerPro.getInstance().getLogger().warning("数据库未初始化，写操作被丢弃: " + sql);
+            return;
+        }
+        writeQueue.append(rowKey, sql, params);
+    }
+    
+    /**
+     * 提交一组异步写操作，整组在同一个事务中执行
+     * @param writes 写操作
+     */
+    public static void queueWrites(List<WriteBehindQueue.Write> writes) {
+        if (writeQueue == null) {
+            VillagerPro.getInstance().getLogger().warning("数据库未初始化，" + writes.size() + " 条写操作被丢弃");
+            return;
+        }
+        writeQueue.submitAll(writes);
+    }
+    
+    /**
+     * 等待已排队的写操作全部提交
+     * 会等待写线程提交整个队列，不要在主线程中调用；读取单行前使用 {@link #flushWrites(String)}
+     */
+    public static void flushWrites() {
+        if (writeQueue != null) {
+            writeQueue.flush();
+        }
+    }
+    
+    /**
+     * 等待指定行的写操作提交，用于缓存未命中时读取最新数据
+     * 该行没有排队中或正在执行的写操作时立即返回（主线程中的常见情况）；
+     * 否则只等待该行最后一次入队的写操作所在的批次提交，之后入队的其他行不会延长等待
+     * @param rowKey 行键（例如 "villagers:12"）
+     * @return 是否等待过
+     */
+    public static boolean flushWrites(String rowKey) {
+        return flushWrites(Collections.singletonList(rowKey));
+    }
+    
+    /**
+     * 等待指定行的写操作提交
+     * @param rowKeys 行键
+     * @return 是否等待过，等待过时调用者应重新读取
+     */
+    public static boolean flushWrites(Collection<String> rowKeys) {
+        return writeQueue != null && writeQueue.flush(rowKeys);
+    }
+    
+    /**
+     * 获取当前存储后端，用于生成方言相关的SQL
+     * @return 存储后端
+     */
+    public static StorageBackend getBackend() {
+        return backend;
+    }
+    
+    /**
+     * 获取写回队列
+     * @return 写回队列
+     */
+    public static WriteBehindQueue getWriteQueue() {
+        return writeQueue;
     }
     
     /**
      * 关闭数据库连接
      */
     public static void shutdown() {
+        // 先排空写回队列，再关闭连接池
+        if (writeQueue != null) {
+            writeQueue.shutdown();
+        }
+        
+        if (readDataSource != null && !readDataSource.isClosed()) {
+            readDataSource.close();
+        }
+        
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
         }
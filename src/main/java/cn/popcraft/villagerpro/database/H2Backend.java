@@ -0,0 +1,51 @@
+package cn.popcraft.villagerpro.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.File;
+
+/**
+ * H2 存储后端
+ * 以 MySQL 兼容模式运行，SQL方言与 MySQL 后端一致；
+ * server 模式连接独立的 H2 TCP 服务，可作为本地测试时 MySQL 的替代品
+ */
+public class H2Backend extends MySqlBackend {
+
+    public H2Backend() {
+        super(false);
+    }
+
+    @Override
+    public String getName() {
+        return "H2";
+    }
+
+    @Override
+    public HikariConfig createWriterConfig(FileConfiguration config) {
+        String options = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        String url;
+        if ("server".equalsIgnoreCase(config.getString("database.h2.mode", "file"))) {
+            String host = config.getString("database.h2.host", "localhost");
+            int port = config.getInt("database.h2.port", 9092);
+            String database = config.getString("database.h2.database", "villagerpro");
+            url = "jdbc:h2:tcp://" + host + ":" + port + "/" + database + options;
+        } else {
+            File file = new File("plugins/VillagerPro/database").getAbsoluteFile();
+            url = "jdbc:h2:file:" + file.getPath() + options;
+        }
+
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("VillagerPro-H2");
+        hikari.setDriverClassName("org.h2.Driver");
+        hikari.setJdbcUrl(url);
+        hikari.setUsername(config.getString("database.h2.username", "sa"));
+        hikari.setPassword(config.getString("database.h2.password", ""));
+        hikari.setMaximumPoolSize(Math.max(2, config.getInt("database.h2.pool_size", 4)));
+        hikari.setMinimumIdle(1);
+        hikari.setConnectionTimeout(30000);
+        hikari.setIdleTimeout(600000);
+        hikari.setMaxLifetime(1800000);
+        return hikari;
+    }
+}
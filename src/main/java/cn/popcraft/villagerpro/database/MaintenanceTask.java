@@ -0,0 +1,302 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 数据维护任务
+ * 定期在后台执行：
+ * 1. 将协作链活动原始记录按小时/天汇总到 chain_activity_rollups（以已汇总的最大ID作为水位线，增量处理）
+ * 2. 分批删除超过保留期限的原始记录和事件记录，以及过期的缓存变更记录
+ * 3. 回收数据库文件中的空闲空间（SQLite 增量回收）
+ * 每一批操作使用独立的事务，批次之间会释放写连接，不会长时间阻塞其他写操作
+ */
+public class MaintenanceTask {
+    private static final String ROLLUP_WATERMARK = "chain_activities_rollup";
+    private static final Object runLock = new Object();
+    private static BukkitTask task;
+
+    /**
+     * 启动定时维护任务
+     */
+    public static void initialize() {
+        VillagerPro plugin = VillagerPro.getInstance();
+        if (!plugin.getConfig().getBoolean("database.maintenance.enabled", true)) {
+            return;
+        }
+        long interval = Math.max(1L, plugin.getConfig().getLong("database.maintenance.interval_minutes", 60L)) * 60L * 20L;
+        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, MaintenanceTask::run, interval, interval);
+    }
+
+    /**
+     * 停止定时维护任务
+     */
+    public static void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * 立即执行一次维护（在调用线程中执行，不要在主线程调用）
+     */
+    public static void run() {
+        synchronized (runLock) {
+            FileConfiguration config = VillagerPro.getInstance().getConfig();
+            int chunkSize = Math.max(50, config.getInt("database.maintenance.chunk_size", 500));
+            try {
+                int rolledUp = rollupChainActivities(chunkSize);
+
+                int prunedActivities = pruneByIds(
+                        "SELECT id FROM chain_activities WHERE id <= ? AND COALESCE(consumed_at, produced_at) < ? ORDER BY id LIMIT ?",
+                        "DELETE FROM chain_activities WHERE id = ?",
+                        readWatermark(), cutoff(config.getInt("database.maintenance.activity_retention_days", 7)), chunkSize);
+
+                int prunedEvents = pruneByIds(
+                        "SELECT id FROM events WHERE id <= ? AND triggered_at < ? ORDER BY id LIMIT ?",
+                        "DELETE FROM events WHERE id = ?",
+                        Long.MAX_VALUE, cutoff(config.getInt("database.maintenance.event_retention_days", 30)), chunkSize);
+
+                int prunedRollups = pruneHourlyRollups(cutoff(config.getInt("database.maintenance.hourly_rollup_retention_days", 30)));
+                int prunedChanges = ChangeLog.isEnabled() ? ChangeLog.prune() : 0;
+
+                int reclaimedPages;
+                try (Connection connection = DatabaseManager.getConnection()) {
+                    reclaimedPages = DatabaseManager.getBackend().reclaimSpace(connection,
+                            Math.max(0, config.getInt("database.maintenance.vacuum_pages", 1000)),
+                            config.getBoolean("database.maintenance.convert_auto_vacuum", false));
+                }
+
+                if (rolledUp + prunedActivities + prunedEvents + prunedRollups + prunedChanges + reclaimedPages > 0) {
+                    VillagerPro.getInstance().getLogger().info("数据维护完成：汇总活动记录 " + rolledUp + " 条，删除活动记录 " + prunedActivities +
+                            " 条，删除事件记录 " + prunedEvents + " 条，删除小时汇总 " + prunedRollups + " 条，删除缓存变更记录 " + prunedChanges +
+                            " 条，回收 " + reclaimedPages + " 页");
+                }
+            } catch (SQLException e) {
+                VillagerPro.getInstance().getLogger().warning("数据维护失败：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 将 SQLite 数据库切换为增量回收模式（已切换时不做任何操作）
+     * 需要执行一次完整的 VACUUM，期间独占写连接，写回队列会暂停；由管理员在服务器空闲时手动执行
+     * @return 完成信号，失败时以异常完成
+     */
+    public static CompletableFuture<Void> convertAutoVacuumAsync() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Bukkit.getScheduler().runTaskAsynchronously(VillagerPro.getInstance(), () -> {
+            synchronized (runLock) {
+                try (Connection connection = DatabaseManager.getConnection()) {
+                    DatabaseManager.getBackend().reclaimSpace(connection, 0, true);
+                    future.complete(null);
+                } catch (SQLException e) {
+                    VillagerPro.getInstance().getLogger().warning("切换数据库增量回收模式失败：" + e.getMessage());
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 将水位线之后的协作链活动汇总到小时和天两个粒度
+     * @param chunkSize 每批处理的记录数
+     * @return 汇总的记录数
+     */
+    private static int rollupChainActivities(int chunkSize) throws SQLException {
+        String upsertSql = DatabaseManager.getBackend().upsertAdd("chain_activity_rollups",
+                new String[]{"period", "period_start", "village_id", "chain_name", "step_type", "item_type"},
+                "amount", "activity_count");
+        int total = 0;
+
+        while (true) {
+            try (Connection connection = DatabaseManager.getConnection()) {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    long watermark = readWatermark(connection);
+                    long lastId = watermark;
+                    int fetched = 0;
+                    Map<String, Object[]> rollups = new LinkedHashMap<>();
+
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "SELECT id, village_id, chain_name, step_type, item_type, amount, consumed_at, produced_at " +
+                            "FROM chain_activities WHERE id > ? ORDER BY id LIMIT ?")) {
+                        statement.setLong(1, watermark);
+                        statement.setInt(2, chunkSize);
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                fetched++;
+                                lastId = resultSet.getLong("id");
+                                String time = resultSet.getString("consumed_at");
+                                if (time == null) {
+                                    time = resultSet.getString("produced_at");
+                                }
+                                if (time == null || time.length() < 13) {
+                                    continue;
+                                }
+                                int villageId = resultSet.getInt("village_id");
+                                String chainName = resultSet.getString("chain_name") == null ? "" : resultSet.getString("chain_name");
+                                String stepType = resultSet.getString("step_type");
+                                String itemType = resultSet.getString("item_type");
+                                int amount = resultSet.getInt("amount");
+                                addRollup(rollups, "hour", time.substring(0, 13) + ":00:00", villageId, chainName, stepType, itemType, amount);
+                                addRollup(rollups, "day", time.substring(0, 10) + " 00:00:00", villageId, chainName, stepType, itemType, amount);
+                            }
+                        }
+                    }
+
+                    if (fetched == 0) {
+                        connection.commit();
+                        return total;
+                    }
+
+                    try (PreparedStatement statement = connection.prepareStatement(upsertSql)) {
+                        for (Object[] rollup : rollups.values()) {
+                            for (int i = 0; i < rollup.length; i++) {
+                                statement.setObject(i + 1, rollup[i]);
+                            }
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                    writeWatermark(connection, lastId);
+                    connection.commit();
+
+                    total += fetched;
+                    if (fetched < chunkSize) {
+                        return total;
+                    }
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+        }
+    }
+
+    private static void addRollup(Map<String, Object[]> rollups, String period, String periodStart, int villageId,
+                                  String chainName, String stepType, String itemType, int amount) {
+        String key = period + '\u0000' + periodStart + '\u0000' + villageId + '\u0000' + chainName + '\u0000' + stepType + '\u0000' + itemType;
+        Object[] rollup = rollups.get(key);
+        if (rollup == null) {
+            rollups.put(key, new Object[]{period, periodStart, villageId, chainName, stepType, itemType, (long) amount, 1});
+        } else {
+            rollup[6] = (Long) rollup[6] + amount;
+            rollup[7] = (Integer) rollup[7] + 1;
+        }
+    }
+
+    /**
+     * 分批删除记录：先查询一批ID，再按ID批量删除
+     * @param selectSql 查询ID的语句，参数为 (最大ID, 截止时间, 批大小)
+     * @param deleteSql 按ID删除的语句
+     * @param maxId 只删除ID不超过该值的记录
+     * @param cutoff 截止时间
+     * @param chunkSize 每批删除的记录数
+     * @return 删除的记录数
+     */
+    private static int pruneByIds(String selectSql, String deleteSql, long maxId, String cutoff, int chunkSize) throws SQLException {
+        int total = 0;
+        while (true) {
+            try (Connection connection = DatabaseManager.getConnection()) {
+                List<Long> ids = new ArrayList<>();
+                try (PreparedStatement statement = connection.prepareStatement(selectSql)) {
+                    statement.setLong(1, maxId);
+                    statement.setString(2, cutoff);
+                    statement.setInt(3, chunkSize);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            ids.add(resultSet.getLong(1));
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    return total;
+                }
+
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (PreparedStatement statement = connection.prepareStatement(deleteSql)) {
+                    for (long id : ids) {
+                        statement.setLong(1, id);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+
+                total += ids.size();
+                if (ids.size() < chunkSize) {
+                    return total;
+                }
+            }
+        }
+    }
+
+    /**
+     * 删除过期的小时汇总（天汇总永久保留）
+     */
+    private static int pruneHourlyRollups(String cutoff) throws SQLException {
+        try (Connection connection = DatabaseManager.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "DELETE FROM chain_activity_rollups WHERE period = 'hour' AND period_start < ?")) {
+            statement.setString(1, cutoff);
+            return statement.executeUpdate();
+        }
+    }
+
+    private static long readWatermark() throws SQLException {
+        try (Connection connection = DatabaseManager.getConnection()) {
+            return readWatermark(connection);
+        }
+    }
+
+    private static long readWatermark(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT value FROM maintenance_state WHERE name = ?")) {
+            statement.setString(1, ROLLUP_WATERMARK);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong(1) : 0L;
+            }
+        }
+    }
+
+    private static void writeWatermark(Connection connection, long value) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                DatabaseManager.getBackend().upsert("maintenance_state", new String[]{"name"}, new String[]{"value"}))) {
+            statement.setString(1, ROLLUP_WATERMARK);
+            statement.setLong(2, value);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * 计算保留期限的截止时间（UTC，与 CURRENT_TIMESTAMP 格式一致）
+     */
+    private static String cutoff(int retentionDays) {
+        return LocalDateTime.now(ZoneOffset.UTC).minusDays(Math.max(1, retentionDays)).format(ChainActivityRecorder.TIMESTAMP_FORMAT);
+    }
+}
@@ -0,0 +1,98 @@
+package cn.popcraft.villagerpro.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * MySQL / MariaDB 存储后端
+ * 读写共用一个连接池，写操作可以并发执行
+ */
+public class MySqlBackend implements StorageBackend {
+    private final boolean mariadb;
+
+    /**
+     * 构造函数
+     * @param mariadb 是否使用 MariaDB 驱动
+     */
+    public MySqlBackend(boolean mariadb) {
+        this.mariadb = mariadb;
+    }
+
+    @Override
+    public String getName() {
+        return mariadb ? "MariaDB" : "MySQL";
+    }
+
+    @Override
+    public HikariConfig createWriterConfig(FileConfiguration config) {
+        String host = config.getString("database.mysql.host", "localhost");
+        int port = config.getInt("database.mysql.port", 3306);
+        String database = config.getString("database.mysql.database", "villagerpro");
+
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("VillagerPro-" + getName());
+        if (mariadb) {
+            hikari.setDriverClassName("org.mariadb.jdbc.Driver");
+            hikari.setJdbcUrl("jdbc:mariadb://" + host + ":" + port + "/" + database);
+        } else {
+            hikari.setDriverClassName("com.mysql.cj.jdbc.Driver");
+            hikari.setJdbcUrl("jdbc:mysql://" + host + ":" + port + "/" + database);
+            hikari.addDataSourceProperty("cachePrepStmts", "true");
+            hikari.addDataSourceProperty("prepStmtCacheSize", "250");
+            hikari.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+            hikari.addDataSourceProperty("useServerPrepStmts", "true");
+            hikari.addDataSourceProperty("rewriteBatchedStatements", "true");
+        }
+        hikari.addDataSourceProperty("useSSL", String.valueOf(config.getBoolean("database.mysql.use_ssl", false)));
+        hikari.addDataSourceProperty("characterEncoding", "utf8");
+        hikari.setUsername(config.getString("database.mysql.username", "root"));
+        hikari.setPassword(config.getString("database.mysql.password", ""));
+        hikari.setMaximumPoolSize(Math.max(2, config.getInt("database.mysql.pool_size", 10)));
+        hikari.setMinimumIdle(2);
+        hikari.setConnectionTimeout(30000);
+        hikari.setIdleTimeout(600000);
+        hikari.setMaxLifetime(1800000);
+        return hikari;
+    }
+
+    @Override
+    public HikariConfig createReaderConfig(FileConfiguration config) {
+        return null;
+    }
+
+    @Override
+    public String autoIncrementKey() {
+        return "INTEGER AUTO_INCREMENT PRIMARY KEY";
+    }
+
+    @Override
+    public String upsert(String table, String[] keyColumns, String[] valueColumns) {
+        StringBuilder sql = new StringBuilder(SqliteBackend.insertInto(table, keyColumns, valueColumns));
+        sql.append(" ON DUPLICATE KEY UPDATE ");
+        for (int i = 0; i < valueColumns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(valueColumns[i]).append(" = VALUES(").append(valueColumns[i]).append(")");
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public String upsertAdd(String table, String[] keyColumns, String... addColumns) {
+        return upsertAddRows(table, keyColumns, 1, addColumns);
+    }
+
+    @Override
+    public String upsertAddRows(String table, String[] keyColumns, int rows, String... addColumns) {
+        StringBuilder sql = new StringBuilder(SqliteBackend.insertInto(table, keyColumns, addColumns, rows));
+        sql.append(" ON DUPLICATE KEY UPDATE ");
+        for (int i = 0; i < addColumns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(addColumns[i]).append(" = ").append(addColumns[i]).append(" + VALUES(").append(addColumns[i]).append(")");
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,272 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据库结构迁移
+ * 已执行的迁移版本记录在 schema_version 表中，启动时按版本号顺序执行尚未执行的迁移。
+ * 迁移不在事务中执行（MySQL 的 DDL 会隐式提交，无法回滚），每条语句执行前都通过元数据检查
+ * 表、列或索引是否已存在，步骤全部成功后才记录版本；中途失败时下次启动从头重试该步骤，
+ * 已完成的语句会被跳过。
+ */
+public class SchemaMigrator {
+
+    /**
+     * 迁移步骤
+     */
+    @FunctionalInterface
+    private interface MigrationStep {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    /**
+     * 单个迁移
+     */
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final MigrationStep step;
+
+        Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    // 按版本号升序排列，新增迁移只能追加到末尾，已发布的迁移不要修改
+    private static final List<Migration> MIGRATIONS = new ArrayList<>();
+
+    static {
+        MIGRATIONS.add(new Migration(1, "添加常用查询的二级索引", connection -> {
+            createIndex(connection, "idx_villagers_village", "villagers", "village_id");
+            createIndex(connection, "idx_villagers_entity", "villagers", "entity_uuid");
+            createIndex(connection, "idx_visitors_expires", "visitors", "expires_at", "active");
+            createIndex(connection, "idx_decorations_location", "decorations", "world", "location_x", "location_y", "location_z");
+            createIndex(connection, "idx_decorations_village", "decorations", "village_id");
+            createIndex(connection, "idx_chain_activities_village", "chain_activities", "village_id");
+            createIndex(connection, "idx_legacy_original_villager", "legacy_records", "original_villager_id");
+            createIndex(connection, "idx_legacy_village", "legacy_records", "village_id");
+        }));
+        MIGRATIONS.add(new Migration(2, "添加协作链活动汇总表和维护状态表", connection -> {
+            createTable(connection, "chain_activity_rollups", "(" +
+                    "period VARCHAR(8) NOT NULL, " +
+                    "period_start VARCHAR(19) NOT NULL, " +
+                    "village_id INTEGER NOT NULL, " +
+                    "chain_name VARCHAR(64) NOT NULL, " +
+                    "step_type VARCHAR(16) NOT NULL, " +
+                    "item_type VARCHAR(64) NOT NULL, " +
+                    "amount BIGINT NOT NULL DEFAULT 0, " +
+                    "activity_count INTEGER NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (period, period_start, village_id, chain_name, step_type, item_type)" +
+                    ")");
+            createTable(connection, "maintenance_state", "(" +
+                    "name VARCHAR(64) PRIMARY KEY, " +
+                    "value BIGINT NOT NULL" +
+                    ")");
+            createIndex(connection, "idx_chain_rollups_village", "chain_activity_rollups", "village_id", "period", "period_start");
+            createIndex(connection, "idx_events_triggered", "events", "triggered_at");
+        }));
+        MIGRATIONS.add(new Migration(3, "添加跨服务器缓存变更记录表", connection -> {
+            createTable(connection, "cache_changes", "(" +
+                    "id " + DatabaseManager.getBackend().autoIncrementKey() + ", " +
+                    "server_id VARCHAR(36) NOT NULL, " +
+                    "entity_type VARCHAR(32) NOT NULL, " +
+                    "entity_id INTEGER NOT NULL, " +
+                    "changed_at BIGINT NOT NULL" +
+                    ")");
+            createIndex(connection, "idx_cache_changes_time", "cache_changes", "changed_at");
+        }));
+        MIGRATIONS.add(new Migration(4, "添加村民最后工作时间列", connection -> {
+            addColumn(connection, "villagers", "last_work_at", "BIGINT");
+        }));
+    }
+
+    /**
+     * 执行所有尚未执行的迁移
+     * @param connection 写连接
+     * @throws SQLException SQL异常
+     */
+    public static void migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                    ")");
+        }
+
+        int current = getCurrentVersion(connection);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(true);
+        try {
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= current) {
+                    continue;
+                }
+
+                try {
+                    migration.step.apply(connection);
+                    recordVersion(connection, migration);
+                } catch (SQLException e) {
+                    throw new SQLException("数据库迁移 v" + migration.version + " 失败: " + e.getMessage(), e);
+                }
+
+                current = migration.version;
+                VillagerPro.getInstance().getLogger().info("已应用数据库迁移 v" + migration.version + ": " + migration.description);
+            }
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * 记录已执行的迁移版本（其他服务器同时执行了同一迁移并已记录时跳过）
+     */
+    private static void recordVersion(Connection connection, Migration migration) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            if (!versionRecorded(connection, migration.version)) {
+                throw e;
+            }
+        }
+    }
+
+    private static boolean versionRecorded(Connection connection, int version) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM schema_version WHERE version = ?")) {
+            statement.setInt(1, version);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * 获取当前数据库结构版本
+     * @param connection 数据库连接
+     * @return 版本号，未执行过迁移时为0
+     * @throws SQLException SQL异常
+     */
+    public static int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * 获取最新的结构版本
+     * @return 版本号
+     */
+    public static int getLatestVersion() {
+        return MIGRATIONS.isEmpty() ? 0 : MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    /**
+     * 按执行顺序列出所有迁移的版本号
+     */
+    static List<Integer> getVersions() {
+        List<Integer> versions = new ArrayList<>(MIGRATIONS.size());
+        for (Migration migration : MIGRATIONS) {
+            versions.add(migration.version);
+        }
+        return versions;
+    }
+
+    /**
+     * 创建表（已存在时跳过）
+     * @param definition 括号括起的列定义
+     */
+    private static void createTable(Connection connection, String table, String definition) throws SQLException {
+        if (tableExists(connection, table)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + table + " " + definition);
+        }
+    }
+
+    /**
+     * 创建索引（已存在时跳过，其他服务器同时创建时也不报错）
+     */
+    private static void createIndex(Connection connection, String indexName, String table, String... columns) throws SQLException {
+        if (indexExists(connection, table, indexName)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE INDEX " + indexName + " ON " + table + " (" + String.join(", ", columns) + ")");
+        } catch (SQLException e) {
+            if (!indexExists(connection, table, indexName)) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 添加列（已存在时跳过，其他服务器同时添加时也不报错）
+     */
+    private static void addColumn(Connection connection, String table, String column, String definition) throws SQLException {
+        if (columnExists(connection, table, column)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        } catch (SQLException e) {
+            if (!columnExists(connection, table, column)) {
+                throw e;
+            }
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        try (ResultSet resultSet = meta.getTables(connection.getCatalog(), null, identifier(meta, table), new String[]{"TABLE"})) {
+            return resultSet.next();
+        }
+    }
+
+    private static boolean indexExists(Connection connection, String table, String indexName) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        try (ResultSet resultSet = meta.getIndexInfo(connection.getCatalog(), null, identifier(meta, table), false, false)) {
+            while (resultSet.next()) {
+                if (indexName.equalsIgnoreCase(resultSet.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean columnExists(Connection connection, String table, String column) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        try (ResultSet resultSet = meta.getColumns(connection.getCatalog(), null, identifier(meta, table), identifier(meta, column))) {
+            return resultSet.next();
+        }
+    }
+
+    /**
+     * 按数据库的标识符大小写规则转换名称，用于元数据查询
+     */
+    private static String identifier(DatabaseMetaData meta, String name) throws SQLException {
+        if (meta.storesUpperCaseIdentifiers()) {
+            return name.toUpperCase();
+        }
+        if (meta.storesLowerCaseIdentifiers()) {
+            return name.toLowerCase();
+        }
+        return name;
+    }
+}
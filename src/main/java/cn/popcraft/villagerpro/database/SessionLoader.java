@@ -0,0 +1,152 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.managers.CacheManager;
+import cn.popcraft.villagerpro.managers.PersonalityManager;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
+import cn.popcraft.villagerpro.managers.VillageManager;
+import cn.popcraft.villagerpro.managers.VillageUpgradeManager;
+import cn.popcraft.villagerpro.managers.VillagerManager;
+import cn.popcraft.villagerpro.managers.WarehouseManager;
+import cn.popcraft.villagerpro.models.Village;
+import cn.popcraft.villagerpro.models.VillagerData;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 玩家会话数据预加载
+ * 玩家加入时在数据库线程池中加载其村庄的完整数据（村庄、升级、村民、技能、个性、仓库）并写入缓存，
+ * 会话期间固定在缓存中，退出时取消固定，登录后的第一次界面操作和工作周期不再需要查询数据库
+ */
+public class SessionLoader {
+    private static final Set<UUID> sessions = ConcurrentHashMap.newKeySet();
+    private static final Object sessionLock = new Object();
+
+    /**
+     * 为已在线的玩家预加载数据（插件重载后）
+     */
+    public static void initialize() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            onJoin(player.getUniqueId());
+        }
+    }
+
+    /**
+     * 玩家加入：在数据库线程池中预加载并固定其村庄数据
+     * @param playerUUID 玩家UUID
+     */
+    public static void onJoin(UUID playerUUID) {
+        if (!VillagerPro.getInstance().getConfig().getBoolean("cache.session_prefetch", true)) {
+            return;
+        }
+        sessions.add(playerUUID);
+        // 线程池已满时跳过预加载，数据在第一次使用时按需加载
+        AsyncRepository.run(() -> prefetch(playerUUID));
+    }
+
+    /**
+     * 玩家退出：取消缓存固定
+     * @param playerUUID 玩家UUID
+     */
+    public static void onQuit(UUID playerUUID) {
+        synchronized (sessionLock) {
+            sessions.remove(playerUUID);
+            CacheManager.unpinSession(playerUUID);
+        }
+    }
+
+    /**
+     * 加载玩家村庄的完整数据并写入缓存（在工作线程中调用）
+     */
+    private static void prefetch(UUID playerUUID) {
+        long start = System.currentTimeMillis();
+        Village village = VillageManager.getVillage(playerUUID);
+        if (village == null || !sessions.contains(playerUUID)) {
+            return;
+        }
+        int villageId = village.getId();
+        // 加载村庄升级到缓存
+        VillageUpgradeManager.getVillageUpgrades(villageId);
+
+        List<VillagerData> villagers = VillagerManager.getVillagers(villageId);
+        Map<Integer, VillagerData> villagersById = new HashMap<>();
+        for (VillagerData villager : villagers) {
+            villagersById.put(villager.getId(), villager);
+        }
+
+        Map<Integer, Map<String, Integer>> skills = new HashMap<>();
+        Map<UUID, PersonalityManager.VillagerPersonality> personalities = new HashMap<>();
+        try (Connection connection = DatabaseManager.getReadConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT u.villager_id, u.skill_id, u.level FROM villager_upgrades u " +
+                    "JOIN villagers v ON v.id = u.villager_id WHERE v.village_id = ?")) {
+                statement.setInt(1, villageId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        skills.computeIfAbsent(resultSet.getInt("villager_id"), id -> new HashMap<>())
+                                .put(resultSet.getString("skill_id"), resultSet.getInt("level"));
+                    }
+                }
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT p.villager_id, p.loyalty, p.mood, p.last_interaction, p.interaction_count FROM villager_personality p " +
+                    "JOIN villagers v ON v.id = p.villager_id WHERE v.village_id = ?")) {
+                statement.setInt(1, villageId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        VillagerData villager = villagersById.get(resultSet.getInt("villager_id"));
+                        if (villager != null) {
+                            personalities.put(villager.getEntityUUID(), new PersonalityManager.VillagerPersonality(
+                                    resultSet.getInt("villager_id"),
+                                    resultSet.getInt("loyalty"),
+                                    resultSet.getInt("mood"),
+                                    resultSet.getLong("last_interaction"),
+                                    resultSet.getInt("interaction_count")
+                            ));
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("预加载玩家村庄数据失败: " + e.getMessage());
+            return;
+        }
+
+        List<Integer> villagerIds = new ArrayList<>(villagersById.keySet());
+        for (VillagerData villager : villagers) {
+            villager.setSkills(skills.getOrDefault(villager.getId(), new HashMap<>()));
+        }
+        // 加载仓库内容到缓存
+        WarehouseManager.getWarehouseItems(villageId);
+
+        synchronized (sessionLock) {
+            // 加载期间玩家已经退出时不再固定
+            if (!sessions.contains(playerUUID)) {
+                return;
+            }
+            CacheManager.pinSession(playerUUID, villageId, villagerIds);
+        }
+
+        if (!personalities.isEmpty() && VillagerPro.getInstance().getConfig().getBoolean("features.personality", true)) {
+            Bukkit.getScheduler().runTask(VillagerPro.getInstance(),
+                    () -> PersonalityManager.getInstance().preloadPersonalities(personalities));
+        }
+        if (ProfessionRegistry.isDebug()) {
+            VillagerPro.getInstance().getLogger().info("已预加载玩家村庄数据: " + village.getName() + "（" + villagers.size() +
+                    " 个村民，耗时 " + (System.currentTimeMillis() - start) + "ms）");
+        }
+    }
+}
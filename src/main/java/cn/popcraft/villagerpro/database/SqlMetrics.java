@@ -0,0 +1,335 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * SQL执行统计
+ * 通过代理包装 {@link DatabaseManager} 分发的连接，按归一化后的SQL文本记录执行耗时分布，
+ * 记录慢查询，并统计在服务器主线程上执行的查询
+ */
+public class SqlMetrics {
+    // 耗时分布区间上限（微秒），最后一个区间没有上限
+    private static final long[] BUCKET_BOUNDS_MICROS = {100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000};
+    private static final String[] BUCKET_LABELS = {"<0.1ms", "<0.5ms", "<1ms", "<5ms", "<10ms", "<50ms", "<100ms", "<500ms", ">=500ms"};
+    private static final int MAX_SQL_LENGTH = 160;
+    private static final int SLOW_LOG_SIZE = 20;
+    private static final int NORMALIZED_CACHE_SIZE = 1000;
+    private static final long MAIN_THREAD_WARN_INTERVAL = 60_000L;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(\\.\\d+)?\\b");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final Map<String, StatementStats> statements = new ConcurrentHashMap<>();
+    // 原始SQL -> 归一化SQL，预编译语句的SQL是常量，缓存后无需每次执行正则替换
+    private static final Map<String, String> normalizedCache = new ConcurrentHashMap<>();
+    private static final Deque<SlowQuery> slowQueries = new ConcurrentLinkedDeque<>();
+    private static final LongAdder mainThreadQueries = new LongAdder();
+
+    private static volatile boolean enabled = false;
+    private static volatile long slowThresholdNanos = 50_000_000L;
+    private static volatile boolean warnMainThread = true;
+
+    /**
+     * 单条SQL的统计信息
+     */
+    public static class StatementStats {
+        private final String sql;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder mainThreadCount = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LABELS.length);
+        private final AtomicLong lastMainThreadWarning = new AtomicLong();
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long nanos, boolean mainThread) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            buckets.incrementAndGet(bucketOf(nanos / 1000L));
+            if (mainThread) {
+                mainThreadCount.increment();
+            }
+        }
+
+        public String getSql() { return sql; }
+        public long getCount() { return count.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public long getMaxNanos() { return maxNanos.get(); }
+        public long getMainThreadCount() { return mainThreadCount.sum(); }
+
+        public double getAverageMillis() {
+            long calls = getCount();
+            return calls == 0 ? 0 : getTotalNanos() / 1_000_000.0 / calls;
+        }
+
+        /**
+         * 按分布区间估算百分位耗时
+         * @param percentile 百分位（0-1）
+         * @return 所在区间的标签
+         */
+        public String getPercentileBucket(double percentile) {
+            long calls = getCount();
+            long target = (long) Math.ceil(calls * percentile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= target && seen > 0) {
+                    return BUCKET_LABELS[i];
+                }
+            }
+            return "-";
+        }
+
+        /**
+         * 获取耗时分布
+         * @return 区间标签 -> 次数
+         */
+        public Map<String, Long> getHistogram() {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length(); i++) {
+                histogram.put(BUCKET_LABELS[i], buckets.get(i));
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * 慢查询记录
+     */
+    public static class SlowQuery {
+        private final String sql;
+        private final long nanos;
+        private final String thread;
+        private final long time;
+
+        SlowQuery(String sql, long nanos, String thread) {
+            this.sql = sql;
+            this.nanos = nanos;
+            this.thread = thread;
+            this.time = System.currentTimeMillis();
+        }
+
+        public String getSql() { return sql; }
+        public double getMillis() { return nanos / 1_000_000.0; }
+        public String getThread() { return thread; }
+        public long getTime() { return time; }
+    }
+
+    /**
+     * 读取配置
+     */
+    public static void initialize() {
+        FileConfiguration config = VillagerPro.getInstance().getConfig();
+        enabled = config.getBoolean("database.metrics.enabled", true);
+        slowThresholdNanos = Math.max(1L, config.getLong("database.metrics.slow_query_ms", 50L)) * 1_000_000L;
+        warnMainThread = config.getBoolean("database.metrics.warn_main_thread", true);
+    }
+
+    /**
+     * 包装连接，未启用统计时原样返回
+     * @param connection 原始连接
+     * @return 带统计的连接
+     */
+    public static Connection wrap(Connection connection) {
+        if (!enabled) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(SqlMetrics.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    /**
+     * 记录一次执行
+     * @param sql SQL语句
+     * @param nanos 耗时（纳秒）
+     */
+    public static void record(String sql, long nanos) {
+        boolean mainThread = Bukkit.isPrimaryThread();
+        String normalized = normalizedCache.get(sql);
+        if (normalized == null) {
+            normalized = normalize(sql);
+            if (normalizedCache.size() < NORMALIZED_CACHE_SIZE) {
+                normalizedCache.put(sql, normalized);
+            }
+        }
+        StatementStats stats = statements.computeIfAbsent(normalized, StatementStats::new);
+        stats.record(nanos, mainThread);
+
+        if (nanos >= slowThresholdNanos) {
+            slowQueries.addFirst(new SlowQuery(normalized, nanos, Thread.currentThread().getName()));
+            while (slowQueries.size() > SLOW_LOG_SIZE) {
+                slowQueries.pollLast();
+            }
+            VillagerPro.getInstance().getLogger().warning(String.format("慢查询 %.1fms [%s]: %s",
+                    nanos / 1_000_000.0, Thread.currentThread().getName(), normalized));
+        }
+
+        if (mainThread) {
+            mainThreadQueries.increment();
+            long now = System.currentTimeMillis();
+            long last = stats.lastMainThreadWarning.get();
+            // 同一条语句每分钟最多警告一次
+            if (warnMainThread && now - last >= MAIN_THREAD_WARN_INTERVAL && stats.lastMainThreadWarning.compareAndSet(last, now)) {
+                VillagerPro.getInstance().getLogger().warning(String.format("在主线程执行了数据库查询（%.2fms）: %s",
+                        nanos / 1_000_000.0, normalized));
+            }
+        }
+    }
+
+    /**
+     * 获取按总耗时排序的语句统计
+     * @param limit 最多返回的条数
+     * @return 语句统计
+     */
+    public static List<StatementStats> getTopStatements(int limit) {
+        List<StatementStats> result = new ArrayList<>(statements.values());
+        result.sort(Comparator.comparingLong(StatementStats::getTotalNanos).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    /**
+     * 获取最近的慢查询（从新到旧）
+     * @return 慢查询列表
+     */
+    public static List<SlowQuery> getSlowQueries() {
+        return new ArrayList<>(slowQueries);
+    }
+
+    /**
+     * 获取在主线程执行的查询总数
+     * @return 查询数
+     */
+    public static long getMainThreadQueries() {
+        return mainThreadQueries.sum();
+    }
+
+    /**
+     * 是否启用统计
+     * @return 是否启用
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public static void reset() {
+        statements.clear();
+        slowQueries.clear();
+        mainThreadQueries.reset();
+    }
+
+    /**
+     * 归一化SQL：合并空白、将字面量替换为占位符，使同一语句的不同参数归为一类
+     */
+    static String normalize(String sql) {
+        if (sql == null) {
+            return "<unknown>";
+        }
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        return normalized.length() > MAX_SQL_LENGTH ? normalized.substring(0, MAX_SQL_LENGTH) + "..." : normalized;
+    }
+
+    private static int bucketOf(long micros) {
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            if (micros < BUCKET_BOUNDS_MICROS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MICROS.length;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 连接代理：包装创建出的语句对象
+     */
+    private static class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SqlMetrics.invoke(connection, method, args);
+            String name = method.getName();
+            if ("prepareStatement".equals(name) && result instanceof PreparedStatement) {
+                return Proxy.newProxyInstance(SqlMetrics.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                        new StatementHandler((Statement) result, (String) args[0]));
+            }
+            if ("createStatement".equals(name) && result instanceof Statement) {
+                return Proxy.newProxyInstance(SqlMetrics.class.getClassLoader(), new Class<?>[]{Statement.class},
+                        new StatementHandler((Statement) result, null));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 语句代理：记录 execute* 方法的耗时
+     */
+    private static class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String preparedSql;
+
+        StatementHandler(Statement statement, String preparedSql) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (!method.getName().startsWith("execute")) {
+                return SqlMetrics.invoke(statement, method, args);
+            }
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : preparedSql;
+            if (sql == null) {
+                sql = "<batch>";
+            }
+            long start = System.nanoTime();
+            try {
+                return SqlMetrics.invoke(statement, method, args);
+            } finally {
+                record(sql, System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * SQLite 存储后端
+ * 写连接池只有一个连接，所有写操作串行执行；读连接池在WAL模式下与写操作互不阻塞
+ */
+public class SqliteBackend implements StorageBackend {
+    private static final String DATABASE_FILE = "plugins/VillagerPro/database.db";
+
+    @Override
+    public String getName() {
+        return "SQLite";
+    }
+
+    /**
+     * 获取数据库文件
+     * @return 数据库文件
+     */
+    public File getDatabaseFile() {
+        return new File(DATABASE_FILE).getAbsoluteFile();
+    }
+
+    @Override
+    public HikariConfig createWriterConfig(FileConfiguration config) {
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("VillagerPro-Writer");
+        hikari.setJdbcUrl("jdbc:sqlite:" + getDatabaseFile().getPath());
+        hikari.setMaximumPoolSize(1);
+        hikari.setMinimumIdle(1);
+        hikari.setConnectionTimeout(30000);
+        hikari.setIdleTimeout(600000);
+        hikari.setMaxLifetime(1800000);
+        applyPragmas(hikari, config, true);
+        return hikari;
+    }
+
+    @Override
+    public HikariConfig createReaderConfig(FileConfiguration config) {
+        // 需在写连接池之后创建，保证数据库文件已切换到WAL模式
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName("VillagerPro-Reader");
+        hikari.setJdbcUrl("jdbc:sqlite:" + getDatabaseFile().getPath());
+        hikari.setMaximumPoolSize(Math.max(1, config.getInt("database.sqlite.read_pool_size", 4)));
+        hikari.setMinimumIdle(1);
+        hikari.setConnectionTimeout(30000);
+        hikari.setIdleTimeout(600000);
+        hikari.setMaxLifetime(1800000);
+        hikari.setConnectionInitSql("PRAGMA query_only = ON");
+        applyPragmas(hikari, config, false);
+        return hikari;
+    }
+
+    /**
+     * 设置SQLite连接参数
+     * @param hikari 连接池配置
+     * @param config 插件配置
+     * @param writer 是否为写连接
+     */
+    private void applyPragmas(HikariConfig hikari, FileConfiguration config, boolean writer) {
+        if (writer && config.getBoolean("database.sqlite.wal", true)) {
+            // WAL模式是持久化的，只需由写连接设置一次
+            hikari.addDataSourceProperty("journal_mode", "WAL");
+        }
+        hikari.addDataSourceProperty("synchronous", config.getString("database.sqlite.synchronous", "NORMAL"));
+        hikari.addDataSourceProperty("cache_size", String.valueOf(config.getInt("database.sqlite.cache_size", -16000)));
+        hikari.addDataSourceProperty("mmap_size", String.valueOf(config.getLong("database.sqlite.mmap_size", 268435456L)));
+        hikari.addDataSourceProperty("busy_timeout", String.valueOf(config.getInt("database.sqlite.busy_timeout_ms", 5000)));
+    }
+
+    @Override
+    public String autoIncrementKey() {
+        return "INTEGER PRIMARY KEY AUTOINCREMENT";
+    }
+
+    @Override
+    public String upsert(String table, String[] keyColumns, String[] valueColumns) {
+        StringBuilder sql = new StringBuilder(insertInto(table, keyColumns, valueColumns));
+        sql.append(" ON CONFLICT (").append(String.join(", ", keyColumns)).append(") DO UPDATE SET ");
+        for (int i = 0; i < valueColumns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(valueColumns[i]).append(" = excluded.").append(valueColumns[i]);
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public String upsertAdd(String table, String[] keyColumns, String... addColumns) {
+        return upsertAddRows(table, keyColumns, 1, addColumns);
+    }
+
+    @Override
+    public String upsertAddRows(String table, String[] keyColumns, int rows, String... addColumns) {
+        StringBuilder sql = new StringBuilder(insertInto(table, keyColumns, addColumns, rows));
+        sql.append(" ON CONFLICT (").append(String.join(", ", keyColumns)).append(") DO UPDATE SET ");
+        for (int i = 0; i < addColumns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(addColumns[i]).append(" = ").append(addColumns[i]).append(" + excluded.").append(addColumns[i]);
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public int reclaimSpace(Connection connection, int maxPages, boolean convert) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (queryInt(statement, "PRAGMA auto_vacuum") != 2) {
+                if (!convert) {
+                    return 0;
+                }
+                // 已有数据库需要执行一次完整的VACUUM才能切换到增量回收模式
+                VillagerPro.getInstance().getLogger().info("正在将数据库切换为增量回收模式（仅执行一次）...");
+                statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                statement.execute("VACUUM");
+                return 0;
+            }
+
+            int pages = Math.min(queryInt(statement, "PRAGMA freelist_count"), maxPages);
+            if (pages <= 0) {
+                return 0;
+            }
+            // incremental_vacuum 每执行一步只释放一页，而驱动只会执行一步，所以逐页调用
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                for (int i = 0; i < pages; i++) {
+                    try (Statement vacuum = connection.createStatement()) {
+                        vacuum.execute("PRAGMA incremental_vacuum(1)");
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            // WAL模式下文件截断在检查点时才生效
+            statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+            return pages;
+        }
+    }
+
+    private static int queryInt(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * 生成 INSERT INTO ... VALUES (...) 部分
+     */
+    static String insertInto(String table, String[] keyColumns, String[] valueColumns) {
+        return insertInto(table, keyColumns, valueColumns, 1);
+    }
+
+    /**
+     * 生成多行的 INSERT INTO ... VALUES (...), (...) 部分
+     */
+    static String insertInto(String table, String[] keyColumns, String[] valueColumns, int rows) {
+        int count = keyColumns.length + valueColumns.length;
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        sql.append(String.join(", ", keyColumns));
+        if (valueColumns.length > 0) {
+            sql.append(", ").append(String.join(", ", valueColumns));
+        }
+        sql.append(") VALUES ");
+        for (int row = 0; row < rows; row++) {
+            sql.append(row == 0 ? "(" : ", (");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+        }
+        return sql.toString();
+    }
+}
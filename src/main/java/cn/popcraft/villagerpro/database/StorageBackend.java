@@ -0,0 +1,101 @@
+package cn.popcraft.villagerpro.database;
+
+import com.zaxxer.hikari.HikariConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * 存储后端 - 封装不同数据库的连接方式和SQL方言差异
+ * 通过配置 database.type 选择：sqlite / mysql / mariadb / h2
+ */
+public interface StorageBackend {
+
+    /**
+     * 获取后端名称（用于日志）
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 创建写连接池配置
+     * @param config 插件配置
+     * @return 连接池配置
+     */
+    HikariConfig createWriterConfig(FileConfiguration config);
+
+    /**
+     * 创建只读连接池配置
+     * @param config 插件配置
+     * @return 连接池配置，返回null表示读写共用写连接池
+     */
+    HikariConfig createReaderConfig(FileConfiguration config);
+
+    /**
+     * 自增主键列定义，用于建表语句
+     * @return 列定义（例如 "INTEGER PRIMARY KEY AUTOINCREMENT"）
+     */
+    String autoIncrementKey();
+
+    /**
+     * 生成"插入，主键冲突时覆盖其余列"的语句，参数顺序为 keyColumns 后接 valueColumns
+     * @param table 表名
+     * @param keyColumns 主键/唯一键列
+     * @param valueColumns 其余列
+     * @return SQL语句
+     */
+    String upsert(String table, String[] keyColumns, String[] valueColumns);
+
+    /**
+     * 生成"插入，主键冲突时累加指定列"的语句，参数顺序为 keyColumns 后接 addColumns
+     * @param table 表名
+     * @param keyColumns 主键/唯一键列
+     * @param addColumns 累加列
+     * @return SQL语句
+     */
+    String upsertAdd(String table, String[] keyColumns, String... addColumns);
+
+    /**
+     * 生成多行的"插入，主键冲突时累加指定列"语句，参数按行依次排列，每行为 keyColumns 后接 addColumns
+     * @param table 表名
+     * @param keyColumns 主键/唯一键列
+     * @param rows 行数
+     * @param addColumns 累加列
+     * @return SQL语句
+     */
+    String upsertAddRows(String table, String[] keyColumns, int rows, String... addColumns);
+
+    /**
+     * 回收数据库文件中的空闲空间（仅对需要手动回收的数据库有效）
+     * @param connection 写连接
+     * @param maxPages 本次最多回收的页数
+     * @param convert 数据库未启用增量回收时，是否允许执行一次性转换
+     * @return 回收的页数
+     * @throws SQLException SQL异常
+     */
+    default int reclaimSpace(Connection connection, int maxPages, boolean convert) throws SQLException {
+        return 0;
+    }
+
+    /**
+     * 根据配置创建存储后端
+     * @param config 插件配置
+     * @return 存储后端
+     */
+    static StorageBackend fromConfig(FileConfiguration config) {
+        String type = config.getString("database.type", "sqlite").toLowerCase();
+        switch (type) {
+            case "mysql":
+                return new MySqlBackend(false);
+            case "mariadb":
+                return new MySqlBackend(true);
+            case "h2":
+                return new H2Backend();
+            case "sqlite":
+                return new SqliteBackend();
+            default:
+                throw new IllegalArgumentException("不支持的数据库类型: " + type);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.managers.CacheManager;
+import cn.popcraft.villagerpro.managers.EntityRegistry;
+import cn.popcraft.villagerpro.managers.PersonalityManager;
+import cn.popcraft.villagerpro.models.Village;
+import cn.popcraft.villagerpro.models.VillagerData;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 世界数据批量加载器
+ * 启动时用少量有序查询一次性读取村庄、村民、升级和个性数据，
+ * 在内存中组装模型并写入缓存，避免逐个村庄/村民查询（N+1）；
+ * 同时记录全部受管理村民的实体UUID，用于跳过原版村民的数据库查询
+ */
+public class WorldStateLoader {
+    private static final int FETCH_SIZE = 500;
+
+    /**
+     * 加载结果
+     */
+    public static class WorldState {
+        private final List<Village> villages;
+        private final Map<Integer, List<VillagerData>> villagersByVillage;
+        private final Map<UUID, PersonalityManager.VillagerPersonality> personalities;
+
+        WorldState(List<Village> villages, Map<Integer, List<VillagerData>> villagersByVillage,
+                   Map<UUID, PersonalityManager.VillagerPersonality> personalities) {
+            this.villages = villages;
+            this.villagersByVillage = villagersByVillage;
+            this.personalities = personalities;
+        }
+
+        public List<Village> getVillages() {
+            return villages;
+        }
+
+        public List<VillagerData> getVillagers(int villageId) {
+            return villagersByVillage.getOrDefault(villageId, new ArrayList<>());
+        }
+
+        public Map<UUID, PersonalityManager.VillagerPersonality> getPersonalities() {
+            return personalities;
+        }
+
+        public int getVillagerCount() {
+            int count = 0;
+            for (List<VillagerData> villagers : villagersByVillage.values()) {
+                count += villagers.size();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 从数据库加载全部世界数据并写入村庄/村民缓存，可以在工作线程中调用
+     * 个性数据需要在主线程中通过 {@link #apply(WorldState)} 交给个性管理器
+     * @return 加载结果，失败时返回null
+     */
+    public static WorldState load() {
+        long start = System.currentTimeMillis();
+        Map<Integer, Village> villages = new LinkedHashMap<>();
+        Map<Integer, List<VillagerData>> villagersByVillage = new HashMap<>();
+        Map<Integer, VillagerData> villagersById = new HashMap<>();
+        Map<UUID, PersonalityManager.VillagerPersonality> personalities = new HashMap<>();
+        Map<Integer, Map<String, Integer>> upgrades = new HashMap<>();
+        Map<Integer, Map<String, Integer>> skills = new HashMap<>();
+        List<UUID> entityUUIDs = new ArrayList<>();
+
+        // 确保排队中的写操作已落盘，避免读到旧数据
+        DatabaseManager.flushWrites();
+        try (Connection connection = DatabaseManager.getReadConnection()) {
+            try (PreparedStatement statement = prepare(connection,
+                    "SELECT id, owner_uuid, name, level, experience, prosperity FROM villages ORDER BY id");
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Village village = new Village(
+                            resultSet.getInt("id"),
+                            UUID.fromString(resultSet.getString("owner_uuid")),
+                            resultSet.getString("name"),
+                            resultSet.getInt("level"),
+                            resultSet.getInt("experience"),
+                            resultSet.getInt("prosperity")
+                    );
+                    villages.put(village.getId(), village);
+                    villagersByVillage.put(village.getId(), new ArrayList<>());
+                }
+            }
+
+            try (PreparedStatement statement = prepare(connection,
+                    "SELECT village_id, upgrade_id, level FROM village_upgrades ORDER BY village_id");
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    int villageId = resultSet.getInt("village_id");
+                    if (villages.containsKey(villageId)) {
+                        upgrades.computeIfAbsent(villageId, id -> new HashMap<>())
+                                .put(resultSet.getString("upgrade_id"), resultSet.getInt("level"));
+                    }
+                }
+            }
+
+            try (PreparedStatement statement = prepare(connection,
+                    "SELECT id, village_id, entity_uuid, profession, level, experience, follow_mode FROM villagers ORDER BY village_id, id");
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    UUID entityUUID = UUID.fromString(resultSet.getString("entity_uuid"));
+                    entityUUIDs.add(entityUUID);
+                    // 在实体注册表中登记所有村民实体，之后由实体加载/卸载事件维护
+                    EntityRegistry.track(entityUUID, EntityRegistry.Kind.VILLAGER);
+                    List<VillagerData> villagers = villagersByVillage.get(resultSet.getInt("village_id"));
+                    if (villagers == null) {
+                        continue;
+                    }
+                    VillagerData villager = new VillagerData(
+                            resultSet.getInt("id"),
+                            resultSet.getInt("village_id"),
+                            entityUUID,
+                            resultSet.getString("profession"),
+                            resultSet.getInt("level"),
+                            resultSet.getInt("experience"),
+                            resultSet.getString("follow_mode")
+                    );
+                    villagers.add(villager);
+                    villagersById.put(villager.getId(), villager);
+                }
+            }
+
+            try (PreparedStatement statement = prepare(connection,
+                    "SELECT villager_id, skill_id, level FROM villager_upgrades ORDER BY villager_id");
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    int villagerId = resultSet.getInt("villager_id");
+                    if (villagersById.containsKey(villagerId)) {
+                        skills.computeIfAbsent(villagerId, id -> new HashMap<>())
+                                .put(resultSet.getString("skill_id"), resultSet.getInt("level"));
+                    }
+                }
+            }
+
+            try (PreparedStatement statement = prepare(connection,
+                    "SELECT villager_id, loyalty, mood, last_interaction, interaction_count FROM villager_personality ORDER BY villager_id");
+                 ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    VillagerData villager = villagersById.get(resultSet.getInt("villager_id"));
+                    if (villager != null) {
+                        personalities.put(villager.getEntityUUID(), new PersonalityManager.VillagerPersonality(
+                                resultSet.getInt("villager_id"),
+                                resultSet.getInt("loyalty"),
+                                resultSet.getInt("mood"),
+                                resultSet.getLong("last_interaction"),
+                                resultSet.getInt("interaction_count")
+                        ));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("批量加载世界数据失败: " + e.getMessage());
+            return null;
+        }
+
+        CacheManager.loadManagedEntities(entityUUIDs);
+        for (Village village : villages.values()) {
+            CacheManager.cacheVillage(village.getOwnerUUID(), village);
+            CacheManager.cacheVillageVillagers(village.getId(), villagersByVillage.get(village.getId()));
+            // 没有升级/技能的对象也写入空映射，之后读取不再查询数据库
+            village.setUpgrades(upgrades.getOrDefault(village.getId(), new HashMap<>()));
+        }
+        for (VillagerData villager : villagersById.values()) {
+            villager.setSkills(skills.getOrDefault(villager.getId(), new HashMap<>()));
+        }
+
+        WorldState state = new WorldState(new ArrayList<>(villages.values()), villagersByVillage, personalities);
+        VillagerPro.getInstance().getLogger().info("已加载 " + villages.size() + " 个村庄、" + state.getVillagerCount() +
+                " 个村民（耗时 " + (System.currentTimeMillis() - start) + "ms）");
+        return state;
+    }
+
+    /**
+     * 将需要在主线程中处理的数据交给对应的管理器
+     * @param state 加载结果
+     */
+    public static void apply(WorldState state) {
+        if (VillagerPro.getInstance().getConfig().getBoolean("features.personality", true)) {
+            PersonalityManager.getInstance().preloadPersonalities(state.getPersonalities());
+        }
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        statement.setFetchSize(FETCH_SIZE);
+        return statement;
+    }
+}
@@ -0,0 +1,503 @@
+package cn.popcraft.villagerpro.database;
+
+import cn.popcraft.villagerpro.VillagerPro;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 写回队列 - 将数据库写操作移出服务器主线程
+ * 由单个写线程按提交顺序执行，同一行的重复更新会被合并，
+ * 达到数量阈值或时间阈值时以事务方式批量提交
+ */
+public class WriteBehindQueue {
+
+    /**
+     * 写连接来源
+     */
+    @FunctionalInterface
+    interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    /**
+     * 待执行的写操作
+     */
+    private static class PendingWrite {
+        private final String sql;
+        private final Object[] params;
+
+        PendingWrite(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /**
+     * 一组写操作中的一项，用于 {@link #submitAll(List)}
+     */
+    public static final class Write {
+        private final String key;
+        private final boolean merge;
+        private final Collection<String> rowKeys;
+        private final String sql;
+        private final Object[] params;
+
+        /**
+         * @param key 行键，为null时不合并
+         * @param sql SQL语句
+         * @param params 参数
+         */
+        public Write(String key, String sql, Object... params) {
+            this(key, true, key == null ? List.of() : List.of(key), sql, params);
+        }
+
+        private Write(String key, boolean merge, Collection<String> rowKeys, String sql, Object[] params) {
+            this.key = key;
+            this.merge = merge;
+            this.rowKeys = rowKeys;
+            this.sql = sql;
+            this.params = params;
+        }
+
+        /**
+         * 不合并的写操作（例如增量更新），可通过行键查询和等待
+         * @param key 行键
+         * @param sql SQL语句
+         * @param params 参数
+         * @return 写操作
+         */
+        public static Write append(String key, String sql, Object... params) {
+            return new Write(key, false, List.of(key), sql, params);
+        }
+
+        /**
+         * 同时写入多行的写操作（例如多行更新语句），不合并，可通过其中任意一行的行键等待
+         * @param rowKeys 涉及的行键
+         * @param sql SQL语句
+         * @param params 参数
+         * @return 写操作
+         */
+        public static Write multiRow(Collection<String> rowKeys, String sql, Object... params) {
+            return new Write(null, false, List.copyOf(rowKeys), sql, params);
+        }
+    }
+
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final ConnectionSource connections;
+
+    // 按提交顺序保存的待写操作；带键的写操作以键合并，不带键的写操作使用唯一序号作为键，
+    // 不合并的带键写操作使用 "行键#序号" 作为键
+    private final LinkedHashMap<String, PendingWrite> pending = new LinkedHashMap<>();
+    // 行键 -> 该行最后一次入队时的批次号，批次提交后移除，用于按行等待
+    private final Map<String, Long> keyGenerations = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 已入队批次号与已提交批次号，用于flush()等待
+    private long enqueuedGeneration = 0;
+    private long committedGeneration = 0;
+    private boolean flushRequested = false;
+    private volatile boolean running = false;
+    private Thread writerThread;
+
+    // 统计信息
+    private final AtomicLong mergedWrites = new AtomicLong();
+    private final AtomicLong executedWrites = new AtomicLong();
+
+    public WriteBehindQueue(int batchSize, long flushIntervalMillis) {
+        this(batchSize, flushIntervalMillis, DatabaseManager::getConnection);
+    }
+
+    WriteBehindQueue(int batchSize, long flushIntervalMillis, ConnectionSource connections) {
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMillis = Math.max(50L, flushIntervalMillis);
+        this.connections = connections;
+    }
+
+    /**
+     * 启动写线程
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        writerThread = new Thread(this::runLoop, "VillagerPro-DB-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 提交写操作
+     * @param key 行键（例如 "villagers:12"），相同键的写操作只保留最新一条；为null时不合并
+     * @param sql SQL语句
+     * @param params 参数
+     */
+    public void submit(String key, String sql, Object... params) {
+        enqueue(key, true, sql, params);
+    }
+
+    /**
+     * 提交不合并的写操作（例如增量更新），可通过 {@link #flush(Collection)} 按行键等待
+     * @param key 行键
+     * @param sql SQL语句
+     * @param params 参数
+     */
+    public void append(String key, String sql, Object... params) {
+        enqueue(key, false, sql, params);
+    }
+
+    private void enqueue(String key, boolean merge, String sql, Object[] params) {
+        if (!running) {
+            // 写线程未运行（尚未初始化或已关闭）时直接同步执行，避免丢失数据
+            executeDirect(sql, params);
+            return;
+        }
+
+        lock.lock();
+        try {
+            String mapKey = mapKey(key, merge);
+            // 先移除再放入，使合并后的写操作排到队尾，保持"最新状态最后写入"的顺序
+            if (pending.remove(mapKey) != null) {
+                mergedWrites.incrementAndGet();
+            }
+            pending.put(mapKey, new PendingWrite(sql, params));
+            enqueuedGeneration++;
+            if (key != null) {
+                keyGenerations.put(key, enqueuedGeneration);
+            }
+            if (pending.size() >= batchSize) {
+                workAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 提交一组写操作
+     * 整组在同一次加锁中入队，写线程一定在同一批次（同一事务）中执行它们；
+     * 组内的写操作保持提交顺序，连续的相同SQL会合并为一次JDBC批处理
+     * @param writes 写操作
+     */
+    public void submitAll(List<Write> writes) {
+        if (!running) {
+            for (Write write : writes) {
+                executeDirect(write.sql, write.params);
+            }
+            return;
+        }
+
+        lock.lock();
+        try {
+            enqueuedGeneration++;
+            for (Write write : writes) {
+                String mapKey = mapKey(write.key, write.merge);
+                if (pending.remove(mapKey) != null) {
+                    mergedWrites.incrementAndGet();
+                }
+                pending.put(mapKey, new PendingWrite(write.sql, write.params));
+                for (String rowKey : write.rowKeys) {
+                    keyGenerations.put(rowKey, enqueuedGeneration);
+                }
+            }
+            if (pending.size() >= batchSize) {
+                workAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待当前已提交的所有写操作落盘
+     * 队列为空时立即返回
+     */
+    public void flush() {
+        if (!running || Thread.currentThread() == writerThread) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            long target = enqueuedGeneration;
+            if (committedGeneration >= target) {
+                return;
+            }
+            flushRequested = true;
+            workAvailable.signal();
+            while (committedGeneration < target && running) {
+                flushed.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待指定行键的写操作落盘
+     * 只等待这些行最后一次入队的写操作所在的批次提交，之后入队的其他行的写操作不会延长等待；
+     * 这些行没有排队中或正在执行的写操作时立即返回
+     * @param keys 行键
+     * @return 是否等待过
+     */
+    public boolean flush(Collection<String> keys) {
+        if (!running || Thread.currentThread() == writerThread || keys.isEmpty()) {
+            return false;
+        }
+
+        lock.lock();
+        try {
+            long target = 0;
+            for (String key : keys) {
+                Long generation = keyGenerations.get(key);
+                if (generation != null && generation > target) {
+                    target = generation;
+                }
+            }
+            if (committedGeneration >= target) {
+                return false;
+            }
+            flushRequested = true;
+            workAvailable.signal();
+            while (committedGeneration < target && running) {
+                flushed.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    private String mapKey(String key, boolean merge) {
+        if (key == null) {
+            return "#" + sequence.incrementAndGet();
+        }
+        return merge ? key : key + "#" + sequence.incrementAndGet();
+    }
+
+    /**
+     * 停止写线程并排空队列
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+
+        lock.lock();
+        try {
+            running = false;
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (writerThread.isAlive()) {
+            // 写线程可能仍在使用写连接，不能在当前线程中并发写入
+            VillagerPro.getInstance().getLogger().severe("写线程未能在30秒内退出，" + getPendingCount() + " 条排队中的写操作未写入");
+            return;
+        }
+
+        // 写线程已退出但仍有残留（例如写线程被中断），在当前线程中执行
+        List<PendingWrite> remaining = drain();
+        if (!remaining.isEmpty()) {
+            executeBatch(remaining);
+        }
+    }
+
+    /**
+     * 获取当前排队的写操作数量
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMergedCount() {
+        return mergedWrites.get();
+    }
+
+    public long getExecutedCount() {
+        return executedWrites.get();
+    }
+
+    /**
+     * 写线程主循环
+     */
+    private void runLoop() {
+        long lastFlush = System.currentTimeMillis();
+
+        while (true) {
+            List<PendingWrite> batch;
+            long generation;
+
+            lock.lock();
+            try {
+                while (running && !flushRequested && pending.size() < batchSize) {
+                    long waitMillis = flushIntervalMillis - (System.currentTimeMillis() - lastFlush);
+                    if (waitMillis <= 0) {
+                        break;
+                    }
+                    workAvailable.await(waitMillis, TimeUnit.MILLISECONDS);
+                }
+
+                if (!running && pending.isEmpty()) {
+                    committedGeneration = enqueuedGeneration;
+                    keyGenerations.clear();
+                    flushed.signalAll();
+                    return;
+                }
+
+                flushRequested = false;
+                generation = enqueuedGeneration;
+                batch = drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            if (!batch.isEmpty()) {
+                executeBatch(batch);
+            }
+            lastFlush = System.currentTimeMillis();
+
+            lock.lock();
+            try {
+                committedGeneration = Math.max(committedGeneration, generation);
+                long committed = committedGeneration;
+                keyGenerations.values().removeIf(keyGeneration -> keyGeneration <= committed);
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 取出所有待写操作
+     */
+    private List<PendingWrite> drain() {
+        lock.lock();
+        try {
+            List<PendingWrite> batch = new ArrayList<>(pending.values());
+            pending.clear();
+            return batch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 在一个事务中执行一批写操作
+     * 连续的相同SQL会合并为一次JDBC批处理
+     */
+    private void executeBatch(List<PendingWrite> batch) {
+        try (Connection connection = connections.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                int index = 0;
+                while (index < batch.size()) {
+                    String sql = batch.get(index).sql;
+                    int end = index + 1;
+                    while (end < batch.size() && batch.get(end).sql.equals(sql)) {
+                        end++;
+                    }
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        if (end - index == 1) {
+                            bind(statement, batch.get(index).params);
+                            statement.executeUpdate();
+                        } else {
+                            for (int i = index; i < end; i++) {
+                                bind(statement, batch.get(i).params);
+                                statement.addBatch();
+                            }
+                            statement.executeBatch();
+                        }
+                    }
+                    index = end;
+                }
+                connection.commit();
+                executedWrites.addAndGet(batch.size());
+            } catch (SQLException e) {
+                connection.rollback();
+                VillagerPro.getInstance().getLogger().warning("批量写入失败，改为逐条写入: " + e.getMessage());
+                connection.setAutoCommit(true);
+                executeIndividually(connection, batch);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().severe("数据库写入失败，丢弃 " + batch.size() + " 条写操作: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 逐条执行写操作，单条失败不影响其他写操作
+     */
+    private void executeIndividually(Connection connection, List<PendingWrite> batch) {
+        for (PendingWrite write : batch) {
+            try (PreparedStatement statement = connection.prepareStatement(write.sql)) {
+                bind(statement, write.params);
+                statement.executeUpdate();
+                executedWrites.incrementAndGet();
+            } catch (SQLException e) {
+                VillagerPro.getInstance().getLogger().warning("数据库写入失败: " + e.getMessage() + " [" + write.sql + "]");
+            }
+        }
+    }
+
+    /**
+     * 同步执行单条写操作
+     */
+    private void executeDirect(String sql, Object[] params) {
+        try (Connection connection = connections.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, params);
+            statement.executeUpdate();
+            executedWrites.incrementAndGet();
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("数据库写入失败: " + e.getMessage());
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+        if (params == null) {
+            return;
+        }
+        for (int i = 0; i < params.length; i++) {
+            statement.setObject(i + 1, params[i]);
+        }
+    }
+}
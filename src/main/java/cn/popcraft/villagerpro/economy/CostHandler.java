@@ -101,6 +101,43 @@ public class CostHandler {
         }
     }
     
+    /**
+     * 退还已扣除的成本（扣费后操作未生效时调用，需在主线程中调用）
+     * @param player 玩家
+     * @param costs 成本列表
+     */
+    public static void refund(Player player, List<CostEntry> costs) {
+        for (CostEntry cost : costs) {
+            if (!refund(player, cost)) {
+                VillagerPro.getInstance().getLogger().warning("退还玩家 " + player.getName() + " 的费用失败：" +
+                        cost.getType() + " x" + cost.getAmount() + (cost.getItem() != null ? " " + cost.getItem() : ""));
+            }
+        }
+    }
+    
+    /**
+     * 退还单个成本
+     * @param player 玩家
+     * @param cost 成本
+     * @return 是否退还成功
+     */
+    private static boolean refund(Player player, CostEntry cost) {
+        switch (cost.getType().toLowerCase()) {
+            case "vault":
+                return depositVault(player, cost.getAmount());
+            case "playerpoints":
+                return givePlayerPoints(player, (int) cost.getAmount());
+            case "itemsadder":
+                // 如果ItemsAdder不可用，扣费时也未扣除
+                if (Bukkit.getPluginManager().getPlugin("ItemsAdder") == null) {
+                    return true;
+                }
+                return giveItemsAdderItem(player, cost.getItem(), (int) cost.getAmount());
+            default:
+                return false;
+        }
+    }
+    
     /**
      * 获取成本显示Lore
      * @param costs 成本列表
@@ -138,6 +175,14 @@ public class CostHandler {
         return false;
     }
     
+    private static boolean depositVault(Player player, double amount) {
+        Economy economy = VillagerPro.getInstance().getEconomy();
+        if (economy != null) {
+            return economy.depositPlayer(player, amount).transactionSuccess();
+        }
+        return false;
+    }
+    
     // 添加PlayerPoints点券支持
     private static boolean hasPlayerPoints(Player player, int amount) {
         return VillagerPro.getInstance().getPlayerPointsAPI() != null 
@@ -149,6 +194,11 @@ public class CostHandler {
             && VillagerPro.getInstance().getPlayerPointsAPI().getAPI().take(player.getUniqueId(), amount);
     }
     
+    private static boolean givePlayerPoints(Player player, int amount) {
+        return VillagerPro.getInstance().getPlayerPointsAPI() != null 
+            && VillagerPro.getInstance().getPlayerPointsAPI().getAPI().give(player.getUniqueId(), amount);
+    }
+    
     // 添加ItemsAdder物品支持
     private static boolean hasItemsAdderItem(Player player, String itemNamespace, int amount) {
         // 检查ItemsAdder是否可用
@@ -196,4 +246,35 @@ public class CostHandler {
             return false;
         }
     }
-}
\ No newline at end of file
+    
+    private static boolean giveItemsAdderItem(Player player, String itemNamespace, int amount) {
+        if (!player.isOnline()) {
+            return false;
+        }
+        
+        // 使用ItemsAdder API创建物品，背包放不下时掉落在玩家脚下
+        try {
+            Class<?> customStack = Class.forName("dev.lone.itemsadder.api.CustomStack");
+            Object stack = customStack.getMethod("getInstance", String.class).invoke(null, itemNamespace);
+            if (stack == null) {
+                return false;
+            }
+            ItemStack item = (ItemStack) customStack.getMethod("getItemStack").invoke(stack);
+            int maxStackSize = Math.max(1, item.getMaxStackSize());
+            for (int remaining = amount; remaining > 0; remaining -= maxStackSize) {
+                ItemStack part = item.clone();
+                part.setAmount(Math.min(remaining, maxStackSize));
+                for (ItemStack leftover : player.getInventory().addItem(part).values()) {
+                    player.getWorld().dropItemNaturally(player.getLocation(), leftover);
+                }
+            }
+            return true;
+        } catch (ClassNotFoundException e) {
+            VillagerPro.getInstance().getLogger().severe("未找到 ItemsAdder API 类: " + e.getMessage());
+            return false;
+        } catch (Exception e) {
+            VillagerPro.getInstance().getLogger().severe("调用 ItemsAdder API 时发生错误: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -1,8 +1,18 @@
 package cn.popcraft.villagerpro.events;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.SessionLoader;
+import cn.popcraft.villagerpro.managers.EntityRegistry;
+import cn.popcraft.villagerpro.scheduler.OfflineProduction;
+import cn.popcraft.villagerpro.scheduler.WorkScheduler;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.EventHandler;
 
 public class EventManager implements Listener {
@@ -24,13 +34,42 @@ public class EventManager implements Listener {
             VillagerPro.getInstance().getServer().getPluginManager().registerEvents(new VisitorListener(), VillagerPro.getInstance());
         }
         
-        // 注册事件管理器本身以监听玩家加入事件
+        // 注册事件管理器本身以监听玩家加入和退出事件，以及维护实体注册表的实体加载/卸载/死亡事件
         VillagerPro.getInstance().getServer().getPluginManager().registerEvents(new EventManager(), VillagerPro.getInstance());
     }
     
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        // 可以在这里添加玩家加入时的逻辑
-        // 例如：检查玩家是否有村庄，发送欢迎消息等
+        // 在后台预加载玩家的村庄数据，登录后的第一次操作直接使用缓存
+        SessionLoader.onJoin(event.getPlayer().getUniqueId());
+        // 结算离线期间的村民产出
+        OfflineProduction.onJoin(event.getPlayer().getUniqueId());
+        // 将玩家村庄的村民加入工作调度
+        WorkScheduler.onJoin(event.getPlayer().getUniqueId());
+    }
+    
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        SessionLoader.onQuit(event.getPlayer().getUniqueId());
+        OfflineProduction.onQuit(event.getPlayer().getUniqueId());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            EntityRegistry.onLoad(entity);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            EntityRegistry.onUnload(entity);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        EntityRegistry.onDeath(event.getEntity());
     }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package cn.popcraft.villagerpro.events;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.AsyncRepository;
 import cn.popcraft.villagerpro.economy.CostEntry;
 import cn.popcraft.villagerpro.economy.CostHandler;
 import cn.popcraft.villagerpro.gui.GUIManager;
@@ -8,11 +9,14 @@ import cn.popcraft.villagerpro.managers.VillageManager;
 import cn.popcraft.villagerpro.managers.VillageUpgradeManager;
 import cn.popcraft.villagerpro.managers.VillagerManager;
 import cn.popcraft.villagerpro.managers.VillagerUpgradeManager;
+import cn.popcraft.villagerpro.managers.WarehouseManager;
 import cn.popcraft.villagerpro.managers.SimpleAllianceManager;
 import cn.popcraft.villagerpro.managers.SimpleAllianceGUIManager;
 import cn.popcraft.villagerpro.gui.CostDisplayGUI;
 import cn.popcraft.villagerpro.models.Village;
 import cn.popcraft.villagerpro.models.VillagerData;
+import cn.popcraft.villagerpro.models.WarehouseItem;
+import cn.popcraft.villagerpro.scheduler.WorkScheduler;
 import cn.popcraft.villagerpro.util.Messages;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -31,12 +35,18 @@ import java.util.List;
 import org.bukkit.entity.Ageable;
 import java.util.UUID;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import org.bukkit.event.player.PlayerQuitEvent;
 
 public class GUIListener implements Listener {
     
+    // 已扣费、正在写入的升级（村庄/村民ID + 升级ID），只在主线程中访问，防止连点重复扣费
+    private final Set<String> pendingUpgrades = new HashSet<>();
+    
     @EventHandler
     public void onInventoryClick(InventoryClickEvent event) {
         if (event.getWhoClicked() instanceof Player) {
@@ -104,12 +114,13 @@ public class GUIListener implements Listener {
             // 检查村民是否已被招募
             if (villager.getCustomName() != null && villager.getCustomName().contains("§")) {
                 // 已被招募的村民，显示信息GUI
-                VillagerData villagerData = VillagerManager.getVillager(villager.getUniqueId());
-                if (villagerData != null) {
-                    GUIManager.openVillagerInfoGUI(player, villagerData.getId());
-                } else {
-                    player.sendMessage("§c该村民数据异常！");
-                }
+                AsyncRepository.thenSync(AsyncRepository.getVillager(villager.getUniqueId()), player, villagerData -> {
+                    if (villagerData != null) {
+                        GUIManager.openVillagerInfoGUI(player, villagerData.getId());
+                    } else {
+                        player.sendMessage("§c该村民数据异常！");
+                    }
+                });
             } else {
                 // 未被招募的村民，显示招募GUI
                 GUIManager.openRecruitGUI(player);
@@ -207,34 +218,8 @@ public class GUIListener implements Listener {
                 break;
             case LEAD:
                 // 切换跟随模式
-                VillagerData villager = VillagerManager.getVillagerById(villagerId);
-                if (villager != null) {
-                    String currentMode = villager.getFollowMode();
-                    String newMode;
-                    switch (currentMode) {
-                        case "FREE":
-                            newMode = "FOLLOW";
-                            break;
-                        case "FOLLOW":
-                            newMode = "STAY";
-                            break;
-                        case "STAY":
-                            newMode = "FREE";
-                            break;
-                        default:
-                            newMode = "FREE";
-                    }
-                    villager.setFollowMode(newMode);
-                    if (VillagerManager.updateVillager(villager)) {
-                        player.sendMessage("§a跟随模式已切换为: " + newMode);
-                        // 刷新GUI
-                        GUIManager.openVillagerInfoGUI(player, villagerId);
-                    } else {
-                        player.sendMessage("§c更新跟随模式失败！");
-                    }
-                } else {
-                    player.sendMessage("§c找不到该村民！");
-                }
+                AsyncRepository.thenSync(AsyncRepository.getVillagerById(villagerId), player,
+                        villager -> toggleFollowMode(player, villager, villagerId));
                 break;
             case ARROW:
                 GUIManager.openVillagerListGUI(player, 1); // 返回村民列表第1页
@@ -245,6 +230,37 @@ public class GUIListener implements Listener {
         }
     }
     
+    private void toggleFollowMode(Player player, VillagerData villager, int villagerId) {
+        if (villager == null) {
+            player.sendMessage("§c找不到该村民！");
+            return;
+        }
+        
+        String currentMode = villager.getFollowMode();
+        String newMode;
+        switch (currentMode) {
+            case "FREE":
+                newMode = "FOLLOW";
+                break;
+            case "FOLLOW":
+                newMode = "STAY";
+                break;
+            case "STAY":
+                newMode = "FREE";
+                break;
+            default:
+                newMode = "FREE";
+        }
+        villager.setFollowMode(newMode);
+        if (VillagerManager.updateVillager(villager)) {
+            player.sendMessage("§a跟随模式已切换为: " + newMode);
+            // 刷新GUI
+            GUIManager.openVillagerInfoGUI(player, villagerId);
+        } else {
+            player.sendMessage("§c更新跟随模式失败！");
+        }
+    }
+    
     private void handleVillagerUpgradeGUI(Player player, ItemStack clickedItem) {
         // 获取当前GUI中的村民ID
         Integer villagerId = GUIManager.getCurrentVillagerId(player);
@@ -260,53 +276,14 @@ public class GUIListener implements Listener {
             
             // 检查是否是技能物品
             if (displayName.startsWith("§e")) {
-                // 获取村民信息
-                VillagerData villager = VillagerManager.getVillagerById(villagerId);
-                
-                if (villager != null) {
-                    String profession = villager.getProfession();
-                    
-                    // 从lore中获取技能ID
-                    String skillId = null;
-                    if (meta.hasLore() && meta.getLore() != null) {
-                        for (String loreLine : meta.getLore()) {
-                            if (loreLine.startsWith("§7技能ID: §e")) {
-                                skillId = loreLine.substring(10); // 移除颜色代码
-                                break;
-                            }
-                        }
-                    }
-                    
-                    // 如果lore中没有技能ID，通过显示名称查找
-                    if (skillId == null) {
-                        skillId = findSkillIdByDisplayName(profession, displayName);
-                    }
-                    
-                    if (skillId != null) {
-                        // 检查是否能支付升级费用
-                        if (VillagerUpgradeManager.canAffordUpgrade(player, profession, skillId)) {
-                            // 支付费用
-                            if (VillagerUpgradeManager.payUpgradeCost(player, profession, skillId)) {
-                                // 应用升级
-                                if (VillagerUpgradeManager.applyVillagerUpgrade(villager, skillId)) {
-                                    player.sendMessage("§a技能升级成功！");
-                                    // 刷新升级GUI
-                                    GUIManager.openVillagerUpgradeGUI(player, villagerId);
-                                } else {
-                                    player.sendMessage("§c技能升级失败！");
-                                }
-                            } else {
-                                player.sendMessage("§c支付费用失败！");
-                            }
-                        } else {
-                            player.sendMessage("§c你没有足够的资源来升级这个技能！");
-                        }
-                    } else {
-                        player.sendMessage("§c无法识别技能！");
+                // 获取村民信息（连同技能等级在数据库线程中加载）
+                AsyncRepository.thenSync(AsyncRepository.supply(() -> {
+                    VillagerData villager = VillagerManager.getVillagerById(villagerId);
+                    if (villager != null) {
+                        villager.getSkills();
                     }
-                } else {
-                    player.sendMessage("§c找不到该村民！");
-                }
+                    return villager;
+                }), player, villager -> upgradeVillagerSkill(player, villager, meta, displayName));
             } else if (displayName.equals("§c返回")) {
                 // 获取当前GUI中的村民ID
                 if (villagerId != null) {
@@ -323,6 +300,80 @@ public class GUIListener implements Listener {
         }
     }
     
+    private void upgradeVillagerSkill(Player player, VillagerData villager, ItemMeta meta, String displayName) {
+        if (villager == null) {
+            player.sendMessage("§c找不到该村民！");
+            return;
+        }
+        
+        String profession = villager.getProfession();
+        
+        // 从lore中获取技能ID
+        String skillId = null;
+        if (meta.hasLore() && meta.getLore() != null) {
+            for (String loreLine : meta.getLore()) {
+                if (loreLine.startsWith("§7技能ID: §e")) {
+                    skillId = loreLine.substring(10); // 移除颜色代码
+                    break;
+                }
+            }
+        }
+        
+        // 如果lore中没有技能ID，通过显示名称查找
+        if (skillId == null) {
+            skillId = findSkillIdByDisplayName(profession, displayName);
+        }
+        
+        if (skillId == null) {
+            player.sendMessage("§c无法识别技能！");
+            return;
+        }
+        
+        String upgradeKey = "villager:" + villager.getId() + ":" + skillId;
+        if (pendingUpgrades.contains(upgradeKey)) {
+            player.sendMessage("§c该技能正在升级中，请稍候！");
+            return;
+        }
+        
+        // 已满级时不扣费
+        if (villager.getSkills().getOrDefault(skillId, 0) >= VillagerUpgradeManager.getSkillMaxLevel(profession, skillId)) {
+            player.sendMessage("§c该技能已达到最高等级！");
+            return;
+        }
+        
+        // 检查是否能支付升级费用
+        List<CostEntry> costs = VillagerUpgradeManager.getUpgradeCosts(profession, skillId);
+        if (!CostHandler.canAfford(player, costs)) {
+            player.sendMessage("§c你没有足够的资源来升级这个技能！");
+            return;
+        }
+        
+        // 支付费用
+        if (!CostHandler.deduct(player, costs)) {
+            player.sendMessage("§c支付费用失败！");
+            return;
+        }
+        
+        // 应用升级，未生效时退还费用
+        pendingUpgrades.add(upgradeKey);
+        AsyncRepository.thenSyncOrElse(AsyncRepository.applyVillagerUpgrade(villager, skillId), false, success -> {
+            pendingUpgrades.remove(upgradeKey);
+            if (!success) {
+                CostHandler.refund(player, costs);
+            }
+            if (!player.isOnline()) {
+                return;
+            }
+            if (success) {
+                player.sendMessage("§a技能升级成功！");
+                // 刷新升级GUI
+                GUIManager.openVillagerUpgradeGUI(player, villager.getId());
+            } else {
+                player.sendMessage("§c技能升级失败，费用已退还！");
+            }
+        });
+    }
+    
     private void handleWarehouseGUI(Player player, ItemStack clickedItem, org.bukkit.event.inventory.ClickType clickType) {
         ItemMeta meta = clickedItem.getItemMeta();
         if (meta != null && meta.hasDisplayName()) {
@@ -333,20 +384,11 @@ public class GUIListener implements Listener {
                 // 提取物品类型（移除颜色代码 §e）
                 String itemType = displayName.substring(2).trim();
                 
-                Village village = VillageManager.getVillage(player.getUniqueId());
-                if (village != null) {
-                    // 左键提取全部，右键提取一组(64)
-                    if (clickType == org.bukkit.event.inventory.ClickType.LEFT) {
-                        // 提取全部
-                        cn.popcraft.villagerpro.managers.WarehouseManager.extractAllItem(player, village.getId(), itemType);
-                        // 刷新GUI
-                        GUIManager.openWarehouseGUI(player);
-                    } else if (clickType == org.bukkit.event.inventory.ClickType.RIGHT) {
-                        // 提取一组（64个）
-                        cn.popcraft.villagerpro.managers.WarehouseManager.extractItem(player, village.getId(), itemType, 64);
-                        // 刷新GUI
-                        GUIManager.openWarehouseGUI(player);
-                    }
+                // 左键提取全部，右键提取一组(64)
+                if (clickType == org.bukkit.event.inventory.ClickType.LEFT) {
+                    extractWarehouseItem(player, itemType, -1);
+                } else if (clickType == org.bukkit.event.inventory.ClickType.RIGHT) {
+                    extractWarehouseItem(player, itemType, 64);
                 }
             } else if (displayName.equals("§c返回")) {
                 GUIManager.openVillageGUI(player);
@@ -356,6 +398,72 @@ public class GUIListener implements Listener {
         }
     }
     
+    /**
+     * 从仓库提取物品
+     * 库存检查与扣减在数据库线程中完成，物品在主线程发放，背包放不下的部分退回仓库
+     * @param player 玩家
+     * @param itemType 物品类型
+     * @param amount 提取数量，-1表示全部
+     */
+    private void extractWarehouseItem(Player player, String itemType, int amount) {
+        Material material = Material.getMaterial(itemType);
+        if (material == null) {
+            player.sendMessage("§c无效的物品类型: " + itemType);
+            return;
+        }
+        
+        UUID ownerUUID = player.getUniqueId();
+        AsyncRepository.thenSync(AsyncRepository.supply(() -> {
+            Village village = VillageManager.getVillage(ownerUUID);
+            if (village == null) {
+                return null;
+            }
+            int requested = amount;
+            if (requested < 0) {
+                WarehouseItem item = WarehouseManager.getWarehouseItem(village.getId(), itemType);
+                requested = item != null ? item.getAmount() : 0;
+            }
+            int taken = WarehouseManager.takeItem(village.getId(), itemType, requested);
+            return new WarehouseItem(0, village.getId(), itemType, taken);
+        }), taken -> {
+            if (taken == null) {
+                if (player.isOnline()) {
+                    player.sendMessage("§c你还没有创建村庄！");
+                }
+                return;
+            }
+            
+            if (!player.isOnline()) {
+                // 玩家已离线，退回已扣除的物品
+                if (taken.getAmount() > 0) {
+                    WarehouseManager.addWarehouseItem(taken.getVillageId(), itemType, taken.getAmount());
+                }
+                return;
+            }
+            
+            if (taken.getAmount() <= 0) {
+                player.sendMessage("§c仓库中没有足够的" + itemType + "！");
+                return;
+            }
+            
+            Map<Integer, ItemStack> leftover = player.getInventory().addItem(new ItemStack(material, taken.getAmount()));
+            int refund = 0;
+            for (ItemStack stack : leftover.values()) {
+                refund += stack.getAmount();
+            }
+            if (refund > 0) {
+                WarehouseManager.addWarehouseItem(taken.getVillageId(), itemType, refund);
+                player.sendMessage("§c背包空间不足，" + refund + " 个" + itemType + "已退回仓库");
+            }
+            if (refund < taken.getAmount()) {
+                player.sendMessage("§a成功提取了 " + (taken.getAmount() - refund) + " 个 " + itemType);
+            }
+            
+            // 刷新GUI
+            GUIManager.openWarehouseGUI(player);
+        });
+    }
+    
     private void handleRecruitGUI(Player player, ItemStack clickedItem) {
         switch (clickedItem.getType()) {
             case WHEAT:
@@ -413,28 +521,16 @@ public class GUIListener implements Listener {
                     return;
                 }
                 
-                Village village = VillageManager.getVillage(player.getUniqueId());
-                if (village != null) {
-                    // 检查是否能支付升级费用
-                    List<CostEntry> costs = VillageUpgradeManager.getUpgradeCosts(upgradeId);
-                    if (CostHandler.canAfford(player, costs)) {
-                        // 支付费用
-                        if (CostHandler.deduct(player, costs)) {
-                            // 应用升级
-                            if (VillageUpgradeManager.applyVillageUpgrade(village, upgradeId)) {
-                                player.sendMessage("§a村庄升级成功！");
-                            } else {
-                                player.sendMessage("§c村庄升级失败！");
-                            }
-                        } else {
-                            player.sendMessage("§c支付费用失败！");
-                        }
-                    } else {
-                        player.sendMessage("§c你没有足够的资源来升级这个项目！");
+                final String finalUpgradeId = upgradeId;
+                UUID ownerUUID = player.getUniqueId();
+                AsyncRepository.thenSync(AsyncRepository.supply(() -> {
+                    Village village = VillageManager.getVillage(ownerUUID);
+                    if (village != null) {
+                        // 预加载升级等级
+                        village.getUpgrades();
                     }
-                } else {
-                    player.sendMessage("§c找不到你的村庄！");
-                }
+                    return village;
+                }), player, village -> upgradeVillage(player, village, finalUpgradeId));
             } else if (displayName.equals("§c返回")) {
                 GUIManager.openVillageGUI(player);
             } else if (displayName.equals("§c关闭")) {
@@ -443,6 +539,55 @@ public class GUIListener implements Listener {
         }
     }
     
+    private void upgradeVillage(Player player, Village village, String upgradeId) {
+        if (village == null) {
+            player.sendMessage("§c找不到你的村庄！");
+            return;
+        }
+        
+        String upgradeKey = "village:" + village.getId() + ":" + upgradeId;
+        if (pendingUpgrades.contains(upgradeKey)) {
+            player.sendMessage("§c该升级正在处理中，请稍候！");
+            return;
+        }
+        
+        // 已满级时不扣费
+        if (village.getUpgrades().getOrDefault(upgradeId, 0) >= VillageUpgradeManager.getUpgradeMaxLevel(upgradeId)) {
+            player.sendMessage("§c该升级已达到最高等级！");
+            return;
+        }
+        
+        // 检查是否能支付升级费用
+        List<CostEntry> costs = VillageUpgradeManager.getUpgradeCosts(upgradeId);
+        if (!CostHandler.canAfford(player, costs)) {
+            player.sendMessage("§c你没有足够的资源来升级这个项目！");
+            return;
+        }
+        
+        // 支付费用
+        if (!CostHandler.deduct(player, costs)) {
+            player.sendMessage("§c支付费用失败！");
+            return;
+        }
+        
+        // 应用升级，未生效时退还费用
+        pendingUpgrades.add(upgradeKey);
+        AsyncRepository.thenSyncOrElse(AsyncRepository.applyVillageUpgrade(village, upgradeId), false, success -> {
+            pendingUpgrades.remove(upgradeKey);
+            if (!success) {
+                CostHandler.refund(player, costs);
+            }
+            if (!player.isOnline()) {
+                return;
+            }
+            if (success) {
+                player.sendMessage("§a村庄升级成功！");
+            } else {
+                player.sendMessage("§c村庄升级失败，费用已退还！");
+            }
+        });
+    }
+    
     private void recruitVillager(Player player, String profession) {
         // 查找附近未被招募的村民
         Villager targetVillager = null;
@@ -463,13 +608,23 @@ public class GUIListener implements Listener {
             return;
         }
 
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village == null) {
-            player.sendMessage("§c你还没有创建村庄！");
-            player.closeInventory();
-            return;
-        }
-
+        final Villager finalTargetVillager = targetVillager;
+        AsyncRepository.thenSync(AsyncRepository.getVillageOverview(player.getUniqueId()), player, overview -> {
+            if (overview == null) {
+                player.sendMessage("§c你还没有创建村庄！");
+                player.closeInventory();
+                return;
+            }
+            if (overview.isVillagerLimitReached()) {
+                player.sendMessage("§c村庄村民数量已达上限！");
+                player.closeInventory();
+                return;
+            }
+            confirmRecruitment(player, overview.getVillage(), finalTargetVillager, profession);
+        });
+    }
+    
+    private void confirmRecruitment(Player player, Village village, Villager targetVillager, String profession) {
         // 检查是否能支付招募费用
         List<CostEntry> recruitCosts = VillagerManager.getRecruitCosts();
         if (!CostHandler.canAfford(player, recruitCosts)) {
@@ -663,18 +818,22 @@ public class GUIListener implements Listener {
         targetVillager.setCustomName("§a" + professionName + " §7(ID: " + targetVillager.getEntityId() + ")");
         targetVillager.setCustomNameVisible(true);
         
-        // 保存村民数据到数据库
-        VillagerData villagerData = VillagerManager.recruitVillager(player, village, targetVillager.getUniqueId(), profession);
-        if (villagerData != null) {
-            player.sendMessage("§a成功招募了一名" + professionName + "！");
-            
-            // 延迟打开村庄主界面
-            Bukkit.getScheduler().runTaskLater(VillagerPro.getInstance(), () -> {
+        // 保存村民数据到数据库（费用已在确认时扣除）
+        CompletableFuture<VillagerData> recruited = AsyncRepository.insertVillager(village.getId(), targetVillager.getUniqueId(), profession);
+        // 加入工作调度（玩家在保存完成前离线也要加入）
+        AsyncRepository.thenSync(recruited, villagerData -> {
+            if (villagerData != null) {
+                WorkScheduler.schedule(villagerData.getId(), village.getId(), village.getOwnerUUID());
+            }
+        });
+        AsyncRepository.thenSync(recruited, player, villagerData -> {
+            if (villagerData != null) {
+                player.sendMessage("§a成功招募了一名" + professionName + "！");
                 GUIManager.openVillageGUI(player);
-            }, 1L);
-        } else {
-            player.sendMessage("§c招募村民失败！");
-        }
+            } else {
+                player.sendMessage("§c招募村民失败！");
+            }
+        });
     }
 
 }
\ No newline at end of file
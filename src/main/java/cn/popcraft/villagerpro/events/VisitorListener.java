@@ -3,6 +3,7 @@ package cn.popcraft.villagerpro.events;
 import cn.popcraft.villagerpro.VillagerPro;
 import cn.popcraft.villagerpro.managers.VisitorManager;
 import cn.popcraft.villagerpro.models.VisitorData;
+import org.bukkit.entity.LivingEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.Villager;
 import org.bukkit.event.EventHandler;
@@ -114,11 +115,15 @@ public class VisitorListener implements Listener {
     private void checkNearbyVisitors(Player player) {
         // 获取附近5格内的访客
         for (VisitorData visitor : visitorManager.getAllActiveVisitors()) {
-            if (!visitor.isActive() || visitor.getEntity() == null) {
+            if (!visitor.isActive()) {
+                continue;
+            }
+            LivingEntity entity = visitor.getEntity();
+            if (entity == null || !player.getWorld().equals(entity.getWorld())) {
                 continue;
             }
             
-            double distance = player.getLocation().distance(visitor.getEntity().getLocation());
+            double distance = player.getLocation().distance(entity.getLocation());
             if (distance <= 5.0) {
                 // 显示提示信息（只显示一次）
                 showVisitorTip(player, visitor);
@@ -160,8 +165,7 @@ public class VisitorListener implements Listener {
      */
     private VisitorData getVisitorByEntity(Villager villager) {
         for (VisitorData visitor : visitorManager.getAllActiveVisitors()) {
-            if (visitor.getEntity() != null && 
-                visitor.getEntity().getUniqueId().equals(villager.getUniqueId())) {
+            if (villager.getUniqueId().equals(visitor.getEntityUUID())) {
                 return visitor;
             }
         }
@@ -1,6 +1,8 @@
 package cn.popcraft.villagerpro.gui;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.AsyncRepository;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
 import cn.popcraft.villagerpro.managers.VillageManager;
 import cn.popcraft.villagerpro.managers.VillageUpgradeManager;
 import cn.popcraft.villagerpro.managers.VillagerManager;
@@ -8,6 +10,7 @@ import cn.popcraft.villagerpro.managers.VillagerUpgradeManager;
 import cn.popcraft.villagerpro.managers.WarehouseManager;
 import cn.popcraft.villagerpro.scheduler.WorkScheduler;
 import cn.popcraft.villagerpro.models.Village;
+import cn.popcraft.villagerpro.models.VillageOverview;
 import cn.popcraft.villagerpro.models.VillagerData;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
@@ -20,6 +23,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class GUIManager {
     private static final String GUI_PREFIX = VillagerPro.getInstance().getConfig().getString("gui.title_prefix", "§f[VP] ");
@@ -47,12 +52,18 @@ public class GUIManager {
      * @param player 玩家
      */
     public static void openVillageGUI(Player player) {
-        // 获取玩家的村庄
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village == null) {
-            player.sendMessage("§c你还没有创建村庄！");
-            return;
-        }
+        // 获取玩家的村庄（异步加载，加载完成后在主线程打开界面）
+        AsyncRepository.thenSync(AsyncRepository.getVillageOverview(player.getUniqueId()), player, overview -> {
+            if (overview == null) {
+                player.sendMessage("§c你还没有创建村庄！");
+                return;
+            }
+            showVillageGUI(player, overview);
+        });
+    }
+    
+    private static void showVillageGUI(Player player, VillageOverview overview) {
+        Village village = overview.getVillage();
         
         // 创建GUI
         Inventory gui = Bukkit.createInventory(null, 27, GUI_PREFIX + "村庄信息");
@@ -78,12 +89,12 @@ public class GUIManager {
         infoLore.add("§7繁荣度: §e" + village.getProsperity());
         
         // 获取村民数量
-        List<VillagerData> villagers = VillagerManager.getVillagers(village.getId());
+        List<VillagerData> villagers = overview.getVillagers();
         infoLore.add("§7村民: §e" + villagers.size() + "/" + village.getVillagerLimit());
         
         // 获取仓库信息
         int warehouseCapacity = village.getWarehouseCapacity();
-        int currentStorage = WarehouseManager.getCurrentStorage(village.getId());
+        int currentStorage = overview.getCurrentStorage();
         infoLore.add("§7仓库: §e" + currentStorage + "/" + warehouseCapacity);
         
         infoMeta.setLore(infoLore);
@@ -156,13 +167,16 @@ public class GUIManager {
      * @param page 页码（从1开始）
      */
     public static void openVillagerListGUI(Player player, int page) {
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village == null) {
-            player.sendMessage("§c你还没有创建村庄！");
-            return;
-        }
-        
-        List<VillagerData> villagers = VillagerManager.getVillagers(village.getId());
+        AsyncRepository.thenSync(AsyncRepository.getVillageOverview(player.getUniqueId()), player, overview -> {
+            if (overview == null) {
+                player.sendMessage("§c你还没有创建村庄！");
+                return;
+            }
+            showVillagerListGUI(player, overview.getVillagers(), page);
+        });
+    }
+    
+    private static void showVillagerListGUI(Player player, List<VillagerData> villagers, int page) {
         if (villagers.isEmpty()) {
             player.sendMessage("§7你还没有招募任何村民！");
             return;
@@ -295,24 +309,17 @@ public class GUIManager {
     public static void openVillagerInfoGUI(Player player, int villagerId) {
         setCurrentVillagerId(player, villagerId);
         
-        VillagerData villager = null;
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village != null) {
-            List<VillagerData> villagers = VillagerManager.getVillagers(village.getId());
-            for (VillagerData v : villagers) {
-                if (v.getId() == villagerId) {
-                    villager = v;
-                    break;
-                }
+        AsyncRepository.thenSync(loadOwnVillager(player.getUniqueId(), villagerId, false), player, villager -> {
+            if (villager == null) {
+                player.sendMessage("§c找不到该村民！");
+                removeCurrentVillagerId(player);
+                return;
             }
-        }
-        
-        if (villager == null) {
-            player.sendMessage("§c找不到该村民！");
-            removeCurrentVillagerId(player);
-            return;
-        }
-        
+            showVillagerInfoGUI(player, villager);
+        });
+    }
+    
+    private static void showVillagerInfoGUI(Player player, VillagerData villager) {
         Inventory gui = Bukkit.createInventory(null, 27, GUI_PREFIX + "村民详情");
         
         // 村民信息
@@ -373,23 +380,17 @@ public class GUIManager {
      * @param villagerId 村民ID
      */
     public static void openVillagerUpgradeGUI(Player player, int villagerId) {
-        VillagerData villager = null;
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village != null) {
-            List<VillagerData> villagers = VillagerManager.getVillagers(village.getId());
-            for (VillagerData v : villagers) {
-                if (v.getId() == villagerId) {
-                    villager = v;
-                    break;
-                }
+        AsyncRepository.thenSync(loadOwnVillager(player.getUniqueId(), villagerId, true), player, villager -> {
+            if (villager == null) {
+                player.sendMessage("§c找不到该村民！");
+                return;
             }
-        }
-        
-        if (villager == null) {
-            player.sendMessage("§c找不到该村民！");
-            return;
-        }
-        
+            showVillagerUpgradeGUI(player, villager);
+        });
+    }
+    
+    private static void showVillagerUpgradeGUI(Player player, VillagerData villager) {
+        int villagerId = villager.getId();
         Inventory gui = Bukkit.createInventory(null, 27, GUI_PREFIX + "村民升级");
         
         // 获取该职业可用的技能
@@ -418,7 +419,7 @@ public class GUIManager {
                 List<String> lore = new java.util.ArrayList<>();
                 lore.add("§7" + VillagerUpgradeManager.getSkillDescription(profession, skillId));
                 
-                int currentLevel = VillagerUpgradeManager.getVillagerSkillLevel(villagerId, skillId);
+                int currentLevel = villager.getSkills().getOrDefault(skillId, 0);
                 int maxLevel = VillagerUpgradeManager.getSkillMaxLevel(profession, skillId);
                 lore.add("§7等级: §e" + currentLevel + "/" + maxLevel);
                 lore.add("§7技能ID: §e" + skillId); // 添加技能ID用于后续处理
@@ -461,15 +462,20 @@ public class GUIManager {
      * @param player 玩家
      */
     public static void openWarehouseGUI(Player player) {
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village == null) {
-            player.sendMessage("§c你还没有创建村庄！");
-            return;
-        }
-        
-        List<cn.popcraft.villagerpro.models.WarehouseItem> warehouseItems = 
-            cn.popcraft.villagerpro.managers.WarehouseManager.getWarehouseItems(village.getId());
-        
+        UUID ownerUUID = player.getUniqueId();
+        AsyncRepository.thenSync(AsyncRepository.supply(() -> {
+            Village village = VillageManager.getVillage(ownerUUID);
+            return village != null ? WarehouseManager.getWarehouseItems(village.getId()) : null;
+        }), player, warehouseItems -> {
+            if (warehouseItems == null) {
+                player.sendMessage("§c你还没有创建村庄！");
+                return;
+            }
+            showWarehouseGUI(player, warehouseItems);
+        });
+    }
+    
+    private static void showWarehouseGUI(Player player, List<cn.popcraft.villagerpro.models.WarehouseItem> warehouseItems) {
         // 创建GUI (根据物品数量调整大小，最大54个格子)
         int size = Math.min(((warehouseItems.size() / 9) + 1) * 9, 54);
         size = Math.max(size, 9); // 至少1行
@@ -532,19 +538,23 @@ public class GUIManager {
      * @param player 玩家
      */
     public static void openRecruitGUI(Player player) {
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village == null) {
-            player.sendMessage("§c你还没有创建村庄！");
-            return;
-        }
-        
-        // 检查村民数量是否已达上限
-        List<VillagerData> villagers = VillagerManager.getVillagers(village.getId());
-        if (villagers.size() >= village.getVillagerLimit()) {
-            player.sendMessage("§c村民数量已达上限！");
-            return;
-        }
-        
+        AsyncRepository.thenSync(AsyncRepository.getVillageOverview(player.getUniqueId()), player, overview -> {
+            if (overview == null) {
+                player.sendMessage("§c你还没有创建村庄！");
+                return;
+            }
+            
+            // 检查村民数量是否已达上限
+            if (overview.isVillagerLimitReached()) {
+                player.sendMessage("§c村民数量已达上限！");
+                return;
+            }
+            
+            showRecruitGUI(player);
+        });
+    }
+    
+    private static void showRecruitGUI(Player player) {
         Inventory gui = Bukkit.createInventory(null, 27, GUI_PREFIX + "招募村民");
         
         // 农民
@@ -635,12 +645,24 @@ public class GUIManager {
      * @param player 玩家
      */
     public static void openVillageUpgradeGUI(Player player) {
-        Village village = VillageManager.getVillage(player.getUniqueId());
-        if (village == null) {
-            player.sendMessage("§c 你还没有创建村庄！");
-            return;
-        }
-        
+        UUID ownerUUID = player.getUniqueId();
+        AsyncRepository.thenSync(AsyncRepository.supply(() -> {
+            Village village = VillageManager.getVillage(ownerUUID);
+            if (village != null) {
+                // 预加载升级等级
+                village.getUpgrades();
+            }
+            return village;
+        }), player, village -> {
+            if (village == null) {
+                player.sendMessage("§c 你还没有创建村庄！");
+                return;
+            }
+            showVillageUpgradeGUI(player, village);
+        });
+    }
+    
+    private static void showVillageUpgradeGUI(Player player, Village village) {
         org.bukkit.configuration.file.FileConfiguration config = VillagerPro.getInstance().getConfig();
         
         // 检查村庄是否已达到最高等级
@@ -679,7 +701,7 @@ public class GUIManager {
             List<String> lore = new java.util.ArrayList<>();
             lore.add("§7" + VillageUpgradeManager.getUpgradeDescription(upgradeId));
             
-            int currentLevel = VillageUpgradeManager.getVillageUpgradeLevel(village.getId(), upgradeId);
+            int currentLevel = village.getUpgrades().getOrDefault(upgradeId, 0);
             int maxLevelUpgrade = VillageUpgradeManager.getUpgradeMaxLevel(upgradeId);
             lore.add("§7等级: §e" + currentLevel + "/" + maxLevelUpgrade);
             
@@ -723,6 +745,31 @@ public class GUIManager {
         player.openInventory(gui);
     }
     
+    /**
+     * 在数据库线程中查找玩家村庄中的指定村民
+     * @param ownerUUID 玩家UUID
+     * @param villagerId 村民ID
+     * @param withSkills 是否同时加载技能等级
+     * @return 村民数据，不属于该玩家或不存在时为null
+     */
+    private static CompletableFuture<VillagerData> loadOwnVillager(UUID ownerUUID, int villagerId, boolean withSkills) {
+        return AsyncRepository.supply(() -> {
+            Village village = VillageManager.getVillage(ownerUUID);
+            if (village == null) {
+                return null;
+            }
+            for (VillagerData villager : VillagerManager.getVillagers(village.getId())) {
+                if (villager.getId() == villagerId) {
+                    if (withSkills) {
+                        villager.getSkills();
+                    }
+                    return villager;
+                }
+            }
+            return null;
+        });
+    }
+    
     /**
      * 获取职业图标
      * @param profession 职业
@@ -753,8 +800,7 @@ public class GUIManager {
      * @return 显示名称
      */
     private static String getProfessionDisplayName(String profession) {
-        return VillagerPro.getInstance().getConfig()
-                .getString("villager.professions." + profession + ".name", profession);
+        return ProfessionRegistry.getDisplayName(profession);
     }
     
     /**
@@ -1,49 +1,188 @@
 package cn.popcraft.villagerpro.managers;
 
+import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.cache.BoundedCache;
+import cn.popcraft.villagerpro.cache.CacheStats;
+import cn.popcraft.villagerpro.cache.CoarseClock;
+import cn.popcraft.villagerpro.database.AsyncRepository;
 import cn.popcraft.villagerpro.models.Village;
 import cn.popcraft.villagerpro.models.VillagerData;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.scheduler.BukkitTask;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
  * 缓存管理器 - 减少数据库查询次数
- * 使用简单的LRU策略和TTL（生存时间）机制
+ * 每个缓存区域都有容量上限，超出时按 W-TinyLFU 策略淘汰（见 {@link BoundedCache}），
+ * 条目超过存活时间后失效，并由定时任务在后台清理。
+ * 写入时间超过存活时间一定比例（cache.refresh_ahead_ratio）的条目在读取时由数据库线程池后台刷新，
+ * 热点数据的读取不会因为条目过期而同步等待数据库
  */
 public class CacheManager {
+    // 默认缓存TTL（毫秒）：5分钟
+    private static final long DEFAULT_TTL = 5 * 60 * 1000;
+
+    // 村庄ID -> 玩家UUID，随村庄缓存条目的移除同步清理，按ID查找和清除村庄时无需遍历
+    private static final Map<Integer, UUID> villageOwnerIndex = new ConcurrentHashMap<>();
+
+    // 实体UUID -> 村民ID，随村民缓存条目的移除同步清理
+    private static final Map<UUID, Integer> villagerEntityIndex = new ConcurrentHashMap<>();
+
+    // 村庄ID -> 已缓存的村民ID，随村民缓存条目的移除同步清理；村民所属村庄变化后的旧条目由查找时的校验跳过
+    private static final Map<Integer, Set<Integer>> villageVillagerIndex = new ConcurrentHashMap<>();
+
     // 村庄缓存：玩家UUID -> 村庄数据
-    private static final Map<UUID, CacheEntry<Village>> villageCache = new ConcurrentHashMap<>();
-    
+    private static volatile BoundedCache<UUID, Village> villageCache = createVillageCache(2000, DEFAULT_TTL);
+
     // 村民缓存：村民ID -> 村民数据
-    private static final Map<Integer, CacheEntry<VillagerData>> villagerByIdCache = new ConcurrentHashMap<>();
-    
-    // 村民缓存：实体UUID -> 村民数据
-    private static final Map<UUID, CacheEntry<VillagerData>> villagerByEntityCache = new ConcurrentHashMap<>();
-    
-    // 村庄村民列表缓存：村庄ID -> 村民列表
-    private static final Map<Integer, CacheEntry<List<VillagerData>>> villageVillagersCache = new ConcurrentHashMap<>();
-    
-    // 缓存TTL（毫秒）：5分钟
-    private static final long CACHE_TTL = 5 * 60 * 1000;
-    
+    private static volatile BoundedCache<Integer, VillagerData> villagerCache = createVillagerCache(10000, DEFAULT_TTL);
+
+    // 村庄村民列表缓存：村庄ID -> 村民列表（权重为列表中的村民数）
+    private static volatile BoundedCache<Integer, List<VillagerData>> villageVillagersCache = createVillageVillagersCache(10000, DEFAULT_TTL);
+
+    // 村民技能缓存：村民ID -> 技能ID -> 等级（权重为技能数），值为只读映射，升级时整体替换
+    private static volatile BoundedCache<Integer, Map<String, Integer>> villagerSkillsCache = createLevelCache("villager_skills", 20000, DEFAULT_TTL);
+
+    // 村庄升级缓存：村庄ID -> 升级ID -> 等级（权重为升级数），值为只读映射，升级时整体替换
+    private static volatile BoundedCache<Integer, Map<String, Integer>> villageUpgradesCache = createLevelCache("village_upgrades", 5000, DEFAULT_TTL);
+
+    // 仓库缓存：村庄ID -> 物品类型 -> 数量（权重为物品种类数），写操作同步更新
+    private static volatile BoundedCache<Integer, Map<String, Integer>> warehouseCache = createWarehouseCache(20000, DEFAULT_TTL);
+
+    // 仓库写操作按村庄ID分段记录：进行中的写操作数和已完成的写操作代数。
+    // 加载期间有写操作进行或完成时，读到的数据是否包含该写操作无法确定，不写入缓存而是重新加载
+    private static final int WAREHOUSE_STRIPES = 64;
+    private static final Object[] warehouseLocks = new Object[WAREHOUSE_STRIPES];
+    private static final AtomicIntegerArray warehouseWritesInProgress = new AtomicIntegerArray(WAREHOUSE_STRIPES);
+    private static final AtomicLongArray warehouseGenerations = new AtomicLongArray(WAREHOUSE_STRIPES);
+    private static final int WAREHOUSE_LOAD_ATTEMPTS = 3;
+
+    static {
+        for (int i = 0; i < WAREHOUSE_STRIPES; i++) {
+            warehouseLocks[i] = new Object();
+        }
+    }
+
+    // 所有受管理村民的实体UUID，启动时完整加载后，不在集合中的实体（原版村民）无需查询数据库即可判定
+    private static final Set<UUID> managedEntities = ConcurrentHashMap.newKeySet();
+    private static volatile boolean managedEntitiesComplete = false;
+    private static final LongAdder unmanagedLookups = new LongAdder();
+
+    // 在线玩家 -> 会话期间固定在缓存中的数据
+    private static final Map<UUID, SessionPins> sessionPins = new ConcurrentHashMap<>();
+
+    private static BukkitTask sweepTask;
+    private static BukkitTask clockTask;
+    // 写入后超过该时间的条目在读取时后台刷新，0 表示不刷新
+    private static long refreshAfter = 0L;
+
+    /**
+     * 按配置重建缓存区域并启动过期清理任务
+     */
+    public static void initialize() {
+        FileConfiguration config = VillagerPro.getInstance().getConfig();
+        long ttl = Math.max(0L, config.getLong("cache.ttl_seconds", 300L)) * 1000L;
+        double refreshRatio = config.getDouble("cache.refresh_ahead_ratio", 0.8);
+        refreshAfter = refreshRatio > 0 && refreshRatio < 1 ? (long) (ttl * refreshRatio) : 0L;
+        villageOwnerIndex.clear();
+        villageCache = createVillageCache(config.getLong("cache.villages.max_weight", 2000L), ttl);
+        villagerEntityIndex.clear();
+        villageVillagerIndex.clear();
+        villagerCache = createVillagerCache(config.getLong("cache.villagers.max_weight", 10000L), ttl);
+        villageVillagersCache = createVillageVillagersCache(config.getLong("cache.village_villagers.max_weight", 10000L), ttl);
+        warehouseCache = createWarehouseCache(config.getLong("cache.warehouses.max_weight", 20000L), ttl);
+        villagerSkillsCache = createLevelCache("villager_skills", config.getLong("cache.villager_skills.max_weight", 20000L), ttl);
+        villageUpgradesCache = createLevelCache("village_upgrades", config.getLong("cache.village_upgrades.max_weight", 5000L), ttl);
+        sessionPins.clear();
+        managedEntities.clear();
+        managedEntitiesComplete = false;
+
+        CoarseClock.tick();
+        clockTask = Bukkit.getScheduler().runTaskTimer(VillagerPro.getInstance(), CoarseClock::tick, 1L, 1L);
+        long interval = Math.max(1L, config.getLong("cache.sweep_interval_seconds", 60L)) * 20L;
+        sweepTask = Bukkit.getScheduler().runTaskTimerAsynchronously(VillagerPro.getInstance(), CacheManager::cleanupExpired, interval, interval);
+    }
+
     /**
-     * 缓存条目包装类
+     * 停止过期清理任务
      */
-    private static class CacheEntry<T> {
-        private final T data;
-        private final long timestamp;
-        
-        public CacheEntry(T data) {
-            this.data = data;
-            this.timestamp = System.currentTimeMillis();
+    public static void shutdown() {
+        if (sweepTask != null) {
+            sweepTask.cancel();
+            sweepTask = null;
         }
-        
-        public boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > CACHE_TTL;
+        if (clockTask != null) {
+            clockTask.cancel();
+            clockTask = null;
+        }
+    }
+
+    /**
+     * 在数据库线程池中执行后台刷新，线程池已满时拒绝（本次不刷新）
+     */
+    private static void executeRefresh(Runnable task) {
+        if (!AsyncRepository.tryExecute(task)) {
+            throw new RejectedExecutionException("数据库线程池已满");
         }
-        
-        public T getData() {
-            return data;
+    }
+
+    // 条目被替换（包括后台刷新）时键不变，索引无需清理；实体UUID变化时由按实体查找的校验清理旧索引
+    private static BoundedCache<UUID, Village> createVillageCache(long maxWeight, long ttl) {
+        return new BoundedCache<>("villages", maxWeight, ttl, null, (ownerUUID, village, cause) -> {
+            if (cause != BoundedCache.RemovalCause.REPLACED) {
+                villageOwnerIndex.remove(village.getId(), ownerUUID);
+            }
+        }, refreshAfter, CacheManager::executeRefresh);
+    }
+
+    private static BoundedCache<Integer, VillagerData> createVillagerCache(long maxWeight, long ttl) {
+        return new BoundedCache<>("villagers", maxWeight, ttl, null, (villagerId, villager, cause) -> {
+            if (cause != BoundedCache.RemovalCause.REPLACED) {
+                if (villager.getEntityUUID() != null) {
+                    villagerEntityIndex.remove(villager.getEntityUUID(), villagerId);
+                }
+                villageVillagerIndex.computeIfPresent(villager.getVillageId(), (villageId, ids) -> {
+                    ids.remove(villagerId);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        }, refreshAfter, CacheManager::executeRefresh);
+    }
+
+    private static BoundedCache<Integer, List<VillagerData>> createVillageVillagersCache(long maxWeight, long ttl) {
+        return new BoundedCache<>("village_villagers", maxWeight, ttl, List::size, null, refreshAfter, CacheManager::executeRefresh);
+    }
+
+    // 仓库内容由写操作原地更新，后台刷新会丢失加载期间的更新，因此仓库只按存活时间过期
+    private static BoundedCache<Integer, Map<String, Integer>> createWarehouseCache(long maxWeight, long ttl) {
+        return new BoundedCache<>("warehouses", maxWeight, ttl, Map::size, null);
+    }
+
+    private static BoundedCache<Integer, Map<String, Integer>> createLevelCache(String name, long maxWeight, long ttl) {
+        return new BoundedCache<>(name, maxWeight, ttl, Map::size, null, refreshAfter, CacheManager::executeRefresh);
+    }
+
+    /**
+     * 会话期间固定的缓存键
+     */
+    private static class SessionPins {
+        private final UUID ownerUUID;
+        private final int villageId;
+        private final List<Integer> villagerIds;
+
+        SessionPins(UUID ownerUUID, int villageId, List<Integer> villagerIds) {
+            this.ownerUUID = ownerUUID;
+            this.villageId = villageId;
+            this.villagerIds = villagerIds;
         }
     }
     
@@ -55,15 +194,39 @@ public class CacheManager {
      * @return 村庄数据，如果缓存不存在或已过期则返回null
      */
     public static Village getCachedVillage(UUID ownerUUID) {
-        CacheEntry<Village> entry = villageCache.get(ownerUUID);
-        if (entry != null && !entry.isExpired()) {
-            return entry.getData();
+        return villageCache.getIfPresent(ownerUUID);
+    }
+    
+    /**
+     * 获取村庄数据，缓存不存在时通过 loader 加载并写入缓存
+     * @param ownerUUID 玩家UUID
+     * @param loader 从数据库加载的逻辑，返回null表示不存在
+     * @return 村庄数据
+     */
+    public static Village getVillage(UUID ownerUUID, Function<UUID, Village> loader) {
+        Village village = villageCache.getIfPresent(ownerUUID, loader);
+        if (village == null) {
+            village = villageCache.getStats().timeLoad(() -> loader.apply(ownerUUID));
+            cacheVillage(ownerUUID, village);
         }
-        // 清理过期缓存
-        if (entry != null) {
-            villageCache.remove(ownerUUID);
+        return village;
+    }
+
+    /**
+     * 获取村庄数据（通过村庄ID），缓存不存在时通过 loader 加载并写入缓存
+     * @param villageId 村庄ID
+     * @param loader 从数据库加载的逻辑，返回null表示不存在
+     * @return 村庄数据
+     */
+    public static Village getVillageById(int villageId, IntFunction<Village> loader) {
+        Village village = getCachedVillageById(villageId, ownerUUID -> loader.apply(villageId));
+        if (village == null) {
+            village = villageCache.getStats().timeLoad(() -> loader.apply(villageId));
+            if (village != null) {
+                cacheVillage(village.getOwnerUUID(), village);
+            }
         }
-        return null;
+        return village;
     }
     
     /**
@@ -73,8 +236,36 @@ public class CacheManager {
      */
     public static void cacheVillage(UUID ownerUUID, Village village) {
         if (village != null) {
-            villageCache.put(ownerUUID, new CacheEntry<>(village));
+            villageCache.put(ownerUUID, village);
+            UUID previousOwner = villageOwnerIndex.put(village.getId(), ownerUUID);
+            // 村庄转移给其他玩家后，旧拥有者的缓存条目已失效
+            if (previousOwner != null && !previousOwner.equals(ownerUUID)) {
+                villageCache.invalidate(previousOwner);
+            }
+        }
+    }
+
+    /**
+     * 获取缓存的村庄数据（通过村庄ID）
+     * @param villageId 村庄ID
+     * @return 村庄数据，如果缓存不存在或已过期则返回null
+     */
+    public static Village getCachedVillageById(int villageId) {
+        return getCachedVillageById(villageId, null);
+    }
+
+    private static Village getCachedVillageById(int villageId, Function<UUID, Village> loader) {
+        UUID ownerUUID = villageOwnerIndex.get(villageId);
+        if (ownerUUID == null) {
+            villageCache.getStats().recordMiss();
+            return null;
+        }
+        Village village = villageCache.getIfPresent(ownerUUID, loader);
+        if (village == null || village.getId() != villageId) {
+            villageOwnerIndex.remove(villageId, ownerUUID);
+            return null;
         }
+        return village;
     }
     
     /**
@@ -82,7 +273,7 @@ public class CacheManager {
      * @param ownerUUID 玩家UUID
      */
     public static void invalidateVillage(UUID ownerUUID) {
-        villageCache.remove(ownerUUID);
+        villageCache.invalidate(ownerUUID);
     }
     
     /**
@@ -90,8 +281,10 @@ public class CacheManager {
      * @param villageId 村庄ID
      */
     public static void invalidateVillageById(int villageId) {
-        villageCache.entrySet().removeIf(entry -> 
-            entry.getValue().getData() != null && entry.getValue().getData().getId() == villageId);
+        UUID ownerUUID = villageOwnerIndex.remove(villageId);
+        if (ownerUUID != null) {
+            villageCache.invalidate(ownerUUID);
+        }
     }
     
     // ========== 村民缓存操作 ==========
@@ -102,14 +295,7 @@ public class CacheManager {
      * @return 村民数据，如果缓存不存在或已过期则返回null
      */
     public static VillagerData getCachedVillagerById(int villagerId) {
-        CacheEntry<VillagerData> entry = villagerByIdCache.get(villagerId);
-        if (entry != null && !entry.isExpired()) {
-            return entry.getData();
-        }
-        if (entry != null) {
-            villagerByIdCache.remove(villagerId);
-        }
-        return null;
+        return villagerCache.getIfPresent(villagerId);
     }
     
     /**
@@ -118,14 +304,58 @@ public class CacheManager {
      * @return 村民数据，如果缓存不存在或已过期则返回null
      */
     public static VillagerData getCachedVillagerByEntity(UUID entityUUID) {
-        CacheEntry<VillagerData> entry = villagerByEntityCache.get(entityUUID);
-        if (entry != null && !entry.isExpired()) {
-            return entry.getData();
+        return getCachedVillagerByEntity(entityUUID, null);
+    }
+
+    private static VillagerData getCachedVillagerByEntity(UUID entityUUID, Function<Integer, VillagerData> loader) {
+        Integer villagerId = villagerEntityIndex.get(entityUUID);
+        if (villagerId == null) {
+            villagerCache.getStats().recordMiss();
+            return null;
         }
-        if (entry != null) {
-            villagerByEntityCache.remove(entityUUID);
+        VillagerData villager = villagerCache.getIfPresent(villagerId, loader);
+        if (villager == null || !entityUUID.equals(villager.getEntityUUID())) {
+            villagerEntityIndex.remove(entityUUID, villagerId);
+            return null;
         }
-        return null;
+        return villager;
+    }
+    
+    /**
+     * 获取村民数据（通过村民ID），缓存不存在时通过 loader 加载并写入缓存
+     * @param villagerId 村民ID
+     * @param loader 从数据库加载的逻辑，返回null表示不存在
+     * @return 村民数据
+     */
+    public static VillagerData getVillagerById(int villagerId, IntFunction<VillagerData> loader) {
+        VillagerData villager = villagerCache.getIfPresent(villagerId, loader::apply);
+        if (villager == null) {
+            villager = villagerCache.getStats().timeLoad(() -> loader.apply(villagerId));
+            cacheVillager(villager);
+        }
+        return villager;
+    }
+
+    /**
+     * 获取村民数据（通过实体UUID），缓存不存在时通过 loader 加载并写入缓存
+     * @param entityUUID 实体UUID
+     * @param loader 从数据库加载的逻辑，返回null表示不存在
+     * @return 村民数据
+     */
+    public static VillagerData getVillagerByEntity(UUID entityUUID, Function<UUID, VillagerData> loader) {
+        if (isUnmanagedEntity(entityUUID)) {
+            unmanagedLookups.increment();
+            return null;
+        }
+        VillagerData villager = getCachedVillagerByEntity(entityUUID, villagerId -> loader.apply(entityUUID));
+        if (villager == null) {
+            villager = villagerCache.getStats().timeLoad(() -> loader.apply(entityUUID));
+            if (villager != null) {
+                managedEntities.add(entityUUID);
+            }
+            cacheVillager(villager);
+        }
+        return villager;
     }
     
     /**
@@ -134,11 +364,11 @@ public class CacheManager {
      */
     public static void cacheVillager(VillagerData villager) {
         if (villager != null) {
-            CacheEntry<VillagerData> entry = new CacheEntry<>(villager);
-            villagerByIdCache.put(villager.getId(), entry);
+            villagerCache.put(villager.getId(), villager);
             if (villager.getEntityUUID() != null) {
-                villagerByEntityCache.put(villager.getEntityUUID(), entry);
+                villagerEntityIndex.put(villager.getEntityUUID(), villager.getId());
             }
+            villageVillagerIndex.computeIfAbsent(villager.getVillageId(), id -> ConcurrentHashMap.newKeySet()).add(villager.getId());
         }
     }
     
@@ -147,13 +377,10 @@ public class CacheManager {
      * @param villagerId 村民ID
      */
     public static void invalidateVillager(int villagerId) {
-        CacheEntry<VillagerData> entry = villagerByIdCache.remove(villagerId);
-        if (entry != null && entry.getData() != null && entry.getData().getEntityUUID() != null) {
-            villagerByEntityCache.remove(entry.getData().getEntityUUID());
-        }
+        VillagerData villager = villagerCache.invalidate(villagerId);
         // 同时清除相关的村庄村民列表缓存
-        if (entry != null && entry.getData() != null) {
-            villageVillagersCache.remove(entry.getData().getVillageId());
+        if (villager != null) {
+            villageVillagersCache.invalidate(villager.getVillageId());
         }
     }
     
@@ -162,10 +389,9 @@ public class CacheManager {
      * @param entityUUID 实体UUID
      */
     public static void invalidateVillagerByEntity(UUID entityUUID) {
-        CacheEntry<VillagerData> entry = villagerByEntityCache.remove(entityUUID);
-        if (entry != null && entry.getData() != null) {
-            villagerByIdCache.remove(entry.getData().getId());
-            villageVillagersCache.remove(entry.getData().getVillageId());
+        Integer villagerId = villagerEntityIndex.remove(entityUUID);
+        if (villagerId != null) {
+            invalidateVillager(villagerId);
         }
     }
     
@@ -177,14 +403,22 @@ public class CacheManager {
      * @return 村民列表，如果缓存不存在或已过期则返回null
      */
     public static List<VillagerData> getCachedVillageVillagers(int villageId) {
-        CacheEntry<List<VillagerData>> entry = villageVillagersCache.get(villageId);
-        if (entry != null && !entry.isExpired()) {
-            return entry.getData();
-        }
-        if (entry != null) {
-            villageVillagersCache.remove(villageId);
+        return villageVillagersCache.getIfPresent(villageId);
+    }
+    
+    /**
+     * 获取村庄村民列表，缓存不存在时通过 loader 加载并写入缓存
+     * @param villageId 村庄ID
+     * @param loader 从数据库加载的逻辑，返回null表示加载失败
+     * @return 村民列表
+     */
+    public static List<VillagerData> getVillageVillagers(int villageId, IntFunction<List<VillagerData>> loader) {
+        List<VillagerData> villagers = villageVillagersCache.getIfPresent(villageId, loader::apply);
+        if (villagers == null) {
+            villagers = villageVillagersCache.getStats().timeLoad(() -> loader.apply(villageId));
+            cacheVillageVillagers(villageId, villagers);
         }
-        return null;
+        return villagers;
     }
     
     /**
@@ -194,7 +428,7 @@ public class CacheManager {
      */
     public static void cacheVillageVillagers(int villageId, List<VillagerData> villagers) {
         if (villagers != null) {
-            villageVillagersCache.put(villageId, new CacheEntry<>(new ArrayList<>(villagers)));
+            villageVillagersCache.put(villageId, new ArrayList<>(villagers));
             // 同时缓存每个村民
             for (VillagerData villager : villagers) {
                 cacheVillager(villager);
@@ -202,12 +436,363 @@ public class CacheManager {
         }
     }
     
+    /**
+     * 用更新后的村民数据替换已缓存的村庄村民列表中的同一村民，列表未缓存时不处理
+     * 村民数据更新不改变列表成员，不清除（可能已被会话固定的）列表；
+     * 列表中找不到该村民时（例如村民更换了村庄）列表已过时，清除列表
+     * @param villager 村民数据
+     */
+    public static void updateVillageVillager(VillagerData villager) {
+        List<VillagerData> villagers = villageVillagersCache.peek(villager.getVillageId());
+        if (villagers == null) {
+            return;
+        }
+        for (int i = 0; i < villagers.size(); i++) {
+            if (villagers.get(i).getId() == villager.getId()) {
+                if (villagers.get(i) != villager) {
+                    villagers.set(i, villager);
+                }
+                return;
+            }
+        }
+        villageVillagersCache.invalidate(villager.getVillageId());
+    }
+    
     /**
      * 清除村庄村民列表缓存
      * @param villageId 村庄ID
      */
     public static void invalidateVillageVillagers(int villageId) {
-        villageVillagersCache.remove(villageId);
+        villageVillagersCache.invalidate(villageId);
+    }
+    
+    /**
+     * 获取多个村庄中已缓存的村民（村民缓存和村庄村民列表中的），不记录访问，不遍历整个缓存
+     * @param villageIds 村庄ID
+     * @return 村民数据
+     */
+    public static List<VillagerData> getCachedVillagersOfVillages(Set<Integer> villageIds) {
+        List<VillagerData> villagers = new ArrayList<>();
+        Set<VillagerData> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int villageId : villageIds) {
+            for (int villagerId : villageVillagerIndex.getOrDefault(villageId, Collections.emptySet())) {
+                VillagerData villager = villagerCache.peek(villagerId);
+                if (villager != null && villager.getVillageId() == villageId && found.add(villager)) {
+                    villagers.add(villager);
+                }
+            }
+            // 列表中的村民通常与村民缓存是同一个对象，不是时一并返回
+            List<VillagerData> list = villageVillagersCache.peek(villageId);
+            if (list != null) {
+                for (VillagerData villager : list) {
+                    if (found.add(villager)) {
+                        villagers.add(villager);
+                    }
+                }
+            }
+        }
+        return villagers;
+    }
+    
+    // ========== 受管理实体集合 ==========
+    
+    /**
+     * 写入启动时从数据库完整加载的受管理实体UUID，之后不在集合中的实体直接判定为未受管理
+     * 加载期间新招募的村民已经加入集合，这里只做合并
+     * @param entityUUIDs 所有村民的实体UUID
+     */
+    public static void loadManagedEntities(Collection<UUID> entityUUIDs) {
+        managedEntities.addAll(entityUUIDs);
+        managedEntitiesComplete = true;
+    }
+    
+    /**
+     * 记录受管理的实体（招募村民或村民实体变更时调用）
+     * @param entityUUID 实体UUID
+     */
+    public static void addManagedEntity(UUID entityUUID) {
+        if (entityUUID != null) {
+            managedEntities.add(entityUUID);
+        }
+    }
+    
+    /**
+     * 移除受管理的实体（村民被移除时调用）
+     * @param entityUUID 实体UUID
+     */
+    public static void removeManagedEntity(UUID entityUUID) {
+        if (entityUUID != null) {
+            managedEntities.remove(entityUUID);
+        }
+    }
+    
+    /**
+     * 实体是否确定不是受管理的村民（集合尚未完整加载时总是返回false）
+     * @param entityUUID 实体UUID
+     * @return 是否未受管理
+     */
+    public static boolean isUnmanagedEntity(UUID entityUUID) {
+        return managedEntitiesComplete && !managedEntities.contains(entityUUID);
+    }
+    
+    // ========== 技能和升级缓存操作 ==========
+    
+    /**
+     * 获取村民技能，缓存不存在时通过 loader 加载并写入缓存
+     * @param villagerId 村民ID
+     * @param loader 从数据库加载的逻辑，返回null表示加载失败
+     * @return 技能ID -> 等级
+     */
+    public static Map<String, Integer> getVillagerSkills(int villagerId, IntFunction<Map<String, Integer>> loader) {
+        return getLevels(villagerSkillsCache, villagerId, loader);
+    }
+    
+    /**
+     * 缓存村民技能
+     * @param villagerId 村民ID
+     * @param skills 技能ID -> 等级
+     */
+    public static void cacheVillagerSkills(int villagerId, Map<String, Integer> skills) {
+        if (skills != null) {
+            villagerSkillsCache.put(villagerId, readOnly(skills));
+        }
+    }
+    
+    /**
+     * 技能升级写入数据库后同步更新缓存，技能未缓存时不做任何操作
+     * @param villagerId 村民ID
+     * @param skillId 技能ID
+     * @param level 新等级
+     */
+    public static void updateVillagerSkill(int villagerId, String skillId, int level) {
+        updateLevel(villagerSkillsCache, villagerId, skillId, level);
+    }
+    
+    /**
+     * 清除村民技能缓存
+     * @param villagerId 村民ID
+     */
+    public static void invalidateVillagerSkills(int villagerId) {
+        villagerSkillsCache.invalidate(villagerId);
+    }
+    
+    /**
+     * 获取村庄升级，缓存不存在时通过 loader 加载并写入缓存
+     * @param villageId 村庄ID
+     * @param loader 从数据库加载的逻辑，返回null表示加载失败
+     * @return 升级ID -> 等级
+     */
+    public static Map<String, Integer> getVillageUpgrades(int villageId, IntFunction<Map<String, Integer>> loader) {
+        return getLevels(villageUpgradesCache, villageId, loader);
+    }
+    
+    /**
+     * 缓存村庄升级
+     * @param villageId 村庄ID
+     * @param upgrades 升级ID -> 等级
+     */
+    public static void cacheVillageUpgrades(int villageId, Map<String, Integer> upgrades) {
+        if (upgrades != null) {
+            villageUpgradesCache.put(villageId, readOnly(upgrades));
+        }
+    }
+    
+    /**
+     * 村庄升级写入数据库后同步更新缓存，升级未缓存时不做任何操作
+     * @param villageId 村庄ID
+     * @param upgradeId 升级ID
+     * @param level 新等级
+     */
+    public static void updateVillageUpgrade(int villageId, String upgradeId, int level) {
+        updateLevel(villageUpgradesCache, villageId, upgradeId, level);
+    }
+    
+    /**
+     * 清除村庄升级缓存
+     * @param villageId 村庄ID
+     */
+    public static void invalidateVillageUpgrades(int villageId) {
+        villageUpgradesCache.invalidate(villageId);
+    }
+    
+    private static Map<String, Integer> getLevels(BoundedCache<Integer, Map<String, Integer>> region, int id,
+                                                  IntFunction<Map<String, Integer>> loader) {
+        Map<String, Integer> levels = region.getIfPresent(id, key -> readOnly(loader.apply(key)));
+        if (levels == null) {
+            levels = readOnly(region.getStats().timeLoad(() -> loader.apply(id)));
+            if (levels == null) {
+                return null;
+            }
+            region.put(id, levels);
+        }
+        return levels;
+    }
+    
+    private static Map<String, Integer> readOnly(Map<String, Integer> levels) {
+        return levels == null ? null : Collections.unmodifiableMap(new HashMap<>(levels));
+    }
+    
+    /**
+     * 复制后替换，已被其他线程持有的旧映射保持不变
+     */
+    private static void updateLevel(BoundedCache<Integer, Map<String, Integer>> region, int id, String key, int level) {
+        Map<String, Integer> levels = region.peek(id);
+        if (levels != null) {
+            Map<String, Integer> updated = new HashMap<>(levels);
+            updated.put(key, level);
+            region.put(id, Collections.unmodifiableMap(updated));
+        }
+    }
+    
+    // ========== 仓库缓存操作 ==========
+    
+    /**
+     * 获取村庄仓库内容，缓存不存在时通过 loader 加载并写入缓存
+     * 加载期间该村庄有仓库写操作时丢弃本次结果重新加载，多次重试仍冲突时返回加载结果但不写入缓存
+     * @param villageId 村庄ID
+     * @param loader 从数据库加载的逻辑，返回null表示加载失败
+     * @return 物品类型 -> 数量
+     */
+    public static Map<String, Integer> getWarehouse(int villageId, IntFunction<Map<String, Integer>> loader) {
+        Map<String, Integer> items = warehouseCache.getIfPresent(villageId);
+        if (items != null) {
+            return items;
+        }
+        int stripe = warehouseStripe(villageId);
+        for (int attempt = 1; ; attempt++) {
+            long generation = warehouseGenerations.get(stripe);
+            Map<String, Integer> loaded = warehouseCache.getStats().timeLoad(() -> loader.apply(villageId));
+            if (loaded == null) {
+                return null;
+            }
+            synchronized (warehouseLocks[stripe]) {
+                Map<String, Integer> cached = warehouseCache.peek(villageId);
+                if (cached != null) {
+                    return cached;
+                }
+                if (warehouseWritesInProgress.get(stripe) == 0 && warehouseGenerations.get(stripe) == generation) {
+                    items = new ConcurrentHashMap<>(loaded);
+                    warehouseCache.put(villageId, items);
+                    return items;
+                }
+            }
+            if (attempt >= WAREHOUSE_LOAD_ATTEMPTS) {
+                return loaded;
+            }
+        }
+    }
+    
+    /**
+     * 开始一次仓库写操作（在提交写操作或执行SQL之前调用），必须与 {@link #endWarehouseWrite} 成对调用
+     * @param villageId 村庄ID
+     */
+    public static void beginWarehouseWrite(int villageId) {
+        warehouseWritesInProgress.incrementAndGet(warehouseStripe(villageId));
+    }
+    
+    /**
+     * 结束一次仓库写操作（写操作已提交到写回队列或已执行之后调用），并同步调整已缓存的物品数量
+     * @param villageId 村庄ID
+     * @param deltas 物品类型 -> 数量变化，写操作失败时传入空映射
+     */
+    public static void endWarehouseWrite(int villageId, Map<String, Integer> deltas) {
+        int stripe = warehouseStripe(villageId);
+        synchronized (warehouseLocks[stripe]) {
+            Map<String, Integer> items = warehouseCache.peek(villageId);
+            if (items != null) {
+                for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+                    items.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                }
+            }
+            warehouseGenerations.incrementAndGet(stripe);
+            warehouseWritesInProgress.decrementAndGet(stripe);
+        }
+    }
+    
+    /**
+     * 结束一次清空仓库的写操作，缓存替换为空仓库
+     * @param villageId 村庄ID
+     */
+    public static void endWarehouseClear(int villageId) {
+        int stripe = warehouseStripe(villageId);
+        synchronized (warehouseLocks[stripe]) {
+            warehouseCache.put(villageId, new ConcurrentHashMap<>());
+            warehouseGenerations.incrementAndGet(stripe);
+            warehouseWritesInProgress.decrementAndGet(stripe);
+        }
+    }
+    
+    private static int warehouseStripe(int villageId) {
+        return Math.floorMod(villageId, WAREHOUSE_STRIPES);
+    }
+    
+    /**
+     * 清除村庄仓库缓存
+     * @param villageId 村庄ID
+     */
+    public static void invalidateWarehouse(int villageId) {
+        warehouseCache.invalidate(villageId);
+    }
+    
+    // ========== 会话固定 ==========
+    
+    /**
+     * 将玩家的村庄、村民列表、村民和仓库固定在缓存中，直到 {@link #unpinSession} 被调用
+     * @param ownerUUID 玩家UUID
+     * @param villageId 村庄ID
+     * @param villagerIds 村民ID列表
+     */
+    public static void pinSession(UUID ownerUUID, int villageId, List<Integer> villagerIds) {
+        unpinSession(ownerUUID);
+        sessionPins.put(ownerUUID, new SessionPins(ownerUUID, villageId, new ArrayList<>(villagerIds)));
+        villageCache.pin(ownerUUID);
+        villageVillagersCache.pin(villageId);
+        warehouseCache.pin(villageId);
+        villageUpgradesCache.pin(villageId);
+        for (int villagerId : villagerIds) {
+            villagerCache.pin(villagerId);
+            villagerSkillsCache.pin(villagerId);
+        }
+    }
+    
+    /**
+     * 将会话期间新招募的村民加入所在村庄的会话固定（村庄没有在线拥有者的会话时不固定）
+     * @param villageId 村庄ID
+     * @param villagerId 村民ID
+     */
+    public static void pinSessionVillager(int villageId, int villagerId) {
+        for (SessionPins session : sessionPins.values()) {
+            if (session.villageId != villageId) {
+                continue;
+            }
+            // 与 unpinSession 的移除互斥，已取消的会话不会再固定
+            sessionPins.computeIfPresent(session.ownerUUID, (ownerUUID, pins) -> {
+                pins.villagerIds.add(villagerId);
+                villagerCache.pin(villagerId);
+                villagerSkillsCache.pin(villagerId);
+                return pins;
+            });
+            return;
+        }
+    }
+    
+    /**
+     * 取消玩家会话的缓存固定，数据重新按容量和存活时间淘汰
+     * @param ownerUUID 玩家UUID
+     */
+    public static void unpinSession(UUID ownerUUID) {
+        SessionPins pins = sessionPins.remove(ownerUUID);
+        if (pins == null) {
+            return;
+        }
+        villageCache.unpin(pins.ownerUUID);
+        villageVillagersCache.unpin(pins.villageId);
+        warehouseCache.unpin(pins.villageId);
+        villageUpgradesCache.unpin(pins.villageId);
+        for (int villagerId : pins.villagerIds) {
+            villagerCache.unpin(villagerId);
+            villagerSkillsCache.unpin(villagerId);
+        }
     }
     
     // ========== 通用缓存操作 ==========
@@ -216,20 +801,86 @@ public class CacheManager {
      * 清除所有缓存
      */
     public static void clearAll() {
-        villageCache.clear();
-        villagerByIdCache.clear();
-        villagerByEntityCache.clear();
-        villageVillagersCache.clear();
+        villageCache.invalidateAll();
+        villagerCache.invalidateAll();
+        villageVillagersCache.invalidateAll();
+        warehouseCache.invalidateAll();
+        villagerSkillsCache.invalidateAll();
+        villageUpgradesCache.invalidateAll();
+        villageOwnerIndex.clear();
+        villagerEntityIndex.clear();
+        villageVillagerIndex.clear();
     }
     
     /**
      * 清理过期缓存
      */
     public static void cleanupExpired() {
-        villageCache.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        villagerByIdCache.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        villagerByEntityCache.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        villageVillagersCache.entrySet().removeIf(entry -> entry.getValue().isExpired());
+        villageCache.cleanUp();
+        villagerCache.cleanUp();
+        villageVillagersCache.cleanUp();
+        warehouseCache.cleanUp();
+        villagerSkillsCache.cleanUp();
+        villageUpgradesCache.cleanUp();
+    }
+    
+    /**
+     * 获取所有缓存区域
+     * @return 缓存区域列表
+     */
+    public static List<BoundedCache<?, ?>> getRegions() {
+        return Arrays.asList(villageCache, villagerCache, villageVillagersCache, warehouseCache,
+                villagerSkillsCache, villageUpgradesCache);
+    }
+
+    /**
+     * 清空所有缓存区域的统计数据
+     */
+    public static void resetStats() {
+        for (BoundedCache<?, ?> region : getRegions()) {
+            region.getStats().reset();
+        }
+    }
+
+    /**
+     * 以JSON格式导出各缓存区域的统计信息，便于外部监控采集
+     * @return JSON字符串
+     */
+    public static String getStatsJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"timestamp\":").append(System.currentTimeMillis())
+                .append(",\"managed_entities\":").append(managedEntities.size())
+                .append(",\"unmanaged_lookups\":").append(unmanagedLookups.sum())
+                .append(",\"regions\":[");
+        List<BoundedCache<?, ?>> regions = getRegions();
+        for (int i = 0; i < regions.size(); i++) {
+            BoundedCache<?, ?> region = regions.get(i);
+            CacheStats stats = region.getStats();
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"").append(region.getName()).append('"')
+                    .append(",\"size\":").append(region.size())
+                    .append(",\"weight\":").append(region.weightedSize())
+                    .append(",\"pinned_weight\":").append(region.pinnedWeight())
+                    .append(",\"max_weight\":").append(region.getMaxWeight())
+                    .append(",\"ttl_ms\":").append(region.getTtlMillis())
+                    .append(",\"refresh_after_ms\":").append(region.getRefreshAfterMillis())
+                    .append(",\"hits\":").append(stats.getHits())
+                    .append(",\"misses\":").append(stats.getMisses())
+                    .append(",\"hit_ratio\":").append(String.format(Locale.ROOT, "%.4f", stats.getHitRatio()))
+                    .append(",\"load_successes\":").append(stats.getLoadSuccesses())
+                    .append(",\"load_failures\":").append(stats.getLoadFailures())
+                    .append(",\"refreshes\":").append(stats.getRefreshes())
+                    .append(",\"total_load_ms\":").append(String.format(Locale.ROOT, "%.3f", stats.getTotalLoadNanos() / 1_000_000.0))
+                    .append(",\"evictions\":{")
+                    .append("\"size\":").append(stats.getRemovals(BoundedCache.RemovalCause.SIZE))
+                    .append(",\"expired\":").append(stats.getRemovals(BoundedCache.RemovalCause.EXPIRED))
+                    .append(",\"explicit\":").append(stats.getRemovals(BoundedCache.RemovalCause.EXPLICIT))
+                    .append("},\"replaced\":").append(stats.getRemovals(BoundedCache.RemovalCause.REPLACED))
+                    .append('}');
+        }
+        return json.append("]}").toString();
     }
     
     /**
@@ -237,7 +888,13 @@ public class CacheManager {
      * @return 统计信息字符串
      */
     public static String getStats() {
-        return String.format("Cache Stats - Villages: %d, Villagers(ID): %d, Villagers(Entity): %d, VillageVillagers: %d",
-            villageCache.size(), villagerByIdCache.size(), villagerByEntityCache.size(), villageVillagersCache.size());
+        return String.format("Cache Stats - Villages: %d/%d (ID index: %d), Villagers: %d/%d (Entity index: %d), VillageVillagers: %d/%d, Warehouses: %d/%d, Skills: %d/%d, Upgrades: %d/%d, Sessions: %d, Managed entities: %d (unmanaged lookups: %d)",
+            villageCache.weightedSize(), villageCache.getMaxWeight(), villageOwnerIndex.size(),
+            villagerCache.weightedSize(), villagerCache.getMaxWeight(), villagerEntityIndex.size(),
+            villageVillagersCache.weightedSize(), villageVillagersCache.getMaxWeight(),
+            warehouseCache.weightedSize(), warehouseCache.getMaxWeight(),
+            villagerSkillsCache.weightedSize(), villagerSkillsCache.getMaxWeight(),
+            villageUpgradesCache.weightedSize(), villageUpgradesCache.getMaxWeight(), sessionPins.size(),
+            managedEntities.size(), unmanagedLookups.sum());
     }
 }
@@ -28,6 +28,9 @@ import java.util.Random;
  */
 public class DecorationManager {
     
+    // 装饰写入在写回队列中共用的行键，读取装饰前据此等待提交
+    private static final String DECORATION_ROW_KEY = "decorations";
+    
     private static DecorationManager instance;
     private final VillagerPro plugin;
     private final CostHandler costHandler;
@@ -134,7 +137,9 @@ public class DecorationManager {
     public List<VillageDecoration> getVillageDecorations(int villageId) {
         List<VillageDecoration> decorations = new ArrayList<>();
         
-        try (Connection conn = DatabaseManager.getConnection();
+        // 有装饰写入排队时先等待提交，不等待其他行的写入
+        DatabaseManager.flushWrites(DECORATION_ROW_KEY);
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(
                  "SELECT * FROM decorations WHERE village_id = ? ORDER BY id")) {
             
@@ -280,7 +285,9 @@ public class DecorationManager {
      * 查找指定位置的装饰
      */
     private VillageDecoration findDecorationAt(Location location) {
-        try (Connection conn = DatabaseManager.getConnection();
+        // 有装饰写入排队时先等待提交，不等待其他行的写入
+        DatabaseManager.flushWrites(DECORATION_ROW_KEY);
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(
                  "SELECT * FROM decorations WHERE world = ? AND location_x = ? AND location_y = ? AND location_z = ?")) {
             
@@ -316,37 +323,17 @@ public class DecorationManager {
      * 保存装饰到数据库
      */
     private void saveDecorationToDatabase(int villageId, String decorationType, Material material, Location location) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                 "INSERT INTO decorations (village_id, decoration_type, item_type, amount, location_x, location_y, location_z, world) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
-            
-            stmt.setInt(1, villageId);
-            stmt.setString(2, decorationType);
-            stmt.setString(3, material.name());
-            stmt.setInt(4, 1);
-            stmt.setDouble(5, location.getX());
-            stmt.setDouble(6, location.getY());
-            stmt.setDouble(7, location.getZ());
-            stmt.setString(8, location.getWorld().getName());
-            
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().warning("保存装饰数据失败: " + e.getMessage());
-        }
+        DatabaseManager.queueTaggedAppend(DECORATION_ROW_KEY,
+                "INSERT INTO decorations (village_id, decoration_type, item_type, amount, location_x, location_y, location_z, world) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                villageId, decorationType, material.name(), 1,
+                location.getX(), location.getY(), location.getZ(), location.getWorld().getName());
     }
     
     /**
      * 从数据库删除装饰
      */
     private void deleteDecorationFromDatabase(int decorationId) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("DELETE FROM decorations WHERE id = ?")) {
-            
-            stmt.setInt(1, decorationId);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().warning("删除装饰数据失败: " + e.getMessage());
-        }
+        DatabaseManager.queueTaggedAppend(DECORATION_ROW_KEY, "DELETE FROM decorations WHERE id = ?", decorationId);
     }
     
     /**
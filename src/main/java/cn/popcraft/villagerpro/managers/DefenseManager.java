@@ -20,6 +20,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.UUID;
 
 /**
  * 防御系统管理器
@@ -98,6 +99,7 @@ public class DefenseManager {
         setupGuardProperties(guard, village);
         
         // 添加到活跃守卫列表
+        EntityRegistry.register(guard, EntityRegistry.Kind.GUARD);
         ActiveGuard activeGuard = new ActiveGuard(guard, village, System.currentTimeMillis());
         activeGuards.add(activeGuard);
         
@@ -204,23 +206,7 @@ public class DefenseManager {
      * 检查守卫状态
      */
     private void checkGuardStatus() {
-        activeGuards.removeIf(guard -> {
-            if (guard.getGuard().isDead() || !guard.getGuard().isValid()) {
-                // 守卫已死亡或失效
-                guard.getGuard().remove();
-                return true;
-            }
-            
-            // 检查守卫是否超时
-            long elapsed = System.currentTimeMillis() - guard.getSpawnTime();
-            if (elapsed > getGuardDuration() * 60 * 1000) {
-                // 守卫超时，自动消失
-                guard.getGuard().remove();
-                return true;
-            }
-            
-            return false;
-        });
+        activeGuards.removeIf(this::releaseGuardIfDone);
     }
     
     /**
@@ -230,15 +216,7 @@ public class DefenseManager {
         new BukkitRunnable() {
             @Override
             public void run() {
-                if (activeGuard.getGuard().isDead() || !activeGuard.getGuard().isValid()) {
-                    activeGuards.remove(activeGuard);
-                    this.cancel();
-                }
-                
-                // 检查超时
-                long elapsed = System.currentTimeMillis() - activeGuard.getSpawnTime();
-                if (elapsed > getGuardDuration() * 60 * 1000) {
-                    activeGuard.getGuard().remove();
+                if (!activeGuards.contains(activeGuard) || releaseGuardIfDone(activeGuard)) {
                     activeGuards.remove(activeGuard);
                     this.cancel();
                 }
@@ -246,6 +224,34 @@ public class DefenseManager {
         }.runTaskTimer(plugin, 200L, 200L); // 每10秒检查一次
     }
     
+    /**
+     * 守卫已死亡或超时时移除守卫并取消登记
+     * 守卫所在区块未加载时无法移除实体，保留到区块重新加载后再处理
+     * @return 是否已移除
+     */
+    private boolean releaseGuardIfDone(ActiveGuard guard) {
+        IronGolem golem = guard.getGuard();
+        if (golem == null) {
+            if (guard.getStatus() == EntityRegistry.Status.UNLOADED) {
+                return false;
+            }
+            // 守卫已死亡或失效
+            EntityRegistry.untrack(guard.getGuardUUID());
+            return true;
+        }
+        
+        // 检查守卫是否超时
+        long elapsed = System.currentTimeMillis() - guard.getSpawnTime();
+        if (elapsed > getGuardDuration() * 60 * 1000) {
+            // 守卫超时，自动消失
+            golem.remove();
+            EntityRegistry.untrack(guard.getGuardUUID());
+            return true;
+        }
+        
+        return false;
+    }
+    
     /**
      * 获取村庄世界时间
      */
@@ -299,20 +305,33 @@ public class DefenseManager {
     
     /**
      * 活跃守卫数据类
+     * 只保存守卫的实体UUID，实体通过实体注册表获取
      */
     public static class ActiveGuard {
-        private final IronGolem guard;
+        private final UUID guardUUID;
         private final Village village;
         private final long spawnTime;
         
         public ActiveGuard(IronGolem guard, Village village, long spawnTime) {
-            this.guard = guard;
+            this.guardUUID = guard.getUniqueId();
             this.village = village;
             this.spawnTime = spawnTime;
         }
         
+        /**
+         * 获取守卫实体
+         * @return 守卫实体，所在区块未加载或已死亡时返回null
+         */
         public IronGolem getGuard() {
-            return guard;
+            return EntityRegistry.getEntity(guardUUID, IronGolem.class);
+        }
+        
+        public EntityRegistry.Status getStatus() {
+            return EntityRegistry.getStatus(guardUUID);
+        }
+        
+        public UUID getGuardUUID() {
+            return guardUUID;
         }
         
         public Village getVillage() {
@@ -1,17 +1,13 @@
 package cn.popcraft.villagerpro.managers;
 
 import cn.popcraft.villagerpro.VillagerPro;
-import cn.popcraft.villagerpro.database.DatabaseManager;
+import cn.popcraft.villagerpro.database.ChainActivityRecorder;
 import cn.popcraft.villagerpro.models.Village;
 import cn.popcraft.villagerpro.models.VillagerData;
 import org.bukkit.Material;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.inventory.ItemStack;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -156,7 +152,7 @@ public class EcoChainManager {
         for (ItemStack item : output) {
             if (item != null && isItemMatch(item, producerStep.getProduces())) {
                 // 这个物品可以被消费
-                consumeItemInChain(villager.getVillageId(), consumerStep, item, consumedItems);
+                consumedItems.add(item);
                 
                 // 消费者产出新物品
                 ItemStack consumerOutput = createConsumerOutput(consumerStep, item.getAmount());
@@ -170,7 +166,7 @@ public class EcoChainManager {
         }
         
         // 记录协作链日志
-        recordChainActivity(villager.getVillageId(), chain.getName(), consumedItems, newOutput);
+        recordChainActivity(villager.getVillageId(), chain.getName(), consumerStep.getProfession(), consumedItems, newOutput);
         
         return newOutput;
     }
@@ -183,29 +179,6 @@ public class EcoChainManager {
                 .anyMatch(v -> v.getProfession().equals(consumerProfession));
     }
     
-    /**
-     * 消费协作链物品
-     */
-    private void consumeItemInChain(int villageId, ChainStep consumerStep, ItemStack item, List<ItemStack> consumedItems) {
-        // 记录消费到数据库
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                 "INSERT INTO chain_activities (village_id, chain_name, step_type, profession, item_type, amount, consumed_at) VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)")) {
-            
-            stmt.setInt(1, villageId);
-            stmt.setString(2, consumerStep.getChainName());
-            stmt.setString(3, "consume");
-            stmt.setString(4, consumerStep.getProfession());
-            stmt.setString(5, item.getType().name());
-            stmt.setInt(6, item.getAmount());
-            stmt.executeUpdate();
-            
-            consumedItems.add(item);
-        } catch (SQLException e) {
-            plugin.getLogger().warning("记录协作链活动失败: " + e.getMessage());
-        }
-    }
-    
     /**
      * 创建消费者产出
      */
@@ -308,37 +281,18 @@ public class EcoChainManager {
     }
     
     /**
-     * 记录协作链活动
+     * 记录协作链活动（批量异步写入）
      */
-    private void recordChainActivity(int villageId, String chainName, List<ItemStack> consumed, List<ItemStack> produced) {
-        try (Connection conn = DatabaseManager.getConnection()) {
-            // 记录消费
-            for (ItemStack item : consumed) {
-                PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO chain_activities (village_id, chain_name, step_type, item_type, amount, consumed_at) VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)");
-                stmt.setInt(1, villageId);
-                stmt.setString(2, chainName);
-                stmt.setString(3, "consume");
-                stmt.setString(4, item.getType().name());
-                stmt.setInt(5, item.getAmount());
-                stmt.executeUpdate();
-                stmt.close();
-            }
-            
-            // 记录产出
-            for (ItemStack item : produced) {
-                PreparedStatement stmt = conn.prepareStatement(
-                    "INSERT INTO chain_activities (village_id, chain_name, step_type, item_type, amount, produced_at) VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)");
-                stmt.setInt(1, villageId);
-                stmt.setString(2, chainName);
-                stmt.setString(3, "produce");
-                stmt.setString(4, item.getType().name());
-                stmt.setInt(5, item.getAmount());
-                stmt.executeUpdate();
-                stmt.close();
+    private void recordChainActivity(int villageId, String chainName, String consumerProfession,
+                                     List<ItemStack> consumed, List<ItemStack> produced) {
+        for (ItemStack item : consumed) {
+            ChainActivityRecorder.recordConsume(villageId, chainName, consumerProfession, item.getType().name(), item.getAmount());
+        }
+        for (ItemStack item : produced) {
+            if (item == null) {
+                continue;
             }
-        } catch (SQLException e) {
-            plugin.getLogger().warning("记录协作链活动失败: " + e.getMessage());
+            ChainActivityRecorder.recordProduce(villageId, chainName, null, item.getType().name(), item.getAmount());
         }
     }
     
@@ -0,0 +1,208 @@
+package cn.popcraft.villagerpro.managers;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体句柄注册表
+ * 为受管理的村民、访客和守卫保存实体的弱引用，由实体加载/卸载/死亡事件维护，
+ * 查询时只需一次哈希查找，不再每次调用 Bukkit.getEntity()。
+ * 弱引用不会阻止已卸载的实体被回收；实体所在区块未加载时查询结果为 {@link Status#UNLOADED}，
+ * 与实体已死亡或已移除（{@link Status#GONE}）区分开。
+ */
+public class EntityRegistry {
+
+    /**
+     * 实体类型
+     */
+    public enum Kind {
+        VILLAGER,
+        VISITOR,
+        GUARD
+    }
+
+    /**
+     * 实体状态
+     */
+    public enum Status {
+        // 实体已加载
+        LOADED,
+        // 实体所在区块未加载
+        UNLOADED,
+        // 实体已死亡或已被移除
+        GONE,
+        // 未登记的实体
+        UNKNOWN
+    }
+
+    private static final Map<UUID, Handle> handles = new ConcurrentHashMap<>();
+
+    /**
+     * 实体句柄
+     */
+    private static final class Handle {
+        private final Kind kind;
+        private volatile WeakReference<Entity> ref;
+        private volatile Status status;
+        // 状态是否由事件确定，未确定时在主线程中查询一次 Bukkit.getEntity()
+        private volatile boolean resolved;
+
+        private Handle(Kind kind) {
+            this.kind = kind;
+            this.status = Status.UNLOADED;
+        }
+
+        private void attach(Entity entity) {
+            ref = new WeakReference<>(entity);
+            status = Status.LOADED;
+            resolved = true;
+        }
+
+        private void detach(Status status) {
+            ref = null;
+            this.status = status;
+            resolved = true;
+        }
+    }
+
+    /**
+     * 登记已生成的实体（招募村民、生成访客或召唤守卫后调用）
+     * @param entity 实体
+     * @param kind 实体类型
+     */
+    public static void register(Entity entity, Kind kind) {
+        if (entity != null) {
+            handles.computeIfAbsent(entity.getUniqueId(), uuid -> new Handle(kind)).attach(entity);
+        }
+    }
+
+    /**
+     * 登记实体UUID，实体是否已加载在第一次查询时确定
+     * @param entityUUID 实体UUID
+     * @param kind 实体类型
+     */
+    public static void track(UUID entityUUID, Kind kind) {
+        if (entityUUID != null) {
+            handles.computeIfAbsent(entityUUID, uuid -> new Handle(kind));
+        }
+    }
+
+    /**
+     * 取消登记（村民被移除、访客离开或守卫消失时调用）
+     * @param entityUUID 实体UUID
+     */
+    public static void untrack(UUID entityUUID) {
+        if (entityUUID != null) {
+            handles.remove(entityUUID);
+        }
+    }
+
+    /**
+     * 获取已登记且已加载的实体
+     * 异步线程中只返回事件维护的句柄，不会调用 Bukkit API
+     * @param entityUUID 实体UUID
+     * @param type 实体类
+     * @return 实体，未登记、未加载、已移除或类型不符时返回null，可通过 {@link #getStatus(UUID)} 区分原因
+     */
+    public static <T extends Entity> T getEntity(UUID entityUUID, Class<T> type) {
+        Handle handle = entityUUID != null ? handles.get(entityUUID) : null;
+        if (handle == null) {
+            return null;
+        }
+        Entity entity = resolve(handle, entityUUID);
+        return type.isInstance(entity) ? type.cast(entity) : null;
+    }
+
+    /**
+     * 获取实体状态
+     * 异步线程中返回最近一次由事件或主线程查询确定的状态
+     * @param entityUUID 实体UUID
+     * @return 实体状态
+     */
+    public static Status getStatus(UUID entityUUID) {
+        Handle handle = entityUUID != null ? handles.get(entityUUID) : null;
+        if (handle == null) {
+            return Status.UNKNOWN;
+        }
+        resolve(handle, entityUUID);
+        return handle.status;
+    }
+
+    /**
+     * 实体随区块加载（由实体加载事件调用）
+     * @param entity 实体
+     */
+    public static void onLoad(Entity entity) {
+        Handle handle = handles.get(entity.getUniqueId());
+        if (handle != null) {
+            handle.attach(entity);
+        }
+    }
+
+    /**
+     * 实体随区块卸载（由实体卸载事件调用）
+     * @param entity 实体
+     */
+    public static void onUnload(Entity entity) {
+        Handle handle = handles.get(entity.getUniqueId());
+        if (handle != null && handle.status != Status.GONE) {
+            handle.detach(Status.UNLOADED);
+        }
+    }
+
+    /**
+     * 实体死亡（由实体死亡事件调用）
+     * 村民记录仍保留在数据库中，句柄保留为 GONE；访客和守卫不会再出现，直接取消登记
+     * @param entity 实体
+     */
+    public static void onDeath(Entity entity) {
+        Handle handle = handles.get(entity.getUniqueId());
+        if (handle == null) {
+            return;
+        }
+        if (handle.kind == Kind.VILLAGER) {
+            handle.detach(Status.GONE);
+        } else {
+            handles.remove(entity.getUniqueId());
+        }
+    }
+
+    /**
+     * 清空注册表（插件关闭时调用）
+     */
+    public static void clear() {
+        handles.clear();
+    }
+
+    private static Entity resolve(Handle handle, UUID entityUUID) {
+        WeakReference<Entity> ref = handle.ref;
+        Entity entity;
+        if (ref != null) {
+            entity = ref.get();
+            if (entity != null && entity.isValid()) {
+                return entity;
+            }
+            // 没有收到事件就已失效（例如被其他插件移除），在主线程中重新确认
+            handle.ref = null;
+            handle.resolved = false;
+        } else if (handle.resolved) {
+            return null;
+        }
+        if (!Bukkit.isPrimaryThread()) {
+            return null;
+        }
+        entity = Bukkit.getEntity(entityUUID);
+        if (entity != null && entity.isValid()) {
+            handle.attach(entity);
+            return entity;
+        }
+        // 不在已加载的区块中；实体死亡由死亡事件标记
+        handle.detach(handle.status == Status.GONE ? Status.GONE : Status.UNLOADED);
+        return null;
+    }
+}
@@ -50,9 +50,7 @@ public class ExperienceManager {
         // 计算当前等级升级所需经验（线性增长）
         int expNeeded = currentLevel * baseExp;
         
-        if (villager.getExperience() >= expNeeded) {
-            villager.setLevel(currentLevel + 1);
-            villager.setExperience(villager.getExperience() - expNeeded);
+        if (villager.tryLevelUp(expNeeded)) {
             VillagerManager.updateVillager(villager);
             
             // 发送升级消息给村庄拥有者
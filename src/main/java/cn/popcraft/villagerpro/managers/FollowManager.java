@@ -44,10 +44,8 @@ public class FollowManager {
         
         villagerData.setFollowMode(newMode);
         
-        // 异步更新数据库
-        Bukkit.getScheduler().runTaskAsynchronously(VillagerPro.getInstance(), () -> {
-            VillagerManager.updateVillager(villagerData);
-        });
+        // 更新数据库（由写回队列异步写入）
+        VillagerManager.updateVillager(villagerData);
         
         // 更新村民的自定义名称以显示跟随模式
         updateVillagerDisplayName(villagerData, newMode);
@@ -107,7 +105,10 @@ public class FollowManager {
             
             Villager villager = villagerData.getEntity();
             if (villager == null || villager.isDead()) {
-                stopFollowing(villagerData);
+                // 所在区块暂时未加载时保留任务，区块重新加载后继续跟随
+                if (villagerData.getEntityStatus() != EntityRegistry.Status.UNLOADED) {
+                    stopFollowing(villagerData);
+                }
                 return;
             }
             
@@ -1,6 +1,7 @@
 package cn.popcraft.villagerpro.managers;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.ChangeLog;
 import cn.popcraft.villagerpro.database.DatabaseManager;
 import cn.popcraft.villagerpro.models.Village;
 import cn.popcraft.villagerpro.models.VillagerData;
@@ -215,6 +216,8 @@ public class LegacyManager {
         } catch (SQLException e) {
             plugin.getLogger().warning("保存继承技能失败: " + e.getMessage());
         }
+        CacheManager.invalidateVillagerSkills(newVillager.getId());
+        ChangeLog.record(ChangeLog.EntityType.VILLAGER_SKILLS, newVillager.getId());
     }
     
     /**
@@ -288,26 +291,7 @@ public class LegacyManager {
      * 获取村民技能等级
      */
     private Map<String, Integer> getVillagerSkillLevels(VillagerData villager) {
-        Map<String, Integer> skillLevels = new HashMap<>();
-        
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                 "SELECT skill_id, level FROM villager_upgrades WHERE villager_id = ?")) {
-            
-            stmt.setInt(1, villager.getId());
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                String skillId = rs.getString("skill_id");
-                int level = rs.getInt("level");
-                skillLevels.put(skillId, level);
-            }
-            
-        } catch (SQLException e) {
-            plugin.getLogger().warning("获取村民技能等级失败: " + e.getMessage());
-        }
-        
-        return skillLevels;
+        return new HashMap<>(VillagerUpgradeManager.getVillagerUpgrades(villager.getId()));
     }
     
     /**
@@ -349,7 +333,7 @@ public class LegacyManager {
     public List<LegacyRecord> getVillagerLegacyHistory(int villagerId) {
         List<LegacyRecord> history = new ArrayList<>();
         
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(
                  "SELECT * FROM legacy_records WHERE original_villager_id = ? OR village_id = (SELECT village_id FROM villagers WHERE id = ?)",
                  java.sql.Statement.RETURN_GENERATED_KEYS)) {
@@ -444,10 +428,16 @@ public class LegacyManager {
      * 移除原村民
      */
     private void removeOriginalVillager(VillagerData villager) {
-        if (villager.getEntity() instanceof Villager) {
-            villager.getEntity().remove();
+        Villager entity = villager.getEntity();
+        if (entity != null) {
+            entity.remove();
         }
         deleteVillagerFromDatabase(villager.getId());
+        CacheManager.invalidateVillager(villager.getId());
+        CacheManager.invalidateVillagerSkills(villager.getId());
+        CacheManager.removeManagedEntity(villager.getEntityUUID());
+        EntityRegistry.untrack(villager.getEntityUUID());
+        ChangeLog.record(ChangeLog.EntityType.VILLAGER, villager.getId());
     }
     
     /**
@@ -465,7 +455,8 @@ public class LegacyManager {
         try {
             String sql = "DELETE FROM villagers WHERE id = ?";
             
-            try (PreparedStatement stmt = DatabaseManager.getConnection().prepareStatement(sql)) {
+            try (Connection conn = DatabaseManager.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setInt(1, villagerId);
                 stmt.executeUpdate();
             }
@@ -488,11 +479,16 @@ public class LegacyManager {
             
             // 更新数据库中的实体UUID
             String sql = "UPDATE villagers SET entity_uuid = ? WHERE id = ?";
-            try (PreparedStatement stmt = DatabaseManager.getConnection().prepareStatement(sql)) {
+            try (Connection conn = DatabaseManager.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setString(1, bukkitVillager.getUniqueId().toString());
                 stmt.setInt(2, villager.getId());
                 stmt.executeUpdate();
             }
+            CacheManager.invalidateVillager(villager.getId());
+            CacheManager.addManagedEntity(bukkitVillager.getUniqueId());
+            EntityRegistry.register(bukkitVillager, EntityRegistry.Kind.VILLAGER);
+            ChangeLog.record(ChangeLog.EntityType.VILLAGER, villager.getId());
             
             return true;
         } catch (Exception e) {
@@ -48,6 +48,16 @@ public class PersonalityManager {
             uuid -> loadPersonalityFromDatabase(villager));
     }
     
+    /**
+     * 预加载村民个性数据（已加载的数据不会被覆盖），需在主线程调用
+     * @param loaded 实体UUID -> 个性数据
+     */
+    public void preloadPersonalities(Map<UUID, VillagerPersonality> loaded) {
+        for (Map.Entry<UUID, VillagerPersonality> entry : loaded.entrySet()) {
+            personalities.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+    
     /**
      * 与村民互动
      */
@@ -127,8 +137,8 @@ public class PersonalityManager {
         // 这里可以添加更复杂的逻辑
         
         // 给村民一个短暂的保护效果
-        if (villager.getEntity() instanceof Villager) {
-            Villager bukkitVillager = (Villager) villager.getEntity();
+        Villager bukkitVillager = villager.getEntity();
+        if (bukkitVillager != null) {
             bukkitVillager.addPotionEffect(new PotionEffect(PotionEffectType.DAMAGE_RESISTANCE, 300, 1));
             return true;
         }
@@ -171,8 +181,8 @@ public class PersonalityManager {
      * 启用高忠诚度效果
      */
     private void enableHighLoyaltyEffects(VillagerData villager) {
-        if (villager.getEntity() instanceof Villager) {
-            Villager bukkitVillager = (Villager) villager.getEntity();
+        Villager bukkitVillager = villager.getEntity();
+        if (bukkitVillager != null) {
             // 村民发光效果
             bukkitVillager.addPotionEffect(new PotionEffect(PotionEffectType.GLOWING, 600, 1));
             
@@ -189,8 +199,8 @@ public class PersonalityManager {
      * 启用满情绪效果
      */
     private void enableMaxMoodEffects(VillagerData villager) {
-        if (villager.getEntity() instanceof Villager) {
-            Villager bukkitVillager = (Villager) villager.getEntity();
+        Villager bukkitVillager = villager.getEntity();
+        if (bukkitVillager != null) {
             // 村民心情愉悦，移动更快
             bukkitVillager.addPotionEffect(new PotionEffect(PotionEffectType.SPEED, 600, 1));
         }
@@ -200,8 +210,8 @@ public class PersonalityManager {
      * 启用低忠诚度警告
      */
     private void enableLowLoyaltyWarning(VillagerData villager) {
-        if (villager.getEntity() instanceof Villager) {
-            Villager bukkitVillager = (Villager) villager.getEntity();
+        Villager bukkitVillager = villager.getEntity();
+        if (bukkitVillager != null) {
             // 村民显示悲伤粒子效果
             bukkitVillager.getWorld().getPlayers().forEach(player -> {
                 if (player.getLocation().distance(bukkitVillager.getLocation()) <= 10) {
@@ -215,7 +225,7 @@ public class PersonalityManager {
      * 从数据库加载个性数据
      */
     private VillagerPersonality loadPersonalityFromDatabase(VillagerData villager) {
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(
                  "SELECT * FROM villager_personality WHERE villager_id = ?")) {
             
@@ -262,20 +272,12 @@ public class PersonalityManager {
      * 保存个性数据到数据库
      */
     private void savePersonalityToDatabase(VillagerData villager, VillagerPersonality personality) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                 "INSERT OR REPLACE INTO villager_personality (villager_id, loyalty, mood, last_interaction, interaction_count) VALUES (?, ?, ?, ?, ?)")) {
-            
-            stmt.setInt(1, personality.getVillagerId());
-            stmt.setInt(2, personality.getLoyalty());
-            stmt.setInt(3, personality.getMood());
-            stmt.setLong(4, personality.getLastInteraction());
-            stmt.setInt(5, personality.getInteractionCount());
-            
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().warning("保存村民个性数据失败: " + e.getMessage());
-        }
+        // 同一村民的多次交互只保留最新状态
+        DatabaseManager.queueWrite("villager_personality:" + personality.getVillagerId(),
+                DatabaseManager.getBackend().upsert("villager_personality", new String[]{"villager_id"},
+                        new String[]{"loyalty", "mood", "last_interaction", "interaction_count"}),
+                personality.getVillagerId(), personality.getLoyalty(), personality.getMood(),
+                personality.getLastInteraction(), personality.getInteractionCount());
     }
     
     /**
@@ -0,0 +1,288 @@
+package cn.popcraft.villagerpro.managers;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 职业产出表
+ * 启用插件和执行 /village reload 时把 villager.professions 编译成不可变的职业表并整体替换，
+ * 工作循环、离线结算和界面显示只读取编译后的表，不再按路径查询配置文件。
+ * 读取方拿到的始终是某一次编译的完整结果，重新加载不会让一个工作周期看到新旧混合的配置。
+ */
+public class ProfessionRegistry {
+
+    // 未在配置中指定时沿用的技能加成：职业 -> {产出技能, 范围技能}
+    // 与原先硬编码的产出计算一致（四种职业的产出技能都生效）；界面显示的基础产出同样按职业计入产出技能，
+    // 原先界面只对农民显示技能加成
+    private static final Map<String, String[]> DEFAULT_SKILLS = Map.of(
+            "farmer", new String[]{"efficient_harvest", "wide_range"},
+            "fisherman", new String[]{"fast_fishing", null},
+            "shepherd", new String[]{"efficient_shearing", null},
+            "miner", new String[]{"quick_mining", null}
+    );
+
+    private static volatile Table table = new Table(Collections.emptyMap(), 5, false);
+
+    /**
+     * 编译后的职业
+     */
+    public static final class Profession {
+        private final String id;
+        private final String displayName;
+        private final String[] items;
+        // 累计权重，cumulativeWeights[i] 为前 i+1 种物品的权重之和
+        private final int[] cumulativeWeights;
+        private final int baseAmount;
+        private final double probability;
+        private final int levelBonus;
+        private final String amountSkill;
+        private final int amountSkillBonus;
+        private final int baseRange;
+        private final String rangeSkill;
+        private final int rangeSkillBonus;
+
+        private Profession(String id, String displayName, String[] items, int[] cumulativeWeights, int baseAmount,
+                           double probability, int levelBonus, String amountSkill, int amountSkillBonus,
+                           int baseRange, String rangeSkill, int rangeSkillBonus) {
+            this.id = id;
+            this.displayName = displayName;
+            this.items = items;
+            this.cumulativeWeights = cumulativeWeights;
+            this.baseAmount = baseAmount;
+            this.probability = probability;
+            this.levelBonus = levelBonus;
+            this.amountSkill = amountSkill;
+            this.amountSkillBonus = amountSkillBonus;
+            this.baseRange = baseRange;
+            this.rangeSkill = rangeSkill;
+            this.rangeSkillBonus = rangeSkillBonus;
+        }
+
+        public String getId() { return id; }
+        public String getDisplayName() { return displayName; }
+        public int getBaseAmount() { return baseAmount; }
+        public double getProbability() { return probability; }
+
+        /**
+         * 是否产出物品
+         */
+        public boolean hasProduction() {
+            return items.length > 0;
+        }
+
+        /**
+         * 产出物品种类数
+         */
+        public int getItemCount() {
+            return items.length;
+        }
+
+        /**
+         * 获取产出物品
+         * @param index 序号
+         * @return 物品类型
+         */
+        public String getItem(int index) {
+            return items[index];
+        }
+
+        /**
+         * 物品被选中的概率（权重占比）
+         * @param index 序号
+         * @return 概率
+         */
+        public double getItemShare(int index) {
+            int weight = cumulativeWeights[index] - (index == 0 ? 0 : cumulativeWeights[index - 1]);
+            return (double) weight / cumulativeWeights[cumulativeWeights.length - 1];
+        }
+
+        /**
+         * 按权重随机选择一个产出物品
+         * @param random 随机数生成器
+         * @return 物品类型，不产出物品时返回null
+         */
+        public String pickItem(Random random) {
+            if (items.length == 0) {
+                return null;
+            }
+            if (items.length == 1) {
+                return items[0];
+            }
+            int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]) + 1;
+            int index = Arrays.binarySearch(cumulativeWeights, roll);
+            return items[index >= 0 ? index : -index - 1];
+        }
+
+        /**
+         * 计算产出数量：基础数量 + 等级加成 + 产出技能加成
+         * @param level 村民等级
+         * @param skills 村民技能，可为null
+         * @return 产出数量
+         */
+        public int getProductionAmount(int level, Map<String, Integer> skills) {
+            return baseAmount + getLevelBonus(level) + getSkillBonus(skills);
+        }
+
+        /**
+         * 等级加成
+         * @param level 村民等级
+         * @return 加成数量
+         */
+        public int getLevelBonus(int level) {
+            return (level - 1) * levelBonus;
+        }
+
+        /**
+         * 产出技能加成
+         * @param skills 村民技能，可为null
+         * @return 加成数量
+         */
+        public int getSkillBonus(Map<String, Integer> skills) {
+            if (amountSkill == null || skills == null) {
+                return 0;
+            }
+            return skills.getOrDefault(amountSkill, 0) * amountSkillBonus;
+        }
+
+        /**
+         * 计算工作范围：基础范围 + 范围技能加成
+         * @param skills 村民技能，可为null
+         * @return 工作范围（格）
+         */
+        public int getWorkRange(Map<String, Integer> skills) {
+            if (rangeSkill == null || skills == null) {
+                return baseRange;
+            }
+            return baseRange + skills.getOrDefault(rangeSkill, 0) * rangeSkillBonus;
+        }
+    }
+
+    /**
+     * 一次编译的完整结果，整体替换
+     */
+    private static final class Table {
+        private final Map<String, Profession> professions;
+        private final int baseRange;
+        private final boolean debug;
+
+        private Table(Map<String, Profession> professions, int baseRange, boolean debug) {
+            this.professions = professions;
+            this.baseRange = baseRange;
+            this.debug = debug;
+        }
+    }
+
+    /**
+     * 从当前配置重新编译职业表（启用插件和重新加载配置后在主线程中调用）
+     */
+    public static void reload() {
+        reload(VillagerPro.getInstance().getConfig());
+    }
+
+    static void reload(FileConfiguration config) {
+        int baseRange = config.getInt("villager.work_range", 5);
+        Map<String, Profession> professions = new HashMap<>();
+        ConfigurationSection section = config.getConfigurationSection("villager.professions");
+        if (section != null) {
+            for (String id : section.getKeys(false)) {
+                ConfigurationSection professionSection = section.getConfigurationSection(id);
+                if (professionSection != null) {
+                    professions.put(id, compile(id, professionSection, baseRange));
+                }
+            }
+        }
+        table = new Table(Collections.unmodifiableMap(professions), baseRange, config.getBoolean("debug", false));
+    }
+
+    /**
+     * 获取职业
+     * @param id 职业
+     * @return 编译后的职业，未配置时返回null
+     */
+    public static Profession get(String id) {
+        return id != null ? table.professions.get(id) : null;
+    }
+
+    /**
+     * 获取职业显示名称
+     * @param id 职业
+     * @return 显示名称，未配置时返回职业本身
+     */
+    public static String getDisplayName(String id) {
+        Profession profession = get(id);
+        return profession != null ? profession.displayName : id;
+    }
+
+    /**
+     * 计算村民的工作范围，未配置的职业使用基础范围
+     * @param id 职业
+     * @param skills 村民技能，可为null
+     * @return 工作范围（格）
+     */
+    public static int getWorkRange(String id, Map<String, Integer> skills) {
+        Table current = table;
+        Profession profession = id != null ? current.professions.get(id) : null;
+        return profession != null ? profession.getWorkRange(skills) : current.baseRange;
+    }
+
+    /**
+     * 是否开启调试输出（随职业表一起重新加载）
+     * @return 是否开启
+     */
+    public static boolean isDebug() {
+        return table.debug;
+    }
+
+    private static Profession compile(String id, ConfigurationSection section, int baseRange) {
+        // 物品可写为 "WHEAT" 或 "WHEAT:3"，冒号后为选中权重，默认为1
+        List<String> entries = section.getStringList("work_items");
+        List<String> items = new ArrayList<>();
+        int[] cumulativeWeights = new int[entries.size()];
+        int total = 0;
+        for (String entry : entries) {
+            String item = entry;
+            int weight = 1;
+            int separator = entry.indexOf(':');
+            if (separator >= 0) {
+                item = entry.substring(0, separator).trim();
+                try {
+                    weight = Integer.parseInt(entry.substring(separator + 1).trim());
+                } catch (NumberFormatException e) {
+                    weight = 0;
+                }
+                if (weight <= 0) {
+                    VillagerPro.getInstance().getLogger().warning("职业 " + id + " 的产出物品权重无效：" + entry);
+                    continue;
+                }
+            }
+            total += weight;
+            cumulativeWeights[items.size()] = total;
+            items.add(item);
+        }
+
+        String[] defaults = DEFAULT_SKILLS.getOrDefault(id, new String[2]);
+        return new Profession(
+                id,
+                section.getString("name", id),
+                items.toArray(new String[0]),
+                Arrays.copyOf(cumulativeWeights, items.size()),
+                section.getInt("base_amount", 1),
+                Math.max(0.0, Math.min(1.0, section.getDouble("probability", 1.0))),
+                section.getInt("level_bonus", 1),
+                section.getString("amount_skill", defaults[0]),
+                section.getInt("amount_skill_bonus", 1),
+                baseRange,
+                section.getString("range_skill", defaults[1]),
+                section.getInt("range_skill_bonus", 2)
+        );
+    }
+}
@@ -1,8 +1,10 @@
 package cn.popcraft.villagerpro.managers;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.ChangeLog;
 import cn.popcraft.villagerpro.database.DatabaseManager;
 import cn.popcraft.villagerpro.models.Village;
+import cn.popcraft.villagerpro.models.VillageSnapshot;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -19,26 +21,42 @@ public class VillageManager {
      * @return 村庄列表
      */
     public static List<Village> getAllVillages() {
+        List<Village> villages = queryAllVillages();
+        
+        // 有村庄的更新仍在写回队列中时，等待这些行提交后重新读取；不等待其他行的写入
+        List<String> keys = new ArrayList<>();
+        for (Village village : villages) {
+            keys.add(rowKey(village.getId()));
+        }
+        if (DatabaseManager.flushWrites(keys)) {
+            villages = queryAllVillages();
+        }
+        
+        // 缓存村庄数据
+        for (Village village : villages) {
+            CacheManager.cacheVillage(village.getOwnerUUID(), village);
+        }
+        return villages;
+    }
+    
+    private static List<Village> queryAllVillages() {
         List<Village> villages = new ArrayList<>();
         
-        try (Connection connection = DatabaseManager.getConnection();
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT id, owner_uuid, name, level, experience, prosperity FROM villages")) {
             
             ResultSet resultSet = statement.executeQuery();
             
             while (resultSet.next()) {
-                Village village = new Village(
+                villages.add(new Village(
                         resultSet.getInt("id"),
                         UUID.fromString(resultSet.getString("owner_uuid")),
                         resultSet.getString("name"),
                         resultSet.getInt("level"),
                         resultSet.getInt("experience"),
                         resultSet.getInt("prosperity")
-                );
-                villages.add(village);
-                // 缓存村庄数据
-                CacheManager.cacheVillage(village.getOwnerUUID(), village);
+                ));
             }
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败: " + e.getMessage());
@@ -53,13 +71,32 @@ public class VillageManager {
      * @return 村庄对象，如果不存在则返回null
      */
     public static Village getVillage(UUID ownerUUID) {
-        // 先检查缓存
-        Village cachedVillage = CacheManager.getCachedVillage(ownerUUID);
-        if (cachedVillage != null) {
-            return cachedVillage;
+        return CacheManager.getVillage(ownerUUID, VillageManager::loadVillage);
+    }
+    
+    /**
+     * 根据ID获取村庄
+     * @param id 村庄ID
+     * @return 村庄对象，如果不存在则返回null
+     */
+    public static Village getVillageById(int id) {
+        return CacheManager.getVillageById(id, VillageManager::loadVillageById);
+    }
+    
+    /**
+     * 从数据库加载玩家的村庄（不经过缓存）
+     * 村庄ID在读取后才知道，该行有排队中的更新时等待提交后重新读取
+     */
+    private static Village loadVillage(UUID ownerUUID) {
+        Village village = queryVillage(ownerUUID);
+        if (village != null && DatabaseManager.flushWrites(rowKey(village.getId()))) {
+            village = queryVillage(ownerUUID);
         }
-        
-        try (Connection connection = DatabaseManager.getConnection();
+        return village;
+    }
+    
+    private static Village queryVillage(UUID ownerUUID) {
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT id, owner_uuid, name, level, experience, prosperity FROM villages WHERE owner_uuid = ?")) {
             
@@ -67,7 +104,7 @@ public class VillageManager {
             ResultSet resultSet = statement.executeQuery();
             
             if (resultSet.next()) {
-                Village village = new Village(
+                return new Village(
                         resultSet.getInt("id"),
                         UUID.fromString(resultSet.getString("owner_uuid")),
                         resultSet.getString("name"),
@@ -75,9 +112,6 @@ public class VillageManager {
                         resultSet.getInt("experience"),
                         resultSet.getInt("prosperity")
                 );
-                // 缓存村庄数据
-                CacheManager.cacheVillage(ownerUUID, village);
-                return village;
             }
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败: " + e.getMessage());
@@ -87,12 +121,12 @@ public class VillageManager {
     }
     
     /**
-     * 根据ID获取村庄
-     * @param id 村庄ID
-     * @return 村庄对象，如果不存在则返回null
+     * 从数据库加载指定ID的村庄（不经过缓存）
      */
-    public static Village getVillageById(int id) {
-        try (Connection connection = DatabaseManager.getConnection();
+    private static Village loadVillageById(int id) {
+        // 该行的更新仍在写回队列中时先等待提交，避免读到旧数据
+        DatabaseManager.flushWrites(rowKey(id));
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT id, owner_uuid, name, level, experience, prosperity FROM villages WHERE id = ?")) {
             
@@ -100,7 +134,7 @@ public class VillageManager {
             ResultSet resultSet = statement.executeQuery();
             
             if (resultSet.next()) {
-                Village village = new Village(
+                return new Village(
                         resultSet.getInt("id"),
                         UUID.fromString(resultSet.getString("owner_uuid")),
                         resultSet.getString("name"),
@@ -108,9 +142,6 @@ public class VillageManager {
                         resultSet.getInt("experience"),
                         resultSet.getInt("prosperity")
                 );
-                // 缓存村庄数据
-                CacheManager.cacheVillage(village.getOwnerUUID(), village);
-                return village;
             }
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败: " + e.getMessage());
@@ -159,53 +190,37 @@ public class VillageManager {
      * @return 是否升级成功
      */
     public static boolean upgradeVillage(Village village) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "UPDATE villages SET level = ?, experience = ?, prosperity = ? WHERE id = ?")) {
-            
-            statement.setInt(1, village.getLevel());
-            statement.setInt(2, village.getExperience());
-            statement.setInt(3, village.getProsperity());
-            statement.setInt(4, village.getId());
-            
-            boolean success = statement.executeUpdate() > 0;
-            if (success) {
-                // 更新缓存
-                CacheManager.cacheVillage(village.getOwnerUUID(), village);
-            }
-            return success;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败: " + e.getMessage());
-            return false;
-        }
+        return updateVillage(village);
     }
     
     /**
      * 更新村庄信息
+     * 先更新缓存，数据库写入由写回队列异步完成
      * @param village 村庄对象
      * @return 是否更新成功
      */
     public static boolean updateVillage(Village village) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "UPDATE villages SET name = ?, level = ?, experience = ?, prosperity = ? WHERE id = ?")) {
-            
-            statement.setString(1, village.getName());
-            statement.setInt(2, village.getLevel());
-            statement.setInt(3, village.getExperience());
-            statement.setInt(4, village.getProsperity());
-            statement.setInt(5, village.getId());
-            
-            boolean success = statement.executeUpdate() > 0;
-            if (success) {
-                // 更新缓存
-                CacheManager.cacheVillage(village.getOwnerUUID(), village);
-            }
-            return success;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败: " + e.getMessage());
+        if (village == null) {
             return false;
         }
+        
+        // 更新缓存
+        CacheManager.cacheVillage(village.getOwnerUUID(), village);
+        
+        // 从同一个快照取值，避免写入其他线程修改到一半的状态
+        VillageSnapshot snapshot = village.snapshot();
+        DatabaseManager.queueWrite(rowKey(snapshot.getId()),
+                "UPDATE villages SET name = ?, level = ?, experience = ?, prosperity = ? WHERE id = ?",
+                snapshot.getName(), snapshot.getLevel(), snapshot.getExperience(), snapshot.getProsperity(), snapshot.getId());
+        ChangeLog.record(ChangeLog.EntityType.VILLAGE, snapshot.getId());
+        return true;
+    }
+    
+    /**
+     * 村庄行在写回队列中的行键
+     */
+    private static String rowKey(int villageId) {
+        return "villages:" + villageId;
     }
     
     /**
@@ -1,6 +1,7 @@
 package cn.popcraft.villagerpro.managers;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.ChangeLog;
 import cn.popcraft.villagerpro.database.DatabaseManager;
 import cn.popcraft.villagerpro.economy.CostEntry;
 import cn.popcraft.villagerpro.economy.CostHandler;
@@ -22,14 +23,23 @@ import java.util.Random;
 public class VillageUpgradeManager {
     
     /**
-     * 获取村庄已有的升级
+     * 获取村庄已有的升级（优先从缓存读取）
      * @param villageId 村庄ID
-     * @return 升级映射（升级ID -> 等级）
+     * @return 升级映射（升级ID -> 等级），只读
      */
     public static Map<String, Integer> getVillageUpgrades(int villageId) {
+        Map<String, Integer> upgrades = CacheManager.getVillageUpgrades(villageId, VillageUpgradeManager::loadVillageUpgrades);
+        return upgrades != null ? upgrades : new HashMap<>();
+    }
+    
+    /**
+     * 从数据库加载村庄升级
+     * @return 升级映射，查询失败时返回null（不写入缓存）
+     */
+    private static Map<String, Integer> loadVillageUpgrades(int villageId) {
         Map<String, Integer> upgrades = new HashMap<>();
         
-        try (Connection connection = DatabaseManager.getConnection();
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT upgrade_id, level FROM village_upgrades WHERE village_id = ?")) {
             
@@ -41,6 +51,7 @@ public class VillageUpgradeManager {
             }
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
+            return null;
         }
         
         return upgrades;
@@ -53,22 +64,7 @@ public class VillageUpgradeManager {
      * @return 升级等级
      */
     public static int getVillageUpgradeLevel(int villageId, String upgradeId) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "SELECT level FROM village_upgrades WHERE village_id = ? AND upgrade_id = ?")) {
-            
-            statement.setInt(1, villageId);
-            statement.setString(2, upgradeId);
-            ResultSet resultSet = statement.executeQuery();
-            
-            if (resultSet.next()) {
-                return resultSet.getInt("level");
-            }
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
-        }
-        
-        return 0;
+        return getVillageUpgrades(villageId).getOrDefault(upgradeId, 0);
     }
     
     /**
@@ -78,28 +74,65 @@ public class VillageUpgradeManager {
      * @return 是否应用成功
      */
     public static boolean applyVillageUpgrade(Village village, String upgradeId) {
-        int currentLevel = getVillageUpgradeLevel(village.getId(), upgradeId);
-        int maxLevel = cn.popcraft.villagerpro.VillagerPro.getInstance().getConfig()
-                .getInt("village_upgrades.available_upgrades." + upgradeId + ".max_level", 1);
+        int maxLevel = getUpgradeMaxLevel(upgradeId);
         
-        // 检查是否已达最高等级
-        if (currentLevel >= maxLevel) {
+        int newLevel;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            newLevel = incrementLevel(connection, village.getId(), upgradeId, maxLevel);
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
             return false;
         }
         
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "INSERT OR REPLACE INTO village_upgrades (village_id, upgrade_id, level) VALUES (?, ?, ?)")) {
-            
-            statement.setInt(1, village.getId());
-            statement.setString(2, upgradeId);
-            statement.setInt(3, currentLevel + 1);
-            
-            return statement.executeUpdate() > 0;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
+        // 已达最高等级
+        if (newLevel <= 0) {
             return false;
         }
+        
+        // 写入成功后同步更新缓存
+        CacheManager.updateVillageUpgrade(village.getId(), upgradeId, newLevel);
+        ChangeLog.record(ChangeLog.EntityType.VILLAGE_UPGRADES, village.getId());
+        return true;
+    }
+    
+    /**
+     * 在数据库中把村庄升级等级加一，已达最高等级时不修改
+     * 等级在同一条语句中判断和累加，并发的两次升级不会写入同一个等级
+     * @return 升级后的等级，已达最高等级时返回0
+     */
+    private static int incrementLevel(Connection connection, int villageId, String upgradeId, int maxLevel) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE village_upgrades SET level = level + 1 WHERE village_id = ? AND upgrade_id = ? AND level < ?")) {
+            statement.setInt(1, villageId);
+            statement.setString(2, upgradeId);
+            statement.setInt(3, maxLevel);
+            if (statement.executeUpdate() > 0) {
+                return readLevel(connection, villageId, upgradeId);
+            }
+        }
+        
+        // 记录已存在说明已达最高等级；不存在时插入1级，并发插入会因主键冲突失败
+        if (maxLevel < 1 || readLevel(connection, villageId, upgradeId) > 0) {
+            return 0;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO village_upgrades (village_id, upgrade_id, level) VALUES (?, ?, 1)")) {
+            statement.setInt(1, villageId);
+            statement.setString(2, upgradeId);
+            statement.executeUpdate();
+            return 1;
+        }
+    }
+    
+    private static int readLevel(Connection connection, int villageId, String upgradeId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT level FROM village_upgrades WHERE village_id = ? AND upgrade_id = ?")) {
+            statement.setInt(1, villageId);
+            statement.setString(2, upgradeId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
     }
     
     /**
@@ -118,9 +151,10 @@ public class VillageUpgradeManager {
             allUpgrades.addAll(section.getKeys(false));
         }
         
-        // 筛选出未达最高等级的升级
+        // 筛选出未达最高等级的升级（所有选项共用一次缓存读取）
+        Map<String, Integer> upgrades = getVillageUpgrades(village.getId());
         for (String upgradeId : allUpgrades) {
-            int currentLevel = getVillageUpgradeLevel(village.getId(), upgradeId);
+            int currentLevel = upgrades.getOrDefault(upgradeId, 0);
             int maxLevel = getUpgradeMaxLevel(upgradeId);
             if (currentLevel < maxLevel) {
                 availableUpgrades.add(upgradeId);
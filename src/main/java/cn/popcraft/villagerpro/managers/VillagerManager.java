@@ -1,11 +1,14 @@
 package cn.popcraft.villagerpro.managers;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.ChangeLog;
 import cn.popcraft.villagerpro.database.DatabaseManager;
+import cn.popcraft.villagerpro.database.WriteBehindQueue;
 import cn.popcraft.villagerpro.economy.CostEntry;
 import cn.popcraft.villagerpro.economy.CostHandler;
 import cn.popcraft.villagerpro.models.Village;
 import cn.popcraft.villagerpro.models.VillagerData;
+import cn.popcraft.villagerpro.models.VillagerSnapshot;
 import org.bukkit.entity.Player;
 
 import java.sql.Connection;
@@ -13,6 +16,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -25,56 +29,80 @@ public class VillagerManager {
      * @return 村民列表
      */
     public static List<VillagerData> getVillagers(int villageId) {
-        // 先检查缓存
-        List<VillagerData> cachedVillagers = CacheManager.getCachedVillageVillagers(villageId);
-        if (cachedVillagers != null) {
-            return cachedVillagers;
+        List<VillagerData> villagers = CacheManager.getVillageVillagers(villageId, VillagerManager::loadVillagers);
+        return villagers != null ? villagers : new ArrayList<>();
+    }
+    
+    /**
+     * 根据实体UUID获取村民数据
+     * @param entityUUID 实体UUID
+     * @return 村民数据，如果不存在则返回null
+     */
+    public static VillagerData getVillager(UUID entityUUID) {
+        return CacheManager.getVillagerByEntity(entityUUID, VillagerManager::loadVillager);
+    }
+    
+    /**
+     * 根据ID获取村民数据
+     * @param id 村民ID
+     * @return 村民数据，如果不存在则返回null
+     */
+    public static VillagerData getVillagerById(int id) {
+        return CacheManager.getVillagerById(id, VillagerManager::loadVillagerById);
+    }
+    
+    /**
+     * 从数据库加载村庄的所有村民（不经过缓存）
+     * 其中有村民的更新仍在写回队列中时，等待这些行提交后重新读取；不等待其他行的写入
+     * @return 村民列表，查询失败时返回null
+     */
+    private static List<VillagerData> loadVillagers(int villageId) {
+        List<VillagerData> villagers = queryVillagers(villageId);
+        if (villagers != null) {
+            List<String> keys = new ArrayList<>();
+            for (VillagerData villager : villagers) {
+                keys.add(rowKey(villager.getId()));
+            }
+            if (DatabaseManager.flushWrites(keys)) {
+                villagers = queryVillagers(villageId);
+            }
         }
-        
-        List<VillagerData> villagers = new ArrayList<>();
-        
-        try (Connection connection = DatabaseManager.getConnection();
+        return villagers;
+    }
+    
+    private static List<VillagerData> queryVillagers(int villageId) {
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT id, village_id, entity_uuid, profession, level, experience, follow_mode FROM villagers WHERE village_id = ?")) {
             
             statement.setInt(1, villageId);
             ResultSet resultSet = statement.executeQuery();
             
+            List<VillagerData> villagers = new ArrayList<>();
             while (resultSet.next()) {
-                VillagerData villager = new VillagerData(
-                        resultSet.getInt("id"),
-                        resultSet.getInt("village_id"),
-                        UUID.fromString(resultSet.getString("entity_uuid")),
-                        resultSet.getString("profession"),
-                        resultSet.getInt("level"),
-                        resultSet.getInt("experience"),
-                        resultSet.getString("follow_mode")
-                );
-                villagers.add(villager);
+                villagers.add(readVillager(resultSet));
             }
-            
-            // 缓存村民列表
-            CacheManager.cacheVillageVillagers(villageId, villagers);
+            return villagers;
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
+            return null;
         }
-        
-        return villagers;
     }
     
     /**
-     * 根据实体UUID获取村民数据
-     * @param entityUUID 实体UUID
-     * @return 村民数据，如果不存在则返回null
+     * 从数据库加载指定实体的村民（不经过缓存）
+     * 村民ID在读取后才知道，该行有排队中的更新时等待提交后重新读取
      */
-    public static VillagerData getVillager(UUID entityUUID) {
-        // 先检查缓存
-        VillagerData cachedVillager = CacheManager.getCachedVillagerByEntity(entityUUID);
-        if (cachedVillager != null) {
-            return cachedVillager;
+    private static VillagerData loadVillager(UUID entityUUID) {
+        VillagerData villager = queryVillager(entityUUID);
+        if (villager != null && DatabaseManager.flushWrites(rowKey(villager.getId()))) {
+            villager = queryVillager(entityUUID);
         }
-        
-        try (Connection connection = DatabaseManager.getConnection();
+        return villager;
+    }
+    
+    private static VillagerData queryVillager(UUID entityUUID) {
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT id, village_id, entity_uuid, profession, level, experience, follow_mode FROM villagers WHERE entity_uuid = ?")) {
             
@@ -82,18 +110,7 @@ public class VillagerManager {
             ResultSet resultSet = statement.executeQuery();
             
             if (resultSet.next()) {
-                VillagerData villager = new VillagerData(
-                        resultSet.getInt("id"),
-                        resultSet.getInt("village_id"),
-                        UUID.fromString(resultSet.getString("entity_uuid")),
-                        resultSet.getString("profession"),
-                        resultSet.getInt("level"),
-                        resultSet.getInt("experience"),
-                        resultSet.getString("follow_mode")
-                );
-                // 缓存村民数据
-                CacheManager.cacheVillager(villager);
-                return villager;
+                return readVillager(resultSet);
             }
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
@@ -103,18 +120,12 @@ public class VillagerManager {
     }
     
     /**
-     * 根据ID获取村民数据
-     * @param id 村民ID
-     * @return 村民数据，如果不存在则返回null
+     * 从数据库加载指定ID的村民（不经过缓存）
      */
-    public static VillagerData getVillagerById(int id) {
-        // 先检查缓存
-        VillagerData cachedVillager = CacheManager.getCachedVillagerById(id);
-        if (cachedVillager != null) {
-            return cachedVillager;
-        }
-        
-        try (Connection connection = DatabaseManager.getConnection();
+    private static VillagerData loadVillagerById(int id) {
+        // 该行的更新仍在写回队列中时先等待提交，避免读到旧数据
+        DatabaseManager.flushWrites(rowKey(id));
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT id, village_id, entity_uuid, profession, level, experience, follow_mode FROM villagers WHERE id = ?")) {
             
@@ -122,18 +133,7 @@ public class VillagerManager {
             ResultSet resultSet = statement.executeQuery();
             
             if (resultSet.next()) {
-                VillagerData villager = new VillagerData(
-                        resultSet.getInt("id"),
-                        resultSet.getInt("village_id"),
-                        UUID.fromString(resultSet.getString("entity_uuid")),
-                        resultSet.getString("profession"),
-                        resultSet.getInt("level"),
-                        resultSet.getInt("experience"),
-                        resultSet.getString("follow_mode")
-                );
-                // 缓存村民数据
-                CacheManager.cacheVillager(villager);
-                return villager;
+                return readVillager(resultSet);
             }
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
@@ -142,6 +142,70 @@ public class VillagerManager {
         return null;
     }
     
+    /**
+     * 从数据库重新读取已缓存村民的等级和经验并原地更新（其他服务器结算工作周期后调用）
+     * 不清除缓存条目和（可能已被会话固定的）村庄村民列表；先等待这些村民排队中的写操作提交
+     * @param connection 读连接
+     * @param villagers 已缓存的村民
+     * @throws SQLException SQL异常
+     */
+    public static void reloadProgress(Connection connection, List<VillagerData> villagers) throws SQLException {
+        if (villagers.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<VillagerData>> byId = new HashMap<>();
+        List<String> keys = new ArrayList<>();
+        StringBuilder placeholders = new StringBuilder();
+        for (VillagerData villager : villagers) {
+            List<VillagerData> copies = byId.computeIfAbsent(villager.getId(), id -> new ArrayList<>());
+            if (copies.isEmpty()) {
+                keys.add(rowKey(villager.getId()));
+                placeholders.append(placeholders.length() == 0 ? "?" : ", ?");
+            }
+            copies.add(villager);
+        }
+        DatabaseManager.flushWrites(keys);
+        
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, level, experience FROM villagers WHERE id IN (" + placeholders + ")")) {
+            int index = 1;
+            for (int villagerId : byId.keySet()) {
+                statement.setInt(index++, villagerId);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    for (VillagerData villager : byId.get(resultSet.getInt("id"))) {
+                        villager.setProgress(resultSet.getInt("level"), resultSet.getInt("experience"));
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * 村民行在写回队列中的行键
+     */
+    private static String rowKey(int villagerId) {
+        return "villagers:" + villagerId;
+    }
+    
+    /**
+     * 读取村民数据，并在实体注册表中登记村民实体（已登记的不变）
+     */
+    private static VillagerData readVillager(ResultSet resultSet) throws SQLException {
+        VillagerData villager = new VillagerData(
+                resultSet.getInt("id"),
+                resultSet.getInt("village_id"),
+                UUID.fromString(resultSet.getString("entity_uuid")),
+                resultSet.getString("profession"),
+                resultSet.getInt("level"),
+                resultSet.getInt("experience"),
+                resultSet.getString("follow_mode")
+        );
+        EntityRegistry.track(villager.getEntityUUID(), EntityRegistry.Kind.VILLAGER);
+        return villager;
+    }
+    
     /**
      * 招募村民
      * @param player 玩家
@@ -172,12 +236,23 @@ public class VillagerManager {
         }
         
         // 执行招募
+        return insertVillager(village.getId(), entityUUID, profession);
+    }
+    
+    /**
+     * 保存新招募的村民（不检查上限、不扣费）
+     * @param villageId 村庄ID
+     * @param entityUUID 实体UUID
+     * @param profession 职业
+     * @return 村民数据，保存失败时返回null
+     */
+    public static VillagerData insertVillager(int villageId, UUID entityUUID, String profession) {
         try (Connection connection = DatabaseManager.getConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "INSERT INTO villagers (village_id, entity_uuid, profession, level, experience, follow_mode) VALUES (?, ?, ?, ?, ?, ?)",
                      PreparedStatement.RETURN_GENERATED_KEYS)) {
             
-            statement.setInt(1, village.getId());
+            statement.setInt(1, villageId);
             statement.setString(2, entityUUID.toString());
             statement.setString(3, profession);
             statement.setInt(4, 1); // 默认等级
@@ -190,11 +265,15 @@ public class VillagerManager {
                 ResultSet generatedKeys = statement.getGeneratedKeys();
                 if (generatedKeys.next()) {
                     int id = generatedKeys.getInt(1);
-                    VillagerData villager = new VillagerData(id, village.getId(), entityUUID, profession, 1, 0, "FREE");
+                    VillagerData villager = new VillagerData(id, villageId, entityUUID, profession, 1, 0, "FREE");
                     // 缓存新招募的村民
                     CacheManager.cacheVillager(villager);
+                    CacheManager.pinSessionVillager(villageId, id);
+                    CacheManager.addManagedEntity(entityUUID);
+                    EntityRegistry.track(entityUUID, EntityRegistry.Kind.VILLAGER);
                     // 清除村庄村民列表缓存
-                    CacheManager.invalidateVillageVillagers(village.getId());
+                    CacheManager.invalidateVillageVillagers(villageId);
+                    ChangeLog.record(ChangeLog.EntityType.VILLAGER, id);
                     return villager;
                 }
             }
@@ -225,6 +304,12 @@ public class VillagerManager {
             if (success) {
                 // 清除缓存
                 CacheManager.invalidateVillager(villagerId);
+                CacheManager.invalidateVillagerSkills(villagerId);
+                ChangeLog.record(ChangeLog.EntityType.VILLAGER, villagerId);
+                if (villager != null) {
+                    CacheManager.removeManagedEntity(villager.getEntityUUID());
+                    EntityRegistry.untrack(villager.getEntityUUID());
+                }
                 if (villageId > 0) {
                     CacheManager.invalidateVillageVillagers(villageId);
                 }
@@ -243,56 +328,91 @@ public class VillagerManager {
      * @return 是否升级成功
      */
     public static boolean upgradeVillager(VillagerData villager) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "UPDATE villagers SET level = ?, experience = ?, profession = ?, follow_mode = ? WHERE id = ?")) {
-            
-            statement.setInt(1, villager.getLevel());
-            statement.setInt(2, villager.getExperience());
-            statement.setString(3, villager.getProfession());
-            statement.setString(4, villager.getFollowMode());
-            statement.setInt(5, villager.getId());
-            
-            boolean success = statement.executeUpdate() > 0;
-            if (success) {
-                // 更新缓存
-                CacheManager.cacheVillager(villager);
-                CacheManager.invalidateVillageVillagers(villager.getVillageId());
-            }
-            return success;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
-            return false;
-        }
+        return updateVillager(villager);
     }
     
     /**
      * 更新村民信息
+     * 先更新缓存，数据库写入由写回队列异步完成
      * @param villager 村民数据
      * @return 是否更新成功
      */
     public static boolean updateVillager(VillagerData villager) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "UPDATE villagers SET level = ?, experience = ?, profession = ?, follow_mode = ? WHERE id = ?")) {
-            
-            statement.setInt(1, villager.getLevel());
-            statement.setInt(2, villager.getExperience());
-            statement.setString(3, villager.getProfession());
-            statement.setString(4, villager.getFollowMode());
-            statement.setInt(5, villager.getId());
-            
-            boolean success = statement.executeUpdate() > 0;
-            if (success) {
-                // 更新缓存
-                CacheManager.cacheVillager(villager);
-                CacheManager.invalidateVillageVillagers(villager.getVillageId());
-            }
-            return success;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
+        if (villager == null) {
             return false;
         }
+        
+        DatabaseManager.queueWrites(List.of(prepareUpdate(villager)));
+        ChangeLog.record(ChangeLog.EntityType.VILLAGER, villager.getId());
+        return true;
+    }
+    
+    /**
+     * 生成更新村民信息的写操作，并更新缓存
+     * 调用者负责将写操作提交到写回队列，并在其后记录村民变更
+     * @param villager 村民数据
+     * @return 写操作（同一村民的多次更新按行键合并）
+     */
+    public static WriteBehindQueue.Write prepareUpdate(VillagerData villager) {
+        // 更新缓存（村庄村民列表中的村民原地替换，列表在招募、移除村民时才清除）
+        CacheManager.cacheVillager(villager);
+        CacheManager.updateVillageVillager(villager);
+        
+        // 从同一个快照取值，避免写入其他线程修改到一半的状态
+        VillagerSnapshot snapshot = villager.snapshot();
+        return new WriteBehindQueue.Write(rowKey(snapshot.getId()),
+                "UPDATE villagers SET level = ?, experience = ?, profession = ?, follow_mode = ? WHERE id = ?",
+                snapshot.getLevel(), snapshot.getExperience(), snapshot.getProfession(), snapshot.getFollowMode(), snapshot.getId());
+    }
+    
+    /**
+     * 生成批量更新村民等级和经验的写操作（一条多行更新语句），并更新缓存
+     * 调用者负责将写操作提交到写回队列，并在其后记录村民变更
+     * @param villagers 同一村庄中需要写入的村民
+     * @param lastWorkAt 同时写入的最后工作时间，为null时不写入
+     * @return 写操作（不合并，可通过其中任意村民的行键等待），没有村民时返回null
+     */
+    public static WriteBehindQueue.Write prepareExperienceUpdate(List<VillagerData> villagers, Long lastWorkAt) {
+        if (villagers.isEmpty()) {
+            return null;
+        }
+        
+        // 从同一个快照取值，避免写入其他线程修改到一半的状态
+        List<VillagerSnapshot> snapshots = new ArrayList<>(villagers.size());
+        for (VillagerData villager : villagers) {
+            CacheManager.cacheVillager(villager);
+            CacheManager.updateVillageVillager(villager);
+            snapshots.add(villager.snapshot());
+        }
+        
+        StringBuilder level = new StringBuilder("level = CASE id");
+        StringBuilder experience = new StringBuilder("experience = CASE id");
+        StringBuilder ids = new StringBuilder();
+        List<Object> params = new ArrayList<>(snapshots.size() * 5 + 1);
+        List<String> keys = new ArrayList<>(snapshots.size());
+        for (VillagerSnapshot snapshot : snapshots) {
+            level.append(" WHEN ? THEN ?");
+            params.add(snapshot.getId());
+            params.add(snapshot.getLevel());
+        }
+        for (VillagerSnapshot snapshot : snapshots) {
+            experience.append(" WHEN ? THEN ?");
+            params.add(snapshot.getId());
+            params.add(snapshot.getExperience());
+        }
+        StringBuilder sql = new StringBuilder("UPDATE villagers SET ")
+                .append(level).append(" END, ").append(experience).append(" END");
+        if (lastWorkAt != null) {
+            sql.append(", last_work_at = ?");
+            params.add(lastWorkAt);
+        }
+        for (VillagerSnapshot snapshot : snapshots) {
+            ids.append(ids.length() == 0 ? "?" : ", ?");
+            params.add(snapshot.getId());
+            keys.add(rowKey(snapshot.getId()));
+        }
+        sql.append(" WHERE id IN (").append(ids).append(")");
+        return WriteBehindQueue.Write.multiRow(keys, sql.toString(), params.toArray());
     }
     
     /**
@@ -328,8 +448,7 @@ public class VillagerManager {
      * @return 显示名称
      */
     public static String getProfessionDisplayName(String profession) {
-        return cn.popcraft.villagerpro.VillagerPro.getInstance().getConfig()
-                .getString("villager.professions." + profession + ".name", profession);
+        return ProfessionRegistry.getDisplayName(profession);
     }
     
     /**
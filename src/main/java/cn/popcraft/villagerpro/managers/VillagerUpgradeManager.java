@@ -1,6 +1,7 @@
 package cn.popcraft.villagerpro.managers;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.ChangeLog;
 import cn.popcraft.villagerpro.database.DatabaseManager;
 import cn.popcraft.villagerpro.economy.CostEntry;
 import cn.popcraft.villagerpro.economy.CostHandler;
@@ -19,14 +20,23 @@ import java.util.Map;
 public class VillagerUpgradeManager {
     
     /**
-     * 获取村民已有的技能升级
+     * 获取村民已有的技能升级（优先从缓存读取）
      * @param villagerId 村民ID
-     * @return 技能映射（技能ID -> 等级）
+     * @return 技能映射（技能ID -> 等级），只读
      */
     public static Map<String, Integer> getVillagerUpgrades(int villagerId) {
+        Map<String, Integer> upgrades = CacheManager.getVillagerSkills(villagerId, VillagerUpgradeManager::loadVillagerUpgrades);
+        return upgrades != null ? upgrades : new HashMap<>();
+    }
+    
+    /**
+     * 从数据库加载村民技能
+     * @return 技能映射，查询失败时返回null（不写入缓存）
+     */
+    private static Map<String, Integer> loadVillagerUpgrades(int villagerId) {
         Map<String, Integer> upgrades = new HashMap<>();
         
-        try (Connection connection = DatabaseManager.getConnection();
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
                      "SELECT skill_id, level FROM villager_upgrades WHERE villager_id = ?")) {
             
@@ -38,6 +48,7 @@ public class VillagerUpgradeManager {
             }
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
+            return null;
         }
         
         return upgrades;
@@ -50,22 +61,7 @@ public class VillagerUpgradeManager {
      * @return 技能等级
      */
     public static int getVillagerSkillLevel(int villagerId, String skillId) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "SELECT level FROM villager_upgrades WHERE villager_id = ? AND skill_id = ?")) {
-            
-            statement.setInt(1, villagerId);
-            statement.setString(2, skillId);
-            ResultSet resultSet = statement.executeQuery();
-            
-            if (resultSet.next()) {
-                return resultSet.getInt("level");
-            }
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
-        }
-        
-        return 0;
+        return getVillagerUpgrades(villagerId).getOrDefault(skillId, 0);
     }
     
     /**
@@ -75,28 +71,65 @@ public class VillagerUpgradeManager {
      * @return 是否应用成功
      */
     public static boolean applyVillagerUpgrade(VillagerData villager, String skillId) {
-        int currentLevel = getVillagerSkillLevel(villager.getId(), skillId);
-        int maxLevel = cn.popcraft.villagerpro.VillagerPro.getInstance().getConfig()
-                .getInt("villager_upgrades." + villager.getProfession() + "." + skillId + ".max_level", 1);
+        int maxLevel = getSkillMaxLevel(villager.getProfession(), skillId);
         
-        // 检查是否已达最高等级
-        if (currentLevel >= maxLevel) {
+        int newLevel;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            newLevel = incrementLevel(connection, villager.getId(), skillId, maxLevel);
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
             return false;
         }
         
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "INSERT OR REPLACE INTO villager_upgrades (villager_id, skill_id, level) VALUES (?, ?, ?)")) {
-            
-            statement.setInt(1, villager.getId());
-            statement.setString(2, skillId);
-            statement.setInt(3, currentLevel + 1);
-            
-            return statement.executeUpdate() > 0;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
+        // 已达最高等级
+        if (newLevel <= 0) {
             return false;
         }
+        
+        // 写入成功后同步更新缓存
+        CacheManager.updateVillagerSkill(villager.getId(), skillId, newLevel);
+        ChangeLog.record(ChangeLog.EntityType.VILLAGER_SKILLS, villager.getId());
+        return true;
+    }
+    
+    /**
+     * 在数据库中把村民技能等级加一，已达最高等级时不修改
+     * 等级在同一条语句中判断和累加，并发的两次升级不会写入同一个等级
+     * @return 升级后的等级，已达最高等级时返回0
+     */
+    private static int incrementLevel(Connection connection, int villagerId, String skillId, int maxLevel) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE villager_upgrades SET level = level + 1 WHERE villager_id = ? AND skill_id = ? AND level < ?")) {
+            statement.setInt(1, villagerId);
+            statement.setString(2, skillId);
+            statement.setInt(3, maxLevel);
+            if (statement.executeUpdate() > 0) {
+                return readLevel(connection, villagerId, skillId);
+            }
+        }
+        
+        // 记录已存在说明已达最高等级；不存在时插入1级，并发插入会因主键冲突失败
+        if (maxLevel < 1 || readLevel(connection, villagerId, skillId) > 0) {
+            return 0;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO villager_upgrades (villager_id, skill_id, level) VALUES (?, ?, 1)")) {
+            statement.setInt(1, villagerId);
+            statement.setString(2, skillId);
+            statement.executeUpdate();
+            return 1;
+        }
+    }
+    
+    private static int readLevel(Connection connection, int villagerId, String skillId) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT level FROM villager_upgrades WHERE villager_id = ? AND skill_id = ?")) {
+            statement.setInt(1, villagerId);
+            statement.setString(2, skillId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        }
     }
     
     /**
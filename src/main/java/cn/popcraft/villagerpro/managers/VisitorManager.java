@@ -377,7 +377,7 @@ public class VisitorManager {
      * 恢复活跃访客
      */
     private void restoreActiveVisitors() {
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement stmt = conn.prepareStatement(
                  "SELECT * FROM visitors WHERE expires_at > CURRENT_TIMESTAMP AND active = 1 ORDER BY id")) {
             
@@ -466,14 +466,7 @@ public class VisitorManager {
      * 从数据库删除访客
      */
     private void deleteVisitorFromDatabase(int visitorId) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("DELETE FROM visitors WHERE id = ?")) {
-            
-            stmt.setInt(1, visitorId);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("删除访客数据失败: " + e.getMessage());
-        }
+        DatabaseManager.queueWrite("visitors:" + visitorId, "DELETE FROM visitors WHERE id = ?", visitorId);
     }
     
     /**
@@ -538,32 +531,16 @@ public class VisitorManager {
      * 更新数据库中的访客
      */
     private boolean updateVisitorInDatabase(VisitorData visitor) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                 "UPDATE visitors SET village_id = ?, type = ?, name = ?, display_name = ?, " +
-                 "location_x = ?, location_y = ?, location_z = ?, world = ?, " +
-                 "spawned_at = ?, expires_at = ?, active = ?, custom_data = ? WHERE id = ?")) {
-            
-            Location loc = visitor.getLocation();
-            stmt.setInt(1, visitor.getVillageId());
-            stmt.setString(2, visitor.getType());
-            stmt.setString(3, visitor.getName());
-            stmt.setString(4, visitor.getDisplayName());
-            stmt.setDouble(5, loc.getX());
-            stmt.setDouble(6, loc.getY());
-            stmt.setDouble(7, loc.getZ());
-            stmt.setString(8, loc.getWorld() != null ? loc.getWorld().getName() : "");
-            stmt.setTimestamp(9, visitor.getSpawnedAt());
-            stmt.setTimestamp(10, visitor.getExpiresAt());
-            stmt.setBoolean(11, visitor.isActive());
-            stmt.setString(12, visitor.getCustomData());
-            stmt.setInt(13, visitor.getId());
-            
-            return stmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("更新访客数据失败: " + e.getMessage());
-            return false;
-        }
+        Location loc = visitor.getLocation();
+        DatabaseManager.queueWrite("visitors:" + visitor.getId(),
+                "UPDATE visitors SET village_id = ?, type = ?, name = ?, display_name = ?, " +
+                "location_x = ?, location_y = ?, location_z = ?, world = ?, " +
+                "spawned_at = ?, expires_at = ?, active = ?, custom_data = ? WHERE id = ?",
+                visitor.getVillageId(), visitor.getType(), visitor.getName(), visitor.getDisplayName(),
+                loc.getX(), loc.getY(), loc.getZ(), loc.getWorld() != null ? loc.getWorld().getName() : "",
+                visitor.getSpawnedAt(), visitor.getExpiresAt(), visitor.isActive(), visitor.getCustomData(),
+                visitor.getId());
+        return true;
     }
     
     // ============== 公共接口方法 ==============
@@ -1,7 +1,9 @@
 package cn.popcraft.villagerpro.managers;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.ChangeLog;
 import cn.popcraft.villagerpro.database.DatabaseManager;
+import cn.popcraft.villagerpro.database.WriteBehindQueue;
 import cn.popcraft.villagerpro.models.Village;
 import cn.popcraft.villagerpro.models.WarehouseItem;
 import org.bukkit.Material;
@@ -13,7 +15,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class WarehouseManager {
     
@@ -24,26 +28,12 @@ public class WarehouseManager {
      */
     public static List<WarehouseItem> getWarehouseItems(int villageId) {
         List<WarehouseItem> items = new ArrayList<>();
-        
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "SELECT id, village_id, item_type, amount FROM warehouse WHERE village_id = ?")) {
-            
-            statement.setInt(1, villageId);
-            ResultSet resultSet = statement.executeQuery();
-            
-            while (resultSet.next()) {
-                items.add(new WarehouseItem(
-                        resultSet.getInt("id"),
-                        resultSet.getInt("village_id"),
-                        resultSet.getString("item_type"),
-                        resultSet.getInt("amount")
-                ));
+        Map<String, Integer> contents = CacheManager.getWarehouse(villageId, WarehouseManager::loadWarehouse);
+        if (contents != null) {
+            for (Map.Entry<String, Integer> entry : contents.entrySet()) {
+                items.add(new WarehouseItem(0, villageId, entry.getKey(), entry.getValue()));
             }
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
         }
-        
         return items;
     }
     
@@ -54,27 +44,34 @@ public class WarehouseManager {
      * @return 仓库物品，如果不存在则返回null
      */
     public static WarehouseItem getWarehouseItem(int villageId, String itemType) {
-        try (Connection connection = DatabaseManager.getConnection();
+        Map<String, Integer> contents = CacheManager.getWarehouse(villageId, WarehouseManager::loadWarehouse);
+        Integer amount = contents != null ? contents.get(itemType) : null;
+        return amount != null ? new WarehouseItem(0, villageId, itemType, amount) : null;
+    }
+    
+    /**
+     * 从数据库加载村庄仓库内容（不经过缓存）
+     * @return 物品类型 -> 数量，查询失败时返回null
+     */
+    private static Map<String, Integer> loadWarehouse(int villageId) {
+        // 读取前先等待该仓库排队中的增减操作提交，不等待其他行的写入
+        DatabaseManager.flushWrites(rowKey(villageId));
+        try (Connection connection = DatabaseManager.getReadConnection();
              PreparedStatement statement = connection.prepareStatement(
-                     "SELECT id, village_id, item_type, amount FROM warehouse WHERE village_id = ? AND item_type = ?")) {
+                     "SELECT item_type, amount FROM warehouse WHERE village_id = ?")) {
             
             statement.setInt(1, villageId);
-            statement.setString(2, itemType);
             ResultSet resultSet = statement.executeQuery();
             
-            if (resultSet.next()) {
-                return new WarehouseItem(
-                        resultSet.getInt("id"),
-                        resultSet.getInt("village_id"),
-                        resultSet.getString("item_type"),
-                        resultSet.getInt("amount")
-                );
+            Map<String, Integer> contents = new HashMap<>();
+            while (resultSet.next()) {
+                contents.put(resultSet.getString("item_type"), resultSet.getInt("amount"));
             }
+            return contents;
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
+            return null;
         }
-        
-        return null;
     }
     
     /**
@@ -85,22 +82,41 @@ public class WarehouseManager {
      * @return 是否添加成功
      */
     public static boolean addWarehouseItem(int villageId, String itemType, int amount) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "INSERT OR REPLACE INTO warehouse (village_id, item_type, amount) VALUES (?, ?, " +
-                             "COALESCE((SELECT amount FROM warehouse WHERE village_id = ? AND item_type = ?), 0) + ?)")) {
-            
-            statement.setInt(1, villageId);
-            statement.setString(2, itemType);
-            statement.setInt(3, villageId);
-            statement.setString(4, itemType);
-            statement.setInt(5, amount);
-            
-            return statement.executeUpdate() > 0;
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
-            return false;
+        // 增量写入，不能合并，按提交顺序执行
+        CacheManager.beginWarehouseWrite(villageId);
+        try {
+            DatabaseManager.queueTaggedAppend(rowKey(villageId),
+                    DatabaseManager.getBackend().upsertAdd("warehouse", new String[]{"village_id", "item_type"}, "amount"),
+                    villageId, itemType, amount);
+        } finally {
+            CacheManager.endWarehouseWrite(villageId, Map.of(itemType, amount));
+        }
+        ChangeLog.record(ChangeLog.EntityType.WAREHOUSE, villageId);
+        return true;
+    }
+    
+    /**
+     * 生成批量添加物品的写操作（一条多行累加语句）
+     * 调用者负责在 {@link CacheManager#beginWarehouseWrite}/{@link CacheManager#endWarehouseWrite} 之间
+     * 将写操作提交到写回队列（结束时同步更新缓存），并在其后记录仓库变更
+     * @param villageId 村庄ID
+     * @param deltas 物品类型 -> 增加数量
+     * @return 写操作，没有需要写入的物品时返回null
+     */
+    public static WriteBehindQueue.Write prepareAddItems(int villageId, Map<String, Integer> deltas) {
+        if (deltas.isEmpty()) {
+            return null;
+        }
+        Object[] params = new Object[deltas.size() * 3];
+        int index = 0;
+        for (Map.Entry<String, Integer> entry : deltas.entrySet()) {
+            params[index++] = villageId;
+            params[index++] = entry.getKey();
+            params[index++] = entry.getValue();
         }
+        // 增量写入，不能合并
+        return WriteBehindQueue.Write.append(rowKey(villageId), DatabaseManager.getBackend()
+                .upsertAddRows("warehouse", new String[]{"village_id", "item_type"}, deltas.size(), "amount"), params);
     }
     
     /**
@@ -117,19 +133,56 @@ public class WarehouseManager {
             return false;
         }
         
+        CacheManager.beginWarehouseWrite(villageId);
+        try {
+            DatabaseManager.queueTaggedAppend(rowKey(villageId),
+                    "UPDATE warehouse SET amount = amount - ? WHERE village_id = ? AND item_type = ?",
+                    amount, villageId, itemType);
+        } finally {
+            CacheManager.endWarehouseWrite(villageId, Map.of(itemType, -amount));
+        }
+        ChangeLog.record(ChangeLog.EntityType.WAREHOUSE, villageId);
+        return true;
+    }
+    
+    /**
+     * 从仓库取出物品，库存检查与扣减在同一条语句中完成，避免并发提取导致超取
+     * 会访问数据库，不要在主线程调用
+     * @param villageId 村庄ID
+     * @param itemType 物品类型
+     * @param amount 数量
+     * @return 实际取出的数量，库存不足时返回0
+     */
+    public static int takeItem(int villageId, String itemType, int amount) {
+        if (amount <= 0) {
+            return 0;
+        }
+        
+        // 先写入该仓库排队中的增减操作，保证扣减基于最新库存
+        DatabaseManager.flushWrites(rowKey(villageId));
+        Map<String, Integer> deltas = Map.of();
+        CacheManager.beginWarehouseWrite(villageId);
         try (Connection connection = DatabaseManager.getConnection();
              PreparedStatement statement = connection.prepareStatement(
-                     "UPDATE warehouse SET amount = amount - ? WHERE village_id = ? AND item_type = ?")) {
+                     "UPDATE warehouse SET amount = amount - ? WHERE village_id = ? AND item_type = ? AND amount >= ?")) {
             
             statement.setInt(1, amount);
             statement.setInt(2, villageId);
             statement.setString(3, itemType);
+            statement.setInt(4, amount);
             
-            return statement.executeUpdate() > 0;
+            if (statement.executeUpdate() == 0) {
+                return 0;
+            }
+            deltas = Map.of(itemType, -amount);
         } catch (SQLException e) {
             VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
-            return false;
+            return 0;
+        } finally {
+            CacheManager.endWarehouseWrite(villageId, deltas);
         }
+        ChangeLog.record(ChangeLog.EntityType.WAREHOUSE, villageId);
+        return amount;
     }
     
     /**
@@ -208,21 +261,14 @@ public class WarehouseManager {
      * @return 当前存储量
      */
     public static int getCurrentStorage(int villageId) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "SELECT SUM(amount) as total FROM warehouse WHERE village_id = ?")) {
-            
-            statement.setInt(1, villageId);
-            ResultSet resultSet = statement.executeQuery();
-            
-            if (resultSet.next()) {
-                return resultSet.getInt("total");
+        Map<String, Integer> contents = CacheManager.getWarehouse(villageId, WarehouseManager::loadWarehouse);
+        int total = 0;
+        if (contents != null) {
+            for (int amount : contents.values()) {
+                total += amount;
             }
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
         }
-        
-        return 0;
+        return total;
     }
     
     /**
@@ -231,15 +277,20 @@ public class WarehouseManager {
      * @return 是否清空成功
      */
     public static boolean clearWarehouse(int villageId) {
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(
-                     "DELETE FROM warehouse WHERE village_id = ?")) {
-            
-            statement.setInt(1, villageId);
-            return statement.executeUpdate() >= 0; // 即使没有记录被删除也返回true
-        } catch (SQLException e) {
-            VillagerPro.getInstance().getLogger().warning("数据库操作失败：" + e.getMessage());
-            return false;
+        CacheManager.beginWarehouseWrite(villageId);
+        try {
+            DatabaseManager.queueTaggedAppend(rowKey(villageId), "DELETE FROM warehouse WHERE village_id = ?", villageId);
+        } finally {
+            CacheManager.endWarehouseClear(villageId);
         }
+        ChangeLog.record(ChangeLog.EntityType.WAREHOUSE, villageId);
+        return true;
+    }
+    
+    /**
+     * 仓库行在写回队列中的行键（增量写入不合并，只用于等待提交）
+     */
+    private static String rowKey(int villageId) {
+        return "warehouse:" + villageId;
     }
-}
\ No newline at end of file
+}
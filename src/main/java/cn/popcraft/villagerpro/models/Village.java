@@ -2,6 +2,7 @@ package cn.popcraft.villagerpro.models;
 
 import cn.popcraft.villagerpro.VillagerPro;
 import cn.popcraft.villagerpro.database.DatabaseManager;
+import cn.popcraft.villagerpro.managers.CacheManager;
 import cn.popcraft.villagerpro.managers.VillageUpgradeManager;
 
 import java.sql.Connection;
@@ -12,15 +13,14 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
+/**
+ * 村庄
+ * 状态保存在不可变的 {@link VillageSnapshot} 中，修改时生成新快照并整体替换（写时复制），
+ * 其他线程通过 {@link #snapshot()} 获取一致的数据
+ */
 public class Village {
     
-    private int id;
-    private UUID ownerUUID;
-    private String name;
-    private int level;
-    private int experience;
-    private int prosperity;
-    private Map<String, Integer> upgrades;
+    private volatile VillageSnapshot state;
     
     /**
      * 构造函数
@@ -32,62 +32,72 @@ public class Village {
      * @param prosperity 繁荣度
      */
     public Village(int id, UUID ownerUUID, String name, int level, int experience, int prosperity) {
-        this.id = id;
-        this.ownerUUID = ownerUUID;
-        this.name = name;
-        this.level = level;
-        this.experience = experience;
-        this.prosperity = prosperity;
-        this.upgrades = null; // 延迟加载
+        this.state = new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, 0);
+    }
+    
+    /**
+     * 获取当前状态的不可变快照
+     * @return 快照
+     */
+    public VillageSnapshot snapshot() {
+        return state;
+    }
+    
+    /**
+     * 当前状态版本，每次修改加一
+     * @return 版本号
+     */
+    public long getVersion() {
+        return state.getVersion();
     }
     
     // Getters and setters
     public int getId() {
-        return id;
+        return state.getId();
     }
     
-    public void setId(int id) {
-        this.id = id;
+    public synchronized void setId(int id) {
+        state = state.withId(id);
     }
     
     public UUID getOwnerUUID() {
-        return ownerUUID;
+        return state.getOwnerUUID();
     }
     
-    public void setOwnerUUID(UUID ownerUUID) {
-        this.ownerUUID = ownerUUID;
+    public synchronized void setOwnerUUID(UUID ownerUUID) {
+        state = state.withOwnerUUID(ownerUUID);
     }
     
     public String getName() {
-        return name;
+        return state.getName();
     }
     
-    public void setName(String name) {
-        this.name = name;
+    public synchronized void setName(String name) {
+        state = state.withName(name);
     }
     
     public int getLevel() {
-        return level;
+        return state.getLevel();
     }
     
-    public void setLevel(int level) {
-        this.level = level;
+    public synchronized void setLevel(int level) {
+        state = state.withLevel(level);
     }
     
     public int getExperience() {
-        return experience;
+        return state.getExperience();
     }
     
-    public void setExperience(int experience) {
-        this.experience = experience;
+    public synchronized void setExperience(int experience) {
+        state = state.withExperience(experience);
     }
     
     public int getProsperity() {
-        return prosperity;
+        return state.getProsperity();
     }
     
-    public void setProsperity(int prosperity) {
-        this.prosperity = prosperity;
+    public synchronized void setProsperity(int prosperity) {
+        state = state.withProsperity(prosperity);
     }
     
     /**
@@ -97,7 +107,7 @@ public class Village {
     public int getVillagerLimit() {
         // 基础限制 + 每级增加的数量
         int baseLimit = VillagerPro.getInstance().getConfig().getInt("village.base_villager_limit", 3);
-        int levelBonus = (level - 1) * 1; // 每级增加1个村民上限
+        int levelBonus = (getLevel() - 1) * 1; // 每级增加1个村民上限
         
         // 检查是否有基建扩张升级
         Map<String, Integer> villageUpgrades = getUpgrades();
@@ -116,7 +126,7 @@ public class Village {
     public int getWarehouseCapacity() {
         // 基础容量 + 每级增加容量
         int baseCapacity = VillagerPro.getInstance().getConfig().getInt("village.base_warehouse_capacity", 50);
-        int levelBonus = (level - 1) * VillagerPro.getInstance().getConfig().getInt("village.warehouse_capacity_per_level", 25);
+        int levelBonus = (getLevel() - 1) * VillagerPro.getInstance().getConfig().getInt("village.warehouse_capacity_per_level", 25);
         
         // 检查是否有仓储扩容升级
         Map<String, Integer> villageUpgrades = getUpgrades();
@@ -129,14 +139,19 @@ public class Village {
     }
     
     /**
-     * 实现从数据库获取村庄升级信息
+     * 获取村庄升级信息（从升级缓存读取，村庄对象重建后不会丢失）
      * @return 升级信息映射
      */
     public Map<String, Integer> getUpgrades() {
-        if (upgrades == null) {
-            upgrades = VillageUpgradeManager.getVillageUpgrades(id);
-        }
-        return upgrades;
+        return VillageUpgradeManager.getVillageUpgrades(getId());
+    }
+    
+    /**
+     * 写入已加载的升级信息（批量加载时使用，避免再次查询）
+     * @param upgrades 升级信息映射
+     */
+    public void setUpgrades(Map<String, Integer> upgrades) {
+        CacheManager.cacheVillageUpgrades(getId(), upgrades);
     }
     
     /**
@@ -145,43 +160,38 @@ public class Village {
      */
     public boolean canUpgrade() {
         int maxLevel = VillagerPro.getInstance().getConfig().getInt("village.max_level", 5);
-        return level < maxLevel;
+        return getLevel() < maxLevel;
     }
     
     @Override
     public String toString() {
-        return "Village{" +
-                "id=" + id +
-                ", ownerUUID=" + ownerUUID +
-                ", name='" + name + '\'' +
-                ", level=" + level +
-                ", experience=" + experience +
-                ", prosperity=" + prosperity +
-                '}';
+        return state.toString();
     }
     
     /**
      * 增加经验
      * @param exp 经验值
      */
-    public void addExperience(int exp) {
-        this.experience += exp;
+    public synchronized void addExperience(int exp) {
+        int experience = state.getExperience() + exp;
+        int level = state.getLevel();
         // 检查是否可以升级
         if (canUpgrade()) {
-            int currentLevel = this.level;
-            int requiredExp = VillagerPro.getInstance().getConfig().getInt("village.level_up_experience." + (currentLevel + 1), 100);
-            if (this.experience >= requiredExp) {
-                this.level++;
+            int requiredExp = VillagerPro.getInstance().getConfig().getInt("village.level_up_experience." + (level + 1), 100);
+            if (experience >= requiredExp) {
+                level++;
                 // 可以在这里添加升级事件通知等逻辑
             }
         }
+        // 经验和等级在同一个快照中更新
+        state = state.withProgress(level, experience);
     }
     
     /**
      * 增加繁荣度
      * @param prosperity 繁荣度
      */
-    public void addProsperity(int prosperity) {
-        this.prosperity += prosperity;
+    public synchronized void addProsperity(int prosperity) {
+        state = state.withProsperity(state.getProsperity() + prosperity);
     }
 }
\ No newline at end of file
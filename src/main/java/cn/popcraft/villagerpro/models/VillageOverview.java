@@ -0,0 +1,44 @@
+package cn.popcraft.villagerpro.models;
+
+import java.util.List;
+
+/**
+ * 村庄概览 - 打开界面前在数据库线程中一次性加载的数据
+ */
+public class VillageOverview {
+    private final Village village;
+    private final List<VillagerData> villagers;
+    private final int currentStorage;
+
+    /**
+     * 构造函数
+     * @param village 村庄（升级信息已加载）
+     * @param villagers 村民列表
+     * @param currentStorage 仓库当前存储量
+     */
+    public VillageOverview(Village village, List<VillagerData> villagers, int currentStorage) {
+        this.village = village;
+        this.villagers = villagers;
+        this.currentStorage = currentStorage;
+    }
+
+    public Village getVillage() {
+        return village;
+    }
+
+    public List<VillagerData> getVillagers() {
+        return villagers;
+    }
+
+    public int getCurrentStorage() {
+        return currentStorage;
+    }
+
+    /**
+     * 村民数量是否已达上限
+     * @return 是否已满
+     */
+    public boolean isVillagerLimitReached() {
+        return villagers.size() >= village.getVillagerLimit();
+    }
+}
@@ -0,0 +1,80 @@
+package cn.popcraft.villagerpro.models;
+
+import java.util.UUID;
+
+/**
+ * 村庄状态的不可变快照
+ * {@link Village} 的每次修改都会生成版本号加一的新快照并整体替换，
+ * 异步线程、界面和统计代码持有的快照不会被其他线程修改，无需加锁即可读取一致的数据
+ */
+public final class VillageSnapshot {
+    private final int id;
+    private final UUID ownerUUID;
+    private final String name;
+    private final int level;
+    private final int experience;
+    private final int prosperity;
+    private final long version;
+
+    public VillageSnapshot(int id, UUID ownerUUID, String name, int level, int experience, int prosperity, long version) {
+        this.id = id;
+        this.ownerUUID = ownerUUID;
+        this.name = name;
+        this.level = level;
+        this.experience = experience;
+        this.prosperity = prosperity;
+        this.version = version;
+    }
+
+    public int getId() { return id; }
+    public UUID getOwnerUUID() { return ownerUUID; }
+    public String getName() { return name; }
+    public int getLevel() { return level; }
+    public int getExperience() { return experience; }
+    public int getProsperity() { return prosperity; }
+
+    /**
+     * 快照版本，每次修改加一
+     */
+    public long getVersion() { return version; }
+
+    public VillageSnapshot withId(int id) {
+        return new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, version + 1);
+    }
+
+    public VillageSnapshot withOwnerUUID(UUID ownerUUID) {
+        return new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, version + 1);
+    }
+
+    public VillageSnapshot withName(String name) {
+        return new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, version + 1);
+    }
+
+    public VillageSnapshot withLevel(int level) {
+        return new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, version + 1);
+    }
+
+    public VillageSnapshot withExperience(int experience) {
+        return new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, version + 1);
+    }
+
+    public VillageSnapshot withProgress(int level, int experience) {
+        return new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, version + 1);
+    }
+
+    public VillageSnapshot withProsperity(int prosperity) {
+        return new VillageSnapshot(id, ownerUUID, name, level, experience, prosperity, version + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "Village{" +
+                "id=" + id +
+                ", ownerUUID=" + ownerUUID +
+                ", name='" + name + '\'' +
+                ", level=" + level +
+                ", experience=" + experience +
+                ", prosperity=" + prosperity +
+                '}';
+    }
+}
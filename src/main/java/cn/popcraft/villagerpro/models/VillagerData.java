@@ -1,6 +1,9 @@
 package cn.popcraft.villagerpro.models;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.managers.CacheManager;
+import cn.popcraft.villagerpro.managers.EntityRegistry;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
 import cn.popcraft.villagerpro.managers.VillagerUpgradeManager;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
@@ -10,16 +13,14 @@ import org.bukkit.entity.Villager;
 import java.util.Map;
 import java.util.UUID;
 
+/**
+ * 村民数据
+ * 状态保存在不可变的 {@link VillagerSnapshot} 中，修改时生成新快照并整体替换（写时复制），
+ * 其他线程通过 {@link #snapshot()} 获取一致的数据
+ */
 public class VillagerData {
     
-    private int id;
-    private int villageId;
-    private UUID entityUUID;
-    private String profession;
-    private int level;
-    private int experience;
-    private String followMode;
-    private Map<String, Integer> skills;
+    private volatile VillagerSnapshot state;
     
     /**
      * 构造函数
@@ -32,86 +33,96 @@ public class VillagerData {
      * @param followMode 跟随模式
      */
     public VillagerData(int id, int villageId, UUID entityUUID, String profession, int level, int experience, String followMode) {
-        this.id = id;
-        this.villageId = villageId;
-        this.entityUUID = entityUUID;
-        this.profession = profession;
-        this.level = level;
-        this.experience = experience;
-        this.followMode = followMode;
-        this.skills = null; // 延迟加载
+        this.state = new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, 0);
+    }
+    
+    /**
+     * 获取当前状态的不可变快照
+     * @return 快照
+     */
+    public VillagerSnapshot snapshot() {
+        return state;
+    }
+    
+    /**
+     * 当前状态版本，每次修改加一
+     * @return 版本号
+     */
+    public long getVersion() {
+        return state.getVersion();
     }
     
     // Getters and setters
     public int getId() {
-        return id;
+        return state.getId();
     }
     
-    public void setId(int id) {
-        this.id = id;
+    public synchronized void setId(int id) {
+        state = state.withId(id);
     }
     
     public int getVillageId() {
-        return villageId;
+        return state.getVillageId();
     }
     
-    public void setVillageId(int villageId) {
-        this.villageId = villageId;
+    public synchronized void setVillageId(int villageId) {
+        state = state.withVillageId(villageId);
     }
     
     public UUID getEntityUUID() {
-        return entityUUID;
+        return state.getEntityUUID();
     }
     
-    public void setEntityUUID(UUID entityUUID) {
-        this.entityUUID = entityUUID;
+    public synchronized void setEntityUUID(UUID entityUUID) {
+        state = state.withEntityUUID(entityUUID);
     }
     
     public String getProfession() {
-        return profession;
+        return state.getProfession();
     }
     
-    public void setProfession(String profession) {
-        this.profession = profession;
+    public synchronized void setProfession(String profession) {
+        state = state.withProfession(profession);
     }
     
     public int getLevel() {
-        return level;
+        return state.getLevel();
     }
     
-    public void setLevel(int level) {
-        this.level = level;
+    public synchronized void setLevel(int level) {
+        state = state.withLevel(level);
     }
     
     public int getExperience() {
-        return experience;
+        return state.getExperience();
     }
     
-    public void setExperience(int experience) {
-        this.experience = experience;
+    public synchronized void setExperience(int experience) {
+        state = state.withExperience(experience);
     }
     
     public String getFollowMode() {
-        return followMode;
+        return state.getFollowMode();
     }
     
-    public void setFollowMode(String followMode) {
-        this.followMode = followMode;
+    public synchronized void setFollowMode(String followMode) {
+        state = state.withFollowMode(followMode);
     }
     
     /**
-     * 获取村民实体
-     * @return 村民实体
+     * 获取村民实体（通过实体注册表，异步线程中返回事件维护的句柄）
+     * @return 村民实体，实体所在区块未加载或已死亡时返回null，可通过 {@link #getEntityStatus()} 区分
      */
     public Villager getEntity() {
-        // 如果在主线程中直接获取实体
-        if (Bukkit.isPrimaryThread()) {
-            return (Villager) Bukkit.getEntity(entityUUID);
-        } else {
-            // 如果在异步线程中，通过调度器在主线程中获取实体
-            // 这里我们返回null，让调用者处理异步情况
-            return null;
-        }
+        return EntityRegistry.getEntity(getEntityUUID(), Villager.class);
+    }
+    
+    /**
+     * 获取村民实体状态
+     * @return 实体状态
+     */
+    public EntityRegistry.Status getEntityStatus() {
+        return EntityRegistry.getStatus(getEntityUUID());
     }
     
     /**
@@ -120,10 +131,10 @@ public class VillagerData {
      */
     public void getEntityAsync(java.util.function.Consumer<Villager> callback) {
         if (Bukkit.isPrimaryThread()) {
-            callback.accept((Villager) Bukkit.getEntity(entityUUID));
+            callback.accept(getEntity());
         } else {
             Bukkit.getScheduler().runTask(VillagerPro.getInstance(), () -> {
-                callback.accept((Villager) Bukkit.getEntity(entityUUID));
+                callback.accept(getEntity());
             });
         }
     }
@@ -162,8 +173,31 @@ public class VillagerData {
      * 增加经验
      * @param exp 经验值
      */
-    public void addExperience(int exp) {
-        this.experience += exp;
+    public synchronized void addExperience(int exp) {
+        state = state.withExperience(state.getExperience() + exp);
+    }
+    
+    /**
+     * 同时更新等级和经验（例如从数据库读取其他服务器写入的进度）
+     * @param level 等级
+     * @param experience 经验值
+     */
+    public synchronized void setProgress(int level, int experience) {
+        state = state.withLevel(level).withExperience(experience);
+    }
+    
+    /**
+     * 经验足够时升一级并扣除升级所需经验
+     * 在同一次加锁中完成检查和修改，不会丢失工作线程同时增加的经验
+     * @param expNeeded 升级所需经验
+     * @return 是否升级
+     */
+    public synchronized boolean tryLevelUp(int expNeeded) {
+        if (state.getExperience() < expNeeded) {
+            return false;
+        }
+        state = state.withLevel(state.getLevel() + 1).withExperience(state.getExperience() - expNeeded);
+        return true;
     }
     
     /**
@@ -171,50 +205,38 @@ public class VillagerData {
      * @return 工作范围
      */
     public int getWorkRange() {
-        // 基础工作范围
-        int baseRange = VillagerPro.getInstance().getConfig().getInt("villager.work_range", 5);
-        
-        // 检查是否有广域耕作技能（仅对农民有效）
-        if ("farmer".equals(profession)) {
-            Map<String, Integer> villagerSkills = getSkills();
-            Integer wideRangeLevel = villagerSkills.get("wide_range");
-            if (wideRangeLevel != null) {
-                baseRange += wideRangeLevel * 2; // 每级广域耕作增加2格工作范围
-            }
-        }
-        
-        return baseRange;
+        // 基础工作范围加上范围技能加成（如农民的广域耕作，每级增加2格）
+        return ProfessionRegistry.getWorkRange(getProfession(), getSkills());
     }
     
     /**
-     * 获取基础产出数量
+     * 获取基础产出数量（界面显示用）
+     * 包含职业的产出技能加成，与工作周期的实际产出一致；原先只显示农民的高效收割加成
      * @return 基础产出数量
      */
     public int getBaseProductionAmount() {
-        // 基础产出数量
-        int baseAmount = VillagerPro.getInstance().getConfig().getInt("villager.professions." + profession + ".base_amount", 1);
-        
-        // 检查是否有高效收割技能（仅对农民有效）
-        if ("farmer".equals(profession)) {
-            Map<String, Integer> villagerSkills = getSkills();
-            Integer efficientHarvestLevel = villagerSkills.get("efficient_harvest");
-            if (efficientHarvestLevel != null) {
-                baseAmount += efficientHarvestLevel; // 每级高效收割增加1个产出
-            }
+        ProfessionRegistry.Profession profession = ProfessionRegistry.get(getProfession());
+        if (profession == null) {
+            return 1;
         }
-        
-        return baseAmount;
+        // 基础产出数量加上产出技能加成（如农民的高效收割，每级增加1个产出）
+        return profession.getBaseAmount() + profession.getSkillBonus(getSkills());
     }
     
     /**
-     * 实现从数据库获取村民技能升级信息
+     * 获取村民技能升级信息（从技能缓存读取，村民对象重建后不会丢失）
      * @return 技能信息映射
      */
     public Map<String, Integer> getSkills() {
-        if (skills == null) {
-            skills = VillagerUpgradeManager.getVillagerUpgrades(id);
-        }
-        return skills;
+        return VillagerUpgradeManager.getVillagerUpgrades(getId());
+    }
+    
+    /**
+     * 写入已加载的技能信息（批量加载时使用，避免再次查询）
+     * @param skills 技能信息映射
+     */
+    public void setSkills(Map<String, Integer> skills) {
+        CacheManager.cacheVillagerSkills(getId(), skills);
     }
     
     /**
@@ -224,7 +246,8 @@ public class VillagerData {
     public boolean canUpgrade() {
         // 村民等级没有硬性上限，但可以检查是否满足升级条件
         // 根据经验系统来判断是否可以升级
-        int currentLevel = this.getLevel();
+        VillagerSnapshot snapshot = state;
+        int currentLevel = snapshot.getLevel();
         
         // 获取基础经验需求（默认为100）
         int baseExp = cn.popcraft.villagerpro.VillagerPro.getInstance().getConfig()
@@ -232,19 +255,11 @@ public class VillagerData {
         // 计算当前等级升级所需经验（线性增长）
         int expNeeded = currentLevel * baseExp;
         
-        return this.getExperience() >= expNeeded;
+        return snapshot.getExperience() >= expNeeded;
     }
     
     @Override
     public String toString() {
-        return "VillagerData{" +
-                "id=" + id +
-                ", villageId=" + villageId +
-                ", entityUUID=" + entityUUID +
-                ", profession='" + profession + '\'' +
-                ", level=" + level +
-                ", experience=" + experience +
-                ", followMode='" + followMode + '\'' +
-                '}';
+        return state.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,85 @@
+package cn.popcraft.villagerpro.models;
+
+import java.util.UUID;
+
+/**
+ * 村民状态的不可变快照
+ * {@link VillagerData} 的每次修改都会生成版本号加一的新快照并整体替换，
+ * 其他线程读取到的始终是某一时刻完整的村民状态
+ */
+public final class VillagerSnapshot {
+    private final int id;
+    private final int villageId;
+    private final UUID entityUUID;
+    private final String profession;
+    private final int level;
+    private final int experience;
+    private final String followMode;
+    private final long version;
+
+    public VillagerSnapshot(int id, int villageId, UUID entityUUID, String profession, int level, int experience,
+                            String followMode, long version) {
+        this.id = id;
+        this.villageId = villageId;
+        this.entityUUID = entityUUID;
+        this.profession = profession;
+        this.level = level;
+        this.experience = experience;
+        this.followMode = followMode;
+        this.version = version;
+    }
+
+    public int getId() { return id; }
+    public int getVillageId() { return villageId; }
+    public UUID getEntityUUID() { return entityUUID; }
+    public String getProfession() { return profession; }
+    public int getLevel() { return level; }
+    public int getExperience() { return experience; }
+    public String getFollowMode() { return followMode; }
+
+    /**
+     * 快照版本，每次修改加一
+     */
+    public long getVersion() { return version; }
+
+    public VillagerSnapshot withId(int id) {
+        return new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, version + 1);
+    }
+
+    public VillagerSnapshot withVillageId(int villageId) {
+        return new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, version + 1);
+    }
+
+    public VillagerSnapshot withEntityUUID(UUID entityUUID) {
+        return new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, version + 1);
+    }
+
+    public VillagerSnapshot withProfession(String profession) {
+        return new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, version + 1);
+    }
+
+    public VillagerSnapshot withLevel(int level) {
+        return new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, version + 1);
+    }
+
+    public VillagerSnapshot withExperience(int experience) {
+        return new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, version + 1);
+    }
+
+    public VillagerSnapshot withFollowMode(String followMode) {
+        return new VillagerSnapshot(id, villageId, entityUUID, profession, level, experience, followMode, version + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "VillagerData{" +
+                "id=" + id +
+                ", villageId=" + villageId +
+                ", entityUUID=" + entityUUID +
+                ", profession='" + profession + '\'' +
+                ", level=" + level +
+                ", experience=" + experience +
+                ", followMode='" + followMode + '\'' +
+                '}';
+    }
+}
@@ -1,6 +1,7 @@
 package cn.popcraft.villagerpro.models;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.managers.EntityRegistry;
 import net.md_5.bungee.api.chat.TextComponent;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -28,7 +29,6 @@ public class VisitorData {
     private Timestamp spawnedAt;
     private Timestamp expiresAt;
     private boolean active;
-    private LivingEntity entity;
     private UUID entityUUID;
     private String customData; // 额外的自定义数据（JSON格式）
     
@@ -56,8 +56,8 @@ public class VisitorData {
             if (world == null) return false;
             
             // 在位置生成村民实体
-            entity = (LivingEntity) world.spawnEntity(location, EntityType.VILLAGER);
-            entityUUID = entity.getUniqueId();
+            LivingEntity entity = (LivingEntity) world.spawnEntity(location, EntityType.VILLAGER);
+            setEntity(entity);
             
             // 设置村民名称和交易
             if (entity instanceof Villager) {
@@ -96,10 +96,11 @@ public class VisitorData {
      * 移除访客实体
      */
     public void removeEntity() {
+        LivingEntity entity = getEntity();
         if (entity != null && !entity.isDead()) {
             entity.remove();
         }
-        this.entity = null;
+        EntityRegistry.untrack(entityUUID);
         this.active = false;
     }
     
@@ -228,12 +229,17 @@ public class VisitorData {
         this.active = active;
     }
     
+    /**
+     * 获取访客实体（通过实体注册表）
+     * @return 访客实体，实体所在区块未加载或已移除时返回null
+     */
     public LivingEntity getEntity() {
-        return entity;
+        return EntityRegistry.getEntity(entityUUID, LivingEntity.class);
     }
     
     public void setEntity(LivingEntity entity) {
-        this.entity = entity;
+        this.entityUUID = entity.getUniqueId();
+        EntityRegistry.register(entity, EntityRegistry.Kind.VISITOR);
     }
     
     public UUID getEntityUUID() {
@@ -0,0 +1,361 @@
+package cn.popcraft.villagerpro.scheduler;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.AsyncRepository;
+import cn.popcraft.villagerpro.database.ChangeLog;
+import cn.popcraft.villagerpro.database.DatabaseManager;
+import cn.popcraft.villagerpro.managers.CacheManager;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
+import cn.popcraft.villagerpro.managers.VillageManager;
+import cn.popcraft.villagerpro.managers.VillagerManager;
+import cn.popcraft.villagerpro.managers.WarehouseManager;
+import cn.popcraft.villagerpro.models.Village;
+import cn.popcraft.villagerpro.models.VillagerData;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 离线补偿产出
+ * 拥有者在线时记录村民的最后工作时间（villagers.last_work_at）：有产出的工作周期随产出一起写入，
+ * 拥有者退出或插件关闭时整个村庄写入一次，
+ * 拥有者重新登录时按离线期间经过的工作周期数直接计算期望产出（周期数 × 产出概率 × 单次产出），
+ * 受仓库剩余容量限制，在一个事务中批量写入仓库，不需要在拥有者离线期间加载区块或执行工作
+ */
+public class OfflineProduction {
+    // 在线玩家；结算完成与玩家退出在 online 上互斥，退出后完成的结算不会再标记为已结算
+    private static final Set<UUID> online = ConcurrentHashMap.newKeySet();
+    // 已完成离线补偿结算的在线玩家，结算完成前不更新最后工作时间
+    private static final Set<UUID> settled = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 为已在线的玩家结算离线产出（插件重载后）
+     */
+    public static void initialize() {
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            onJoin(player.getUniqueId());
+        }
+    }
+
+    /**
+     * 玩家加入：在数据库线程池中结算其村庄的离线产出
+     * @param playerUUID 玩家UUID
+     */
+    public static void onJoin(UUID playerUUID) {
+        online.add(playerUUID);
+        settled.remove(playerUUID);
+        if (!isEnabled()) {
+            settled.add(playerUUID);
+            return;
+        }
+        Runnable task = () -> {
+            try {
+                catchUp(playerUUID);
+            } finally {
+                synchronized (online) {
+                    if (online.contains(playerUUID)) {
+                        settled.add(playerUUID);
+                    }
+                }
+            }
+        };
+        // 线程池已满时改由服务器的异步调度器执行，结算一定会完成，之后才开始记录最后工作时间
+        if (!AsyncRepository.tryExecute(task)) {
+            Bukkit.getScheduler().runTaskAsynchronously(VillagerPro.getInstance(), task);
+        }
+    }
+
+    /**
+     * 玩家退出：记录其村庄所有村民的最后工作时间，离线产出从此刻开始计算
+     * @param playerUUID 玩家UUID
+     */
+    public static void onQuit(UUID playerUUID) {
+        boolean wasSettled;
+        synchronized (online) {
+            online.remove(playerUUID);
+            wasSettled = settled.remove(playerUUID);
+        }
+        if (wasSettled) {
+            recordStop(playerUUID, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 插件关闭：为在线玩家的村庄记录最后工作时间（在关闭写回队列之前调用）
+     */
+    public static void shutdown() {
+        long now = System.currentTimeMillis();
+        synchronized (online) {
+            for (UUID playerUUID : settled) {
+                recordStop(playerUUID, now);
+            }
+            online.clear();
+            settled.clear();
+        }
+    }
+
+    /**
+     * 工作周期是否需要记录该拥有者村民的最后工作时间
+     * @param ownerUUID 村庄拥有者UUID
+     * @return 未启用离线补偿或离线产出尚未结算（保留离线期间的时间戳）时返回false
+     */
+    public static boolean shouldRecordWork(UUID ownerUUID) {
+        return isEnabled() && settled.contains(ownerUUID);
+    }
+
+    /**
+     * 记录拥有者村庄所有村民的最后工作时间
+     */
+    private static void recordStop(UUID ownerUUID, long now) {
+        if (!isEnabled()) {
+            return;
+        }
+        DatabaseManager.queueWrite("villagers:last_work_at:" + ownerUUID,
+                "UPDATE villagers SET last_work_at = ? WHERE village_id IN (SELECT id FROM villages WHERE owner_uuid = ?)",
+                now, ownerUUID.toString());
+    }
+
+    private static boolean isEnabled() {
+        return VillagerPro.getInstance().getConfig().getBoolean("villager.catch_up.enabled", true);
+    }
+
+    /**
+     * 结算玩家村庄的离线产出（在工作线程中调用）
+     */
+    private static void catchUp(UUID playerUUID) {
+        Village village = VillageManager.getVillage(playerUUID);
+        if (village == null) {
+            return;
+        }
+        FileConfiguration config = VillagerPro.getInstance().getConfig();
+        long intervalMillis = WorkScheduler.getWorkIntervalTicks() * 50L;
+        long maxMillis = Math.max(0L, config.getLong("villager.catch_up.max_hours", 24L)) * 3_600_000L;
+        long now = System.currentTimeMillis();
+
+        Map<Integer, VillagerData> villagers = new HashMap<>();
+        for (VillagerData villager : VillagerManager.getVillagers(village.getId())) {
+            villagers.put(villager.getId(), villager);
+        }
+        if (villagers.isEmpty()) {
+            return;
+        }
+
+        // 读取前先写入排队中的最后工作时间
+        DatabaseManager.flushWrites();
+        Map<Integer, Long> lastWork = new HashMap<>();
+        try (Connection connection = DatabaseManager.getReadConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT id, last_work_at FROM villagers WHERE village_id = ?")) {
+            statement.setInt(1, village.getId());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    long value = resultSet.getLong("last_work_at");
+                    lastWork.put(resultSet.getInt("id"), resultSet.wasNull() ? null : value);
+                }
+            }
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("读取村民最后工作时间失败：" + e.getMessage());
+            return;
+        }
+
+        // 计算每个村民经过的完整工作周期数及期望产出
+        List<Object[]> advances = new ArrayList<>();
+        List<Integer> uninitialized = new ArrayList<>();
+        Map<Integer, Map<String, Double>> expected = new HashMap<>();
+        for (Map.Entry<Integer, Long> entry : lastWork.entrySet()) {
+            VillagerData villager = villagers.get(entry.getKey());
+            Long last = entry.getValue();
+            if (villager == null) {
+                continue;
+            }
+            if (last == null) {
+                // 升级前招募的村民，从现在开始计时
+                uninitialized.add(villager.getId());
+                continue;
+            }
+            long elapsed = Math.min(now - last, maxMillis);
+            long cycles = elapsed > 0 ? elapsed / intervalMillis : 0;
+            if (cycles <= 0) {
+                continue;
+            }
+            // 超过上限的离线时间不补偿；未满一个周期的部分保留到下次
+            long newLast = now - last > maxMillis ? now : last + cycles * intervalMillis;
+            advances.add(new Object[]{villager.getId(), newLast, last});
+            Map<String, Double> yield = expectedYield(villager, cycles);
+            if (!yield.isEmpty()) {
+                expected.put(villager.getId(), yield);
+            }
+        }
+        if (advances.isEmpty() && uninitialized.isEmpty()) {
+            return;
+        }
+
+        // 写入开始前加载仓库缓存，写入期间的加载不会写入缓存
+        WarehouseManager.getCurrentStorage(village.getId());
+        Map<String, Integer> credited = new LinkedHashMap<>();
+        CacheManager.beginWarehouseWrite(village.getId());
+        try {
+            credited = apply(village, advances, uninitialized, expected, now);
+        } catch (SQLException e) {
+            VillagerPro.getInstance().getLogger().warning("结算离线产出失败：" + e.getMessage());
+            return;
+        } finally {
+            CacheManager.endWarehouseWrite(village.getId(), credited);
+        }
+        if (credited.isEmpty()) {
+            return;
+        }
+
+        ChangeLog.record(ChangeLog.EntityType.WAREHOUSE, village.getId());
+
+        int total = 0;
+        for (int amount : credited.values()) {
+            total += amount;
+        }
+        final int finalTotal = total;
+        Bukkit.getScheduler().runTask(VillagerPro.getInstance(), () -> {
+            Player player = Bukkit.getPlayer(playerUUID);
+            if (player != null) {
+                player.sendMessage("§a离线期间村民为你的仓库生产了 §e" + finalTotal + " §a件物品");
+            }
+        });
+    }
+
+    /**
+     * 计算村民在若干工作周期内的期望产出
+     * 每个周期以 probability 的概率产出 amount 个物品，物品按权重从 work_items 中选择，
+     * 因此每种物品的期望产出为 周期数 × probability × amount × 该物品的权重占比
+     * @return 物品类型 -> 期望数量
+     */
+    private static Map<String, Double> expectedYield(VillagerData villager, long cycles) {
+        Map<String, Double> yield = new LinkedHashMap<>();
+        ProfessionRegistry.Profession profession = ProfessionRegistry.get(villager.getProfession());
+        if (profession == null || !profession.hasProduction()) {
+            return yield;
+        }
+        int amount = WorkPipeline.calculateProductionAmount(villager.snapshot(), profession);
+        double perCycle = cycles * profession.getProbability() * amount;
+        for (int i = 0; i < profession.getItemCount(); i++) {
+            yield.merge(profession.getItem(i), perCycle * profession.getItemShare(i), Double::sum);
+        }
+        return yield;
+    }
+
+    /**
+     * 在一个事务中推进最后工作时间并批量写入仓库
+     * 最后工作时间使用比较并设置，结算期间被其他服务器或线程推进过的村民不计入产出
+     * @return 实际写入仓库的物品类型 -> 数量
+     */
+    private static Map<String, Integer> apply(Village village, List<Object[]> advances, List<Integer> uninitialized,
+                                              Map<Integer, Map<String, Double>> expected, long now) throws SQLException {
+        Map<String, Integer> credited = new LinkedHashMap<>();
+        try (Connection connection = DatabaseManager.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                if (!uninitialized.isEmpty()) {
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "UPDATE villagers SET last_work_at = ? WHERE id = ? AND last_work_at IS NULL")) {
+                        for (int villagerId : uninitialized) {
+                            statement.setLong(1, now);
+                            statement.setInt(2, villagerId);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+
+                Map<String, Double> totals = new LinkedHashMap<>();
+                if (!advances.isEmpty()) {
+                    int[] results;
+                    try (PreparedStatement statement = connection.prepareStatement(
+                            "UPDATE villagers SET last_work_at = ? WHERE id = ? AND last_work_at = ?")) {
+                        for (Object[] advance : advances) {
+                            statement.setLong(1, (Long) advance[1]);
+                            statement.setInt(2, (Integer) advance[0]);
+                            statement.setLong(3, (Long) advance[2]);
+                            statement.addBatch();
+                        }
+                        results = statement.executeBatch();
+                    }
+                    for (int i = 0; i < advances.size(); i++) {
+                        Map<String, Double> yield = expected.get((Integer) advances.get(i)[0]);
+                        // 部分驱动在批量执行时返回 SUCCESS_NO_INFO（-2），视为成功
+                        if (yield != null && results[i] != 0) {
+                            yield.forEach((itemType, amount) -> totals.merge(itemType, amount, Double::sum));
+                        }
+                    }
+                }
+
+                credited.putAll(roundWithinCapacity(village, totals));
+                if (!credited.isEmpty()) {
+                    try (PreparedStatement statement = connection.prepareStatement(DatabaseManager.getBackend()
+                            .upsertAdd("warehouse", new String[]{"village_id", "item_type"}, "amount"))) {
+                        for (Map.Entry<String, Integer> entry : credited.entrySet()) {
+                            statement.setInt(1, village.getId());
+                            statement.setString(2, entry.getKey());
+                            statement.setInt(3, entry.getValue());
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        return credited;
+    }
+
+    /**
+     * 将期望产出取整（小数部分按概率进位，总体期望不变），总量超过仓库剩余容量时按比例缩减
+     * @return 物品类型 -> 数量（不含0）
+     */
+    private static Map<String, Integer> roundWithinCapacity(Village village, Map<String, Double> totals) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        double sum = 0;
+        for (double amount : totals.values()) {
+            sum += amount;
+        }
+        if (sum <= 0) {
+            return result;
+        }
+        int free = WarehouseManager.getWarehouseCapacity(village) - WarehouseManager.getCurrentStorage(village.getId());
+        if (free <= 0) {
+            return result;
+        }
+        double scale = sum > free ? free / sum : 1.0;
+        int remaining = free;
+        for (Map.Entry<String, Double> entry : totals.entrySet()) {
+            double value = entry.getValue() * scale;
+            int amount = (int) Math.floor(value);
+            if (ThreadLocalRandom.current().nextDouble() < value - amount) {
+                amount++;
+            }
+            amount = Math.min(amount, remaining);
+            if (amount > 0) {
+                result.put(entry.getKey(), amount);
+                remaining -= amount;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,245 @@
+package cn.popcraft.villagerpro.scheduler;
+
+import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.AsyncRepository;
+import cn.popcraft.villagerpro.database.ChangeLog;
+import cn.popcraft.villagerpro.database.DatabaseManager;
+import cn.popcraft.villagerpro.database.WriteBehindQueue;
+import cn.popcraft.villagerpro.managers.CacheManager;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
+import cn.popcraft.villagerpro.managers.VillagerManager;
+import cn.popcraft.villagerpro.managers.VillagerUpgradeManager;
+import cn.popcraft.villagerpro.managers.WarehouseManager;
+import cn.popcraft.villagerpro.models.VillagerData;
+import cn.popcraft.villagerpro.models.VillagerSnapshot;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 村民工作流水线
+ * 一个工作周期分为三个阶段：
+ * 1. 主线程：{@link WorkScheduler} 收集到期村民的快照（实体是否加载、是否在工作范围内）；
+ * 2. 工作线程：根据快照计算产出物品、数量和经验，并将结果写入缓存和写回队列；
+ * 3. 主线程：只执行需要接触实体或玩家的效果。
+ * 工作线程池已满时在当前线程中直接计算，不丢失产出
+ */
+public class WorkPipeline {
+
+    /**
+     * 主线程收集的村民工作快照
+     */
+    static final class WorkInput {
+        private final VillagerSnapshot villager;
+        private final UUID ownerUUID;
+
+        WorkInput(VillagerSnapshot villager, UUID ownerUUID) {
+            this.villager = villager;
+            this.ownerUUID = ownerUUID;
+        }
+    }
+
+    /**
+     * 工作线程计算的产出结果
+     */
+    private static final class WorkResult {
+        private final VillagerSnapshot villager;
+        private final UUID ownerUUID;
+        private final String itemType;
+        private final int amount;
+
+        private WorkResult(VillagerSnapshot villager, UUID ownerUUID, String itemType, int amount) {
+            this.villager = villager;
+            this.ownerUUID = ownerUUID;
+            this.itemType = itemType;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * 提交一批工作快照（在主线程中调用）
+     * @param batch 本 tick 收集的工作快照
+     */
+    static void submit(List<WorkInput> batch) {
+        if (!AsyncRepository.tryExecute(() -> process(batch))) {
+            process(batch);
+        }
+    }
+
+    /**
+     * 计算并写入一批村民的产出（工作线程阶段）
+     */
+    private static void process(List<WorkInput> batch) {
+        List<WorkResult> results = new ArrayList<>();
+        for (WorkInput input : batch) {
+            try {
+                WorkResult result = compute(input);
+                if (result != null) {
+                    results.add(result);
+                }
+            } catch (RuntimeException e) {
+                VillagerPro.getInstance().getLogger().warning("计算村民产出失败：" + e.getMessage());
+            }
+        }
+        if (results.isEmpty()) {
+            return;
+        }
+
+        persist(results);
+
+        if (ProfessionRegistry.isDebug()) {
+            Bukkit.getScheduler().runTask(VillagerPro.getInstance(), () -> applyEffects(results));
+        }
+    }
+
+    /**
+     * 根据快照计算产出
+     * @return 产出结果，本周期未产出时返回null
+     */
+    private static WorkResult compute(WorkInput input) {
+        VillagerSnapshot villager = input.villager;
+        ProfessionRegistry.Profession profession = ProfessionRegistry.get(villager.getProfession());
+        if (profession == null || !profession.hasProduction()) {
+            return null;
+        }
+
+        // 根据概率决定是否产出
+        if (ThreadLocalRandom.current().nextDouble() > profession.getProbability()) return null;
+
+        // 按权重随机选择一个工作物品
+        String itemType = profession.pickItem(ThreadLocalRandom.current());
+
+        // 计算实际产出数量（考虑村民等级等因素）
+        int amount = calculateProductionAmount(villager, profession);
+        return new WorkResult(villager, input.ownerUUID, itemType, amount);
+    }
+
+    /**
+     * 本周期一个村庄的产出累加
+     */
+    private static final class VillageDelta {
+        private final UUID ownerUUID;
+        private final Map<String, Integer> items = new LinkedHashMap<>();
+        private final Map<Integer, Integer> experience = new LinkedHashMap<>();
+
+        private VillageDelta(UUID ownerUUID) {
+            this.ownerUUID = ownerUUID;
+        }
+    }
+
+    /**
+     * 写入产出和经验（更新缓存，数据库写入由写回队列完成）
+     * 同一村庄本周期的所有物品增量合并为一条多行累加语句，有产出的村民的等级、经验和最后工作时间
+     * 合并为一条多行更新语句，作为一组提交到写回队列，在同一个事务中执行；
+     * 本周期所有村庄的变更记录每种类型合并为一条多行插入语句
+     */
+    private static void persist(List<WorkResult> results) {
+        Map<Integer, VillageDelta> deltas = new LinkedHashMap<>();
+        for (WorkResult result : results) {
+            VillageDelta delta = deltas.computeIfAbsent(result.villager.getVillageId(), id -> new VillageDelta(result.ownerUUID));
+            delta.items.merge(result.itemType, result.amount, Integer::sum);
+            delta.experience.merge(result.villager.getId(), 1, Integer::sum);
+        }
+
+        long now = System.currentTimeMillis();
+        List<Integer> warehouseChanges = new ArrayList<>();
+        List<Integer> villagerChanges = new ArrayList<>();
+        for (Map.Entry<Integer, VillageDelta> entry : deltas.entrySet()) {
+            int villageId = entry.getKey();
+            VillageDelta delta = entry.getValue();
+            List<WriteBehindQueue.Write> writes = new ArrayList<>();
+            // 添加到仓库
+            WriteBehindQueue.Write warehouseWrite = WarehouseManager.prepareAddItems(villageId, delta.items);
+            if (warehouseWrite != null) {
+                writes.add(warehouseWrite);
+            }
+
+            // 增加村民经验（在最新的村民数据上累加，不覆盖快照之后的修改）
+            List<VillagerData> villagers = new ArrayList<>(delta.experience.size());
+            for (Map.Entry<Integer, Integer> experience : delta.experience.entrySet()) {
+                VillagerData villager = VillagerManager.getVillagerById(experience.getKey());
+                if (villager != null) {
+                    villager.addExperience(experience.getValue());
+                    villagers.add(villager);
+                }
+            }
+            // 同时记录有产出的村民的最后工作时间，离线补偿从此刻开始计算
+            WriteBehindQueue.Write villagerWrite = VillagerManager.prepareExperienceUpdate(villagers,
+                    OfflineProduction.shouldRecordWork(delta.ownerUUID) ? now : null);
+            if (villagerWrite != null) {
+                writes.add(villagerWrite);
+                villagerChanges.add(villageId);
+            }
+
+            if (warehouseWrite != null) {
+                // 写操作入队后再更新仓库缓存，与同时进行的仓库加载互斥
+                CacheManager.beginWarehouseWrite(villageId);
+                try {
+                    DatabaseManager.queueWrites(writes);
+                } finally {
+                    CacheManager.endWarehouseWrite(villageId, delta.items);
+                }
+                warehouseChanges.add(villageId);
+            } else {
+                DatabaseManager.queueWrites(writes);
+            }
+        }
+        // 变更记录排在数据写入之后，村民经验按村庄合并为一条记录
+        ChangeLog.recordAll(ChangeLog.EntityType.WAREHOUSE, warehouseChanges);
+        ChangeLog.recordAll(ChangeLog.EntityType.VILLAGE_VILLAGERS, villagerChanges);
+    }
+
+    /**
+     * 执行需要在主线程中完成的效果
+     */
+    private static void applyEffects(List<WorkResult> results) {
+        for (WorkResult result : results) {
+            Player player = Bukkit.getPlayer(result.ownerUUID);
+            if (player != null) {
+                player.sendMessage("§7[调试] 村民 " + result.villager.getProfession() + " 产出 " +
+                        result.itemType + " x" + result.amount);
+            }
+        }
+    }
+
+    /**
+     * 计算实际产出数量
+     * @param villager 村民
+     * @param profession 村民的职业
+     * @return 实际产出数量
+     */
+    static int calculateProductionAmount(VillagerSnapshot villager, ProfessionRegistry.Profession profession) {
+        boolean debug = ProfessionRegistry.isDebug();
+
+        // 获取村民技能加成
+        Map<String, Integer> skills = null;
+        try {
+            // 安全地获取村民技能，必要时使用数据库查询
+            skills = VillagerUpgradeManager.getVillagerUpgrades(villager.getId());
+        } catch (Exception e) {
+            // 如果技能获取失败，至少保证等级加成生效
+            if (debug) {
+                VillagerPro.getInstance().getLogger().warning("获取村民技能时出错: " + e.getMessage());
+            }
+        }
+
+        int totalAmount = profession.getProductionAmount(villager.getLevel(), skills);
+
+        // 调试信息
+        if (debug) {
+            VillagerPro.getInstance().getLogger().info(String.format(
+                "村民 %s (等级 %d): 基础产出 %d, 等级加成 %d, 技能加成 %d, 总产出 %d",
+                villager.getProfession(), villager.getLevel(), profession.getBaseAmount(),
+                profession.getLevelBonus(villager.getLevel()), profession.getSkillBonus(skills), totalAmount
+            ));
+        }
+
+        return totalAmount;
+    }
+}
@@ -1,212 +1,327 @@
 package cn.popcraft.villagerpro.scheduler;
 
 import cn.popcraft.villagerpro.VillagerPro;
+import cn.popcraft.villagerpro.database.AsyncRepository;
+import cn.popcraft.villagerpro.database.WorldStateLoader;
+import cn.popcraft.villagerpro.managers.EntityRegistry;
+import cn.popcraft.villagerpro.managers.ProfessionRegistry;
 import cn.popcraft.villagerpro.managers.VillageManager;
 import cn.popcraft.villagerpro.managers.VillagerManager;
-import cn.popcraft.villagerpro.managers.WarehouseManager;
 import cn.popcraft.villagerpro.models.Village;
 import cn.popcraft.villagerpro.models.VillagerData;
 import org.bukkit.Bukkit;
-import org.bukkit.Material;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.ItemStack;
+import org.bukkit.entity.Villager;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.scheduler.BukkitTask;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
+/**
+ * 村民工作调度器
+ * 每个村民按各自的到期 tick 放入时间轮，初始到期时间按村庄在一个工作间隔内随机分散
+ * （同一村庄的村民在同一 tick 到期，产出可以按村庄合并写入），
+ * 每 tick 只处理到期的村民，并受每 tick 时间预算（微秒）限制，超出预算的村民顺延到下一 tick，
+ * 产出开销平摊到每个 tick，不再集中在同一个 tick 内。
+ * 主线程只收集到期村民的工作快照，产出计算和写入交给 {@link WorkPipeline}
+ */
 public class WorkScheduler {
+    // 时间轮槽位数（2的幂），到期时间超过一圈的村民在槽位中等待对应圈数
+    static final int WHEEL_SIZE = 512;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // 启动时批量加载失败后的重试间隔（ticks）
+    private static final long PRELOAD_RETRY_TICKS = 600L;
+
     private static BukkitTask workTask;
+    private static BukkitTask preloadRetryTask;
+    
+    // 以下字段只在主线程中访问
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<WorkEntry>[] wheel = new ArrayDeque[WHEEL_SIZE];
+    // 每个村民当前有效的到期 tick，时间轮中到期 tick 与此不一致的条目已失效
+    private static final Map<Integer, Long> dueTicks = new HashMap<>();
+    // 每个村庄在工作间隔内的随机相位，同一村庄的村民在同一 tick 到期
+    private static final Map<Integer, Long> villagePhases = new HashMap<>();
+    // 已到期但因时间预算不足顺延的村民
+    private static final ArrayDeque<WorkEntry> ready = new ArrayDeque<>();
+    private static long currentTick = 0;
+    private static long workInterval;
+    private static long budgetNanos;
     
-    // 存储每个村民的下次产出时间
-    private static Map<Integer, Long> nextWorkTime = new HashMap<>();
+    static {
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+    }
+    
+    /**
+     * 时间轮条目
+     */
+    private static final class WorkEntry {
+        private final int villagerId;
+        private final int villageId;
+        private final UUID ownerUUID;
+        private final long dueTick;
+        
+        private WorkEntry(int villagerId, int villageId, UUID ownerUUID, long dueTick) {
+            this.villagerId = villagerId;
+            this.villageId = villageId;
+            this.ownerUUID = ownerUUID;
+            this.dueTick = dueTick;
+        }
+    }
     
     /**
      * 初始化工作调度器
      */
     public static void initialize() {
-        long interval = VillagerPro.getInstance().getConfig().getLong("villager.work_interval_ticks", 2400L);
+        workInterval = Math.max(1L, VillagerPro.getInstance().getConfig().getLong("villager.work_interval_ticks", 2400L));
+        budgetNanos = Math.max(1L, VillagerPro.getInstance().getConfig().getLong("villager.work_budget_micros", 2000L)) * 1000L;
         
         workTask = new BukkitRunnable() {
             @Override
             public void run() {
-                performWork();
+                tick();
             }
-        }.runTaskTimer(VillagerPro.getInstance(), 0L, interval);
+        }.runTaskTimer(VillagerPro.getInstance(), 1L, 1L);
         
-        // 初始化所有村民的下次产出时间
-        initializeWorkTimes();
+        // 批量加载世界数据，并初始化所有村民的下次产出时间
+        if (VillagerPro.getInstance().getConfig().getBoolean("database.preload.async", true)) {
+            preloadAsync();
+        } else {
+            initializeWorkTimes(WorldStateLoader.load());
+        }
+    }
+    
+    /**
+     * 在数据库线程池中批量加载世界数据，线程池已满或加载失败时稍后重试
+     */
+    private static void preloadAsync() {
+        preloadRetryTask = null;
+        AsyncRepository.thenSyncOrElse(AsyncRepository.supply(WorldStateLoader::load), null, WorkScheduler::initializeWorkTimes);
     }
     
     /**
      * 初始化所有村民的下次产出时间
+     * @param state 批量加载的世界数据，加载失败时为null
      */
-    private static void initializeWorkTimes() {
-        for (Village village : VillageManager.getAllVillages()) {
-            List<VillagerData> villagers = VillagerManager.getVillagers(village.getId());
-            for (VillagerData villager : villagers) {
-                long workInterval = VillagerPro.getInstance().getConfig().getLong("villager.work_interval_ticks", 2400L);
-                nextWorkTime.put(villager.getId(), System.currentTimeMillis() + workInterval * 50);
+    private static void initializeWorkTimes(WorldStateLoader.WorldState state) {
+        if (state == null) {
+            // 调度器已关闭时不再重试；重试前先将在线玩家的村民加入调度，之后加入的玩家由 onJoin 加入
+            if (workTask != null) {
+                VillagerPro.getInstance().getLogger().warning("批量加载世界数据失败，" + PRELOAD_RETRY_TICKS / 20 + " 秒后重试");
+                for (Player player : Bukkit.getOnlinePlayers()) {
+                    onJoin(player.getUniqueId());
+                }
+                preloadRetryTask = Bukkit.getScheduler().runTaskLater(VillagerPro.getInstance(),
+                        WorkScheduler::preloadAsync, PRELOAD_RETRY_TICKS);
+            }
+            return;
+        }
+        WorldStateLoader.apply(state);
+        for (Village village : state.getVillages()) {
+            for (VillagerData villager : state.getVillagers(village.getId())) {
+                schedule(villager.getId(), village.getId(), village.getOwnerUUID());
             }
         }
     }
     
     /**
-     * 执行工作
+     * 玩家加入：将其村庄的村民加入工作调度（已在调度中的不变）
+     * 启动时批量加载失败或村民由其他服务器招募时在这里补上；村民列表优先使用缓存
+     * @param playerUUID 玩家UUID
      */
-    private static void performWork() {
-        // 确保在主线程中执行
-        if (!Bukkit.isPrimaryThread()) {
-            Bukkit.getScheduler().runTask(VillagerPro.getInstance(), () -> performWork());
-            return;
-        }
-        
-        long currentTime = System.currentTimeMillis();
-        long workInterval = VillagerPro.getInstance().getConfig().getLong("villager.work_interval_ticks", 2400L) * 50;
-        
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            Village village = VillageManager.getVillage(player.getUniqueId());
-            if (village == null) continue;
-
+    public static void onJoin(UUID playerUUID) {
+        Runnable task = () -> {
+            Village village = VillageManager.getVillage(playerUUID);
+            if (village == null) {
+                return;
+            }
             List<VillagerData> villagers = VillagerManager.getVillagers(village.getId());
-            for (VillagerData villager : villagers) {
-                // 检查是否到工作时间
-                Long workTime = nextWorkTime.get(villager.getId());
-                if (workTime != null && currentTime >= workTime) {
-                    // 检查村民是否在线且在玩家附近（使用村民的实际工作范围）
-                    if (villager.getEntity() != null && 
-                        player.getWorld().equals(villager.getEntity().getWorld()) &&
-                        player.getLocation().distance(villager.getEntity().getLocation()) <= villager.getWorkRange()) {
-                        
-                        // 调试信息
-                        if (VillagerPro.getInstance().getConfig().getBoolean("debug", false)) {
-                            player.sendMessage("§7[调试] 村民 " + villager.getProfession() + " 开始工作");
-                        }
-                        
-                        performVillagerWork(villager, village);
-                    } else {
-                        // 调试信息 - 说明为什么没有工作
-                        if (VillagerPro.getInstance().getConfig().getBoolean("debug", false)) {
-                            String reason = "";
-                            if (villager.getEntity() == null) {
-                                reason = "村民实体不存在";
-                            } else if (!player.getWorld().equals(villager.getEntity().getWorld())) {
-                                reason = "村民在不同世界";
-                            } else {
-                                double distance = player.getLocation().distance(villager.getEntity().getLocation());
-                                int workRange = villager.getWorkRange();
-                                reason = "距离太远(" + String.format("%.1f", distance) + "格 > " + workRange + "格)";
-                            }
-                            player.sendMessage("§7[调试] 村民 " + villager.getProfession() + " 未工作: " + reason);
-                        }
-                    }
-                    
-                    // 设置下次工作时间
-                    nextWorkTime.put(villager.getId(), currentTime + workInterval);
-                }
+            if (villagers.isEmpty() || !VillagerPro.getInstance().isEnabled()) {
+                return;
             }
+            Bukkit.getScheduler().runTask(VillagerPro.getInstance(), () -> {
+                for (VillagerData villager : villagers) {
+                    schedule(villager.getId(), village.getId(), playerUUID);
+                }
+            });
+        };
+        // 线程池已满时改由服务器的异步调度器执行，村民一定会加入调度
+        if (!AsyncRepository.tryExecute(task)) {
+            Bukkit.getScheduler().runTaskAsynchronously(VillagerPro.getInstance(), task);
         }
     }
     
     /**
-     * 执行单个村民的工作
-     * @param villager 村民
-     * @param village 村庄
+     * 将村民加入工作调度，首次到期时间按村庄的随机相位在一个工作间隔内分散（已在调度中的村民不变）
+     * 必须在主线程中调用
+     * @param villagerId 村民ID
+     * @param villageId 村庄ID
+     * @param ownerUUID 村庄拥有者UUID
      */
-    private static void performVillagerWork(VillagerData villager, Village village) {
-        String profession = villager.getProfession();
-        String path = "villager.professions." + profession;
-        
-        if (VillagerPro.getInstance().getConfig().contains(path)) {
-            // 获取该职业的工作物品列表
-            List<String> workItems = VillagerPro.getInstance().getConfig().getStringList(path + ".work_items");
-            if (workItems.isEmpty()) return;
-            
-            // 获取基础产出数量
-            int baseAmount = VillagerPro.getInstance().getConfig().getInt(path + ".base_amount", 1);
-            
-            // 获取概率
-            double probability = VillagerPro.getInstance().getConfig().getDouble(path + ".probability", 1.0);
-            
-            // 根据概率决定是否产出
-            if (ThreadLocalRandom.current().nextDouble() > probability) return;
-            
-            // 随机选择一个工作物品
-            String itemType = workItems.get(ThreadLocalRandom.current().nextInt(workItems.size()));
-            
-            // 计算实际产出数量（考虑村民等级等因素）
-            int amount = calculateProductionAmount(villager, baseAmount);
-            
-            // 添加到仓库
-            WarehouseManager.addWarehouseItem(village.getId(), itemType, amount);
-            
-            // 增加村民经验
-            villager.addExperience(1);
-            VillagerManager.updateVillager(villager);
+    public static void schedule(int villagerId, int villageId, UUID ownerUUID) {
+        if (!dueTicks.containsKey(villagerId)) {
+            long phase = villagePhases.computeIfAbsent(villageId, id -> ThreadLocalRandom.current().nextLong(workInterval));
+            scheduleAt(new WorkEntry(villagerId, villageId, ownerUUID, firstDueTick(currentTick, phase, workInterval)));
         }
     }
     
     /**
-     * 计算实际产出数量
-     * @param villager 村民
-     * @param baseAmount 基础数量
-     * @return 实际产出数量
+     * 将村民移出工作调度（时间轮中的条目在到期时丢弃）
+     * 必须在主线程中调用
+     * @param villagerId 村民ID
+     */
+    public static void unschedule(int villagerId) {
+        dueTicks.remove(villagerId);
+    }
+    
+    private static void scheduleAt(WorkEntry entry) {
+        dueTicks.put(entry.villagerId, entry.dueTick);
+        wheel[slotOf(entry.dueTick)].add(entry);
+    }
+    
+    /**
+     * 首次到期 tick：与村庄相位对齐，即当前 tick 之后第一个满足 (tick - 相位) 为工作间隔整数倍的 tick
+     * @param currentTick 当前 tick
+     * @param phase 村庄相位
+     * @param interval 工作间隔
+     * @return 到期 tick
+     */
+    static long firstDueTick(long currentTick, long phase, long interval) {
+        long first = currentTick + 1;
+        return first + Math.floorMod(phase - first, interval);
+    }
+    
+    /**
+     * 下次到期 tick：从本次应到期的 tick 算起，因时间预算顺延执行不会累积为漂移；
+     * 积压超过一个工作间隔时在下一 tick 到期
+     * @param dueTick 本次应到期的 tick
+     * @param currentTick 当前 tick
+     * @param interval 工作间隔
+     * @return 到期 tick
+     */
+    static long nextDueTick(long dueTick, long currentTick, long interval) {
+        return Math.max(dueTick + interval, currentTick + 1);
+    }
+    
+    /**
+     * 到期 tick 所在的时间轮槽位
      */
-    private static int calculateProductionAmount(VillagerData villager, int baseAmount) {
-        // 基础数量加上村民等级的影响
-        int levelBonus = (villager.getLevel() - 1) * 1; // 每级增加1个产出
+    static int slotOf(long tick) {
+        return (int) (tick & WHEEL_MASK);
+    }
+    
+    /**
+     * 每 tick 执行：取出当前槽位中到期的村民，在时间预算内依次执行工作
+     */
+    private static void tick() {
+        currentTick++;
+        ArrayDeque<WorkEntry> slot = wheel[slotOf(currentTick)];
+        for (int i = slot.size(); i > 0; i--) {
+            WorkEntry entry = slot.poll();
+            if (entry.dueTick > currentTick) {
+                // 还需要等待若干圈
+                slot.add(entry);
+            } else if (isCurrent(entry)) {
+                ready.add(entry);
+            }
+        }
         
-        // 获取村民技能加成
-        int skillBonus = 0;
-        try {
-            // 安全地获取村民技能，必要时使用数据库查询
-            Map<String, Integer> skills = villager.getSkills();
-            if (skills != null) {
-                switch (villager.getProfession()) {
-                    case "farmer":
-                        // 农民的高效收割技能加成
-                        int efficientHarvestLevel = skills.getOrDefault("efficient_harvest", 0);
-                        skillBonus += efficientHarvestLevel * 1; // 每级高效收割增加1个产出
-                        break;
-                    case "fisherman":
-                        // 渔夫的快速垂钓技能加成
-                        int fastFishingLevel = skills.getOrDefault("fast_fishing", 0);
-                        skillBonus += fastFishingLevel * 1; // 每级快速垂钓增加1个产出
-                        break;
-                    case "shepherd":
-                        // 牧羊人的高效剪毛技能加成
-                        int efficientShearingLevel = skills.getOrDefault("efficient_shearing", 0);
-                        skillBonus += efficientShearingLevel * 1; // 每级高效剪毛增加1个产出
-                        break;
-                    case "miner":
-                        // 矿工的快速挖掘技能加成
-                        int quickMiningLevel = skills.getOrDefault("quick_mining", 0);
-                        skillBonus += quickMiningLevel * 1; // 每级快速挖掘增加1个产出
-                        break;
+        if (ready.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean debug = ProfessionRegistry.isDebug();
+        List<WorkPipeline.WorkInput> batch = new ArrayList<>();
+        WorkEntry entry;
+        // 每 tick 至少处理一个村民，保证积压能够消化
+        while ((entry = ready.poll()) != null) {
+            if (isCurrent(entry)) {
+                scheduleAt(new WorkEntry(entry.villagerId, entry.villageId, entry.ownerUUID,
+                        nextDueTick(entry.dueTick, currentTick, workInterval)));
+                WorkPipeline.WorkInput input = gather(entry, debug);
+                if (input != null) {
+                    batch.add(input);
                 }
             }
-        } catch (Exception e) {
-            // 如果技能获取失败，至少保证等级加成生效
-            if (VillagerPro.getInstance().getConfig().getBoolean("debug", false)) {
-                VillagerPro.getInstance().getLogger().warning("获取村民技能时出错: " + e.getMessage());
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
             }
         }
-        
-        int totalAmount = baseAmount + levelBonus + skillBonus;
-        
-        // 调试信息
-        if (VillagerPro.getInstance().getConfig().getBoolean("debug", false)) {
-            VillagerPro.getInstance().getLogger().info(String.format(
-                "村民 %s (等级 %d): 基础产出 %d, 等级加成 %d, 技能加成 %d, 总产出 %d",
-                villager.getProfession(), villager.getLevel(), baseAmount, levelBonus, skillBonus, totalAmount
-            ));
+        if (!batch.isEmpty()) {
+            WorkPipeline.submit(batch);
+        }
+    }
+    
+    private static boolean isCurrent(WorkEntry entry) {
+        Long dueTick = dueTicks.get(entry.villagerId);
+        return dueTick != null && dueTick == entry.dueTick;
+    }
+    
+    /**
+     * 收集到期村民的工作快照（主线程阶段）
+     * 只读取实体和玩家的位置等必须在主线程获取的信息，产出计算和写入在工作线程中完成。
+     * 拥有者不在线时不读取村民数据，在线玩家的村庄数据已由会话预加载固定在缓存中
+     * @param entry 时间轮条目
+     * @param debug 是否输出调试信息
+     * @return 村民在工作范围内时返回工作快照，否则返回null
+     */
+    private static WorkPipeline.WorkInput gather(WorkEntry entry, boolean debug) {
+        Player player = Bukkit.getPlayer(entry.ownerUUID);
+        if (player == null) {
+            return null;
+        }
+        VillagerData villager = VillagerManager.getVillagerById(entry.villagerId);
+        if (villager == null || villager.getVillageId() != entry.villageId) {
+            // 村民已被移除
+            unschedule(entry.villagerId);
+            return null;
+        }
+        // 检查村民是否在线且在玩家附近（使用村民的实际工作范围）
+        Villager entity = villager.getEntity();
+        if (entity != null && 
+            player.getWorld().equals(entity.getWorld()) &&
+            player.getLocation().distance(entity.getLocation()) <= villager.getWorkRange()) {
+            
+            // 调试信息
+            if (debug) {
+                player.sendMessage("§7[调试] 村民 " + villager.getProfession() + " 开始工作");
+            }
+            
+            return new WorkPipeline.WorkInput(villager.snapshot(), entry.ownerUUID);
         }
         
-        return totalAmount;
+        // 调试信息 - 说明为什么没有工作
+        if (debug) {
+            String reason = "";
+            if (entity == null) {
+                reason = villager.getEntityStatus() == EntityRegistry.Status.UNLOADED
+                        ? "村民所在区块未加载" : "村民实体不存在";
+            } else if (!player.getWorld().equals(entity.getWorld())) {
+                reason = "村民在不同世界";
+            } else {
+                double distance = player.getLocation().distance(entity.getLocation());
+                int workRange = villager.getWorkRange();
+                reason = "距离太远(" + String.format("%.1f", distance) + "格 > " + workRange + "格)";
+            }
+            player.sendMessage("§7[调试] 村民 " + villager.getProfession() + " 未工作: " + reason);
+        }
+        return null;
+    }
+    
+    /**
+     * 获取工作间隔
+     * @return 工作间隔（ticks）
+     */
+    public static long getWorkIntervalTicks() {
+        return workInterval;
     }
     
     /**
@@ -215,11 +330,11 @@ public class WorkScheduler {
      * @return 剩余时间，如果<=0则表示可以工作
      */
     public static long getRemainingWorkTime(int villagerId) {
-        Long workTime = nextWorkTime.get(villagerId);
-        if (workTime == null) {
+        Long dueTick = dueTicks.get(villagerId);
+        if (dueTick == null) {
             return 0;
         }
-        return workTime - System.currentTimeMillis();
+        return (dueTick - currentTick) * 50;
     }
     
     /**
@@ -237,6 +352,17 @@ public class WorkScheduler {
     public static void shutdown() {
         if (workTask != null) {
             workTask.cancel();
+            workTask = null;
+        }
+        if (preloadRetryTask != null) {
+            preloadRetryTask.cancel();
+            preloadRetryTask = null;
+        }
+        dueTicks.clear();
+        villagePhases.clear();
+        ready.clear();
+        for (ArrayDeque<WorkEntry> slot : wheel) {
+            slot.clear();
         }
     }
 }
\ No newline at end of file
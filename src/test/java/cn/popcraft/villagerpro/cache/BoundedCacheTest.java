@@ -0,0 +1,106 @@
+package cn.popcraft.villagerpro.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedCacheTest {
+
+    @Test
+    void staysWithinMaxWeight() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 100, 0);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "v" + i);
+        }
+
+        assertTrue(cache.weightedSize() <= 100);
+        assertEquals(cache.size(), cache.weightedSize());
+    }
+
+    @Test
+    void frequentlyReadEntriesSurviveScan() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 100, 0);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v" + i);
+        }
+        // 前一半条目被多次读取，晋升到保护区
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                assertNotNull(cache.getIfPresent(i));
+            }
+        }
+
+        // 只写入一次的新数据不会挤掉热点数据
+        for (int i = 1000; i < 3000; i++) {
+            cache.put(i, "v" + i);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertNotNull(cache.peek(i), "热点条目被淘汰: " + i);
+        }
+    }
+
+    @Test
+    void weigherCountsTowardsCapacity() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 100, 0, String::length, null);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "0123456789");
+        }
+
+        assertTrue(cache.weightedSize() <= 100);
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    void reportsRemovalCauses() {
+        List<BoundedCache.RemovalCause> causes = new ArrayList<>();
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 10, 0, null,
+                (key, value, cause) -> causes.add(cause));
+
+        cache.put(1, "a");
+        cache.put(1, "b");
+        assertEquals(List.of(BoundedCache.RemovalCause.REPLACED), causes);
+        assertEquals("b", cache.invalidate(1));
+        assertEquals(BoundedCache.RemovalCause.EXPLICIT, causes.get(1));
+
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, "v");
+        }
+        assertTrue(causes.contains(BoundedCache.RemovalCause.SIZE));
+    }
+
+    @Test
+    void pinnedKeysAreNotEvicted() {
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 10, 0);
+        cache.pin(-1);
+        cache.put(-1, "pinned");
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v" + i);
+        }
+
+        assertEquals("pinned", cache.peek(-1));
+        assertEquals(1, cache.pinnedWeight());
+
+        cache.unpin(-1);
+        assertEquals(0, cache.pinnedWeight());
+        assertTrue(cache.weightedSize() <= 10);
+    }
+
+    @Test
+    void expiredEntriesAreDropped() throws InterruptedException {
+        BoundedCache<Integer, String> cache = new BoundedCache<>("test", 10, 20);
+        CoarseClock.tick();
+        cache.put(1, "a");
+        CoarseClock.tick();
+        assertEquals("a", cache.getIfPresent(1));
+
+        Thread.sleep(40);
+        CoarseClock.tick();
+        assertNull(cache.getIfPresent(1));
+    }
+}
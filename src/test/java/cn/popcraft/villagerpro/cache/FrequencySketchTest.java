@@ -0,0 +1,44 @@
+package cn.popcraft.villagerpro.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrequencySketchTest {
+
+    @Test
+    void countsAccessesUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        Integer key = 42;
+
+        assertEquals(0, sketch.frequency(key.hashCode()));
+        for (int i = 1; i <= 5; i++) {
+            sketch.increment(key.hashCode());
+            assertEquals(i, sketch.frequency(key.hashCode()));
+        }
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(key.hashCode());
+        }
+        assertEquals(15, sketch.frequency(key.hashCode()));
+    }
+
+    @Test
+    void halvesCountersAfterSampleSize() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        Integer hot = -1;
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(hot.hashCode());
+        }
+        assertEquals(15, sketch.frequency(hot.hashCode()));
+
+        // 计数器只会增加，频率下降说明已经衰减；采样上限为 10 * 64 次记录
+        int accesses = 0;
+        while (sketch.frequency(hot.hashCode()) == 15 && accesses < 2000) {
+            Integer other = accesses++;
+            sketch.increment(other.hashCode());
+        }
+        assertTrue(accesses <= 640, "超过采样上限仍未衰减");
+        assertTrue(sketch.frequency(hot.hashCode()) <= 7);
+    }
+}
@@ -0,0 +1,29 @@
+package cn.popcraft.villagerpro.database;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class SchemaMigratorTest {
+
+    @Test
+    void versionsAreConsecutiveFromOne() {
+        List<Integer> versions = SchemaMigrator.getVersions();
+
+        assertFalse(versions.isEmpty());
+        // 迁移按列表顺序执行，并以已记录的最大版本号判断哪些迁移尚未执行，版本号必须从1开始连续递增
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(i + 1, versions.get(i));
+        }
+    }
+
+    @Test
+    void latestVersionIsTheLastMigration() {
+        List<Integer> versions = SchemaMigrator.getVersions();
+
+        assertEquals(versions.get(versions.size() - 1), SchemaMigrator.getLatestVersion());
+    }
+}
@@ -0,0 +1,217 @@
+package cn.popcraft.villagerpro.database;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+
+    /**
+     * 记录执行的语句的假写连接，可以让指定SQL在执行时阻塞
+     */
+    private static final class FakeDatabase {
+        private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger commits = new AtomicInteger();
+        private final Map<String, CountDownLatch> gates = new ConcurrentHashMap<>();
+        private final Map<String, CountDownLatch> entered = new ConcurrentHashMap<>();
+
+        /**
+         * 执行该SQL时阻塞，直到返回的闸门打开
+         */
+        CountDownLatch block(String sql) {
+            CountDownLatch gate = new CountDownLatch(1);
+            gates.put(sql, gate);
+            entered.put(sql, new CountDownLatch(1));
+            return gate;
+        }
+
+        boolean awaitEntered(String sql) throws InterruptedException {
+            return entered.get(sql).await(5, TimeUnit.SECONDS);
+        }
+
+        Connection connection() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "prepareStatement":
+                                return statement((String) args[0]);
+                            case "getAutoCommit":
+                                return true;
+                            case "commit":
+                                commits.incrementAndGet();
+                                return null;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        private PreparedStatement statement(String sql) {
+            List<Object> params = new ArrayList<>();
+            List<List<Object>> batch = new ArrayList<>();
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setObject":
+                                params.add(args[1]);
+                                return null;
+                            case "addBatch":
+                                batch.add(new ArrayList<>(params));
+                                params.clear();
+                                return null;
+                            case "executeUpdate":
+                                execute(sql, params);
+                                params.clear();
+                                return 1;
+                            case "executeBatch":
+                                for (List<Object> row : batch) {
+                                    execute(sql, row);
+                                }
+                                int[] counts = new int[batch.size()];
+                                Arrays.fill(counts, 1);
+                                batch.clear();
+                                return counts;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        private void execute(String sql, List<Object> params) throws InterruptedException {
+            CountDownLatch gate = gates.get(sql);
+            if (gate != null) {
+                entered.get(sql).countDown();
+                gate.await(10, TimeUnit.SECONDS);
+            }
+            executed.add(sql + " " + params);
+        }
+    }
+
+    private final FakeDatabase database = new FakeDatabase();
+    // 批量阈值和时间阈值都足够大，只有 flush 会触发写入
+    private final WriteBehindQueue queue = new WriteBehindQueue(1000, 60_000L, database::connection);
+
+    @AfterEach
+    void tearDown() {
+        queue.shutdown();
+    }
+
+    @Test
+    void mergesWritesWithTheSameKey() {
+        queue.start();
+        queue.submit("villagers:1", "UPDATE v", 1);
+        queue.submit("villagers:1", "UPDATE v", 2);
+        queue.submit("villagers:1", "UPDATE v", 3);
+        queue.flush();
+
+        assertEquals(List.of("UPDATE v [3]"), database.executed);
+        assertEquals(2, queue.getMergedCount());
+    }
+
+    @Test
+    void keepsAppendedWritesAndSubmissionOrder() {
+        queue.start();
+        queue.append("warehouse:1", "ADD", 1);
+        queue.submit("villagers:1", "UPDATE v", 1);
+        queue.append("warehouse:1", "ADD", 2);
+        queue.flush();
+
+        assertEquals(List.of("ADD [1]", "UPDATE v [1]", "ADD [2]"), database.executed);
+        assertEquals(0, queue.getMergedCount());
+    }
+
+    @Test
+    void submitsGroupInOneTransaction() {
+        queue.start();
+        queue.submitAll(List.of(
+                WriteBehindQueue.Write.append("warehouse:1", "ADD", 5),
+                new WriteBehindQueue.Write("villagers:1", "UPDATE v", 1),
+                new WriteBehindQueue.Write("villagers:2", "UPDATE v", 2)));
+        queue.flush();
+
+        assertEquals(List.of("ADD [5]", "UPDATE v [1]", "UPDATE v [2]"), database.executed);
+        assertEquals(1, database.commits.get());
+    }
+
+    @Test
+    void keyFlushReturnsImmediatelyWithoutPendingWritesForTheKey() {
+        queue.start();
+        queue.submit("villagers:2", "UPDATE v", 2);
+
+        assertFalse(queue.flush(List.of("villagers:1")));
+        assertTrue(database.executed.isEmpty());
+    }
+
+    @Test
+    void keyFlushWaitsForTheKeysWrite() {
+        queue.start();
+        queue.submit("villagers:1", "UPDATE v", 1);
+
+        assertTrue(queue.flush(List.of("villagers:1")));
+        assertEquals(List.of("UPDATE v [1]"), database.executed);
+        assertFalse(queue.flush(List.of("villagers:1")));
+    }
+
+    @Test
+    void multiRowWriteIsTrackedUnderEveryRowKey() {
+        queue.start();
+        queue.submitAll(List.of(WriteBehindQueue.Write.multiRow(List.of("villagers:1", "villagers:2"), "UPDATE rows", 1, 2)));
+        queue.submit("villagers:2", "UPDATE v", 2);
+
+        assertTrue(queue.flush(List.of("villagers:1")));
+        assertEquals(List.of("UPDATE rows [1, 2]", "UPDATE v [2]"), database.executed);
+        assertFalse(queue.flush(List.of("villagers:2")));
+    }
+
+    @Test
+    void unrelatedPendingWriteDoesNotBlockKeyFlush() throws Exception {
+        CountDownLatch firstGate = database.block("UPDATE first");
+        CountDownLatch unrelatedGate = database.block("UPDATE unrelated");
+        queue.start();
+
+        // 第一行的写操作进入写线程并阻塞在执行中
+        queue.submit("villagers:1", "UPDATE first", 1);
+        CompletableFuture.runAsync(queue::flush);
+        assertTrue(database.awaitEntered("UPDATE first"));
+
+        // 其他行的写操作在之后入队，执行时同样阻塞
+        queue.submit("villagers:2", "UPDATE unrelated", 2);
+        CompletableFuture<Boolean> flush = new CompletableFuture<>();
+        Thread reader = new Thread(() -> flush.complete(queue.flush(List.of("villagers:1"))));
+        reader.start();
+        awaitWaiting(reader);
+        firstGate.countDown();
+
+        // 只需要等待第一行所在的批次提交
+        assertTrue(flush.get(5, TimeUnit.SECONDS));
+        assertTrue(database.awaitEntered("UPDATE unrelated"));
+        assertEquals(List.of("UPDATE first [1]"), database.executed);
+
+        unrelatedGate.countDown();
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.TIMED_WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.TIMED_WAITING, thread.getState());
+    }
+}
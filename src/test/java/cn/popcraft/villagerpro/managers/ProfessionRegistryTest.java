@@ -0,0 +1,91 @@
+package cn.popcraft.villagerpro.managers;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfessionRegistryTest {
+
+    /**
+     * nextInt 依次返回指定值的随机数生成器
+     */
+    private static final class FixedRandom extends Random {
+        private final int[] values;
+        private int next;
+
+        FixedRandom(int... values) {
+            this.values = values;
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            int value = values[next++];
+            assertTrue(value < bound, "随机数超出范围");
+            return value;
+        }
+    }
+
+    private static ProfessionRegistry.Profession compile(String id, List<String> workItems) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("villager.professions." + id + ".work_items", workItems);
+        config.set("villager.professions." + id + ".base_amount", 2);
+        ProfessionRegistry.reload(config);
+        return ProfessionRegistry.get(id);
+    }
+
+    @Test
+    void picksItemsByCumulativeWeight() {
+        // 累计权重为 [1, 4, 5]
+        ProfessionRegistry.Profession profession = compile("farmer", List.of("WHEAT:1", "CARROT:3", "POTATO"));
+
+        // 随机数 r 对应累计权重中第一个不小于 r + 1 的位置
+        FixedRandom random = new FixedRandom(0, 1, 3, 4);
+        assertEquals("WHEAT", profession.pickItem(random));
+        assertEquals("CARROT", profession.pickItem(random));
+        assertEquals("CARROT", profession.pickItem(random));
+        assertEquals("POTATO", profession.pickItem(random));
+    }
+
+    @Test
+    void itemSharesFollowWeights() {
+        ProfessionRegistry.Profession profession = compile("farmer", List.of("WHEAT:1", "CARROT:3", "POTATO"));
+
+        assertEquals(3, profession.getItemCount());
+        assertEquals(0.2, profession.getItemShare(0), 1e-9);
+        assertEquals(0.6, profession.getItemShare(1), 1e-9);
+        assertEquals(0.2, profession.getItemShare(2), 1e-9);
+    }
+
+    @Test
+    void singleItemIsPickedWithoutRandom() {
+        ProfessionRegistry.Profession profession = compile("miner", List.of("COAL:5"));
+
+        assertEquals("COAL", profession.pickItem(new FixedRandom()));
+    }
+
+    @Test
+    void professionWithoutItemsDoesNotProduce() {
+        ProfessionRegistry.Profession profession = compile("librarian", List.of());
+
+        assertFalse(profession.hasProduction());
+        assertNull(profession.pickItem(new FixedRandom()));
+    }
+
+    @Test
+    void productionAmountUsesDefaultSkillOfProfession() {
+        ProfessionRegistry.Profession profession = compile("fisherman", List.of("COD"));
+
+        // 基础数量 2 + 等级加成 (3 - 1) * 1 + 快速垂钓 2 级 * 1
+        assertEquals(6, profession.getProductionAmount(3, Map.of("fast_fishing", 2)));
+        // 其他职业的产出技能不计入
+        assertEquals(4, profession.getProductionAmount(3, Map.of("efficient_harvest", 2)));
+    }
+}
@@ -0,0 +1,46 @@
+package cn.popcraft.villagerpro.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkSchedulerTest {
+    private static final long INTERVAL = 2400L;
+
+    @Test
+    void firstDueTickIsAlignedToVillagePhase() {
+        assertEquals(100L, WorkScheduler.firstDueTick(0L, 100L, INTERVAL));
+        assertEquals(100L, WorkScheduler.firstDueTick(99L, 100L, INTERVAL));
+        // 相位所在的 tick 已经过去，等到下一个工作间隔
+        assertEquals(2500L, WorkScheduler.firstDueTick(100L, 100L, INTERVAL));
+        assertEquals(2400L, WorkScheduler.firstDueTick(0L, 0L, INTERVAL));
+    }
+
+    @Test
+    void villagersOfOneVillageAreDueInTheSameTick() {
+        long phase = 1234L;
+        for (long tick = 5000L; tick < 5000L + INTERVAL; tick += 37L) {
+            long due = WorkScheduler.firstDueTick(tick, phase, INTERVAL);
+            assertTrue(due > tick && due <= tick + INTERVAL);
+            assertEquals(0L, Math.floorMod(due - phase, INTERVAL));
+        }
+    }
+
+    @Test
+    void nextDueTickDoesNotDriftWhenDeferred() {
+        // 因时间预算顺延 3 tick 执行，下次仍按原相位到期
+        assertEquals(2500L, WorkScheduler.nextDueTick(100L, 103L, INTERVAL));
+        // 积压超过一个工作间隔时在下一 tick 到期
+        assertEquals(5001L, WorkScheduler.nextDueTick(100L, 5000L, INTERVAL));
+    }
+
+    @Test
+    void slotsWrapAroundTheWheel() {
+        assertEquals(0, WorkScheduler.slotOf(0L));
+        assertEquals(WorkScheduler.WHEEL_SIZE - 1, WorkScheduler.slotOf(WorkScheduler.WHEEL_SIZE - 1));
+        assertEquals(3, WorkScheduler.slotOf(WorkScheduler.WHEEL_SIZE + 3L));
+        // 超过一圈的到期时间与之前整圈的 tick 落在同一槽位
+        assertEquals(WorkScheduler.slotOf(2500L), WorkScheduler.slotOf(2500L - 4L * WorkScheduler.WHEEL_SIZE));
+    }
+}